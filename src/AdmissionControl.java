@@ -0,0 +1,55 @@
+import java.util.concurrent.TimeUnit;
+
+/* caps on what a manager keeps queued: pending team requests, and workers per role waiting for a team.
+ * What happens to a request or login that arrives at a full queue is chosen with Overflow. Counts of
+ * rejected and shed requests and logins are published in ManagerMetrics.
+ *
+ * A login is only checked against the cap if it would have to wait, which with workers of its role already
+ * waiting is always the case (they would have taken any reachable seat). Multi-skilled logins and logins
+ * moved between shards of a ShardedDrillLoginManager are not capped */
+public final class AdmissionControl {
+
+	public enum Overflow {
+		//turn the newcomer away: a blocking call returns null (false for a timed lead request), a future
+		//completes exceptionally with a RejectedExecutionException
+		REJECT,
+		//make the caller wait for room, up to the block timeout, and then reject it
+		BLOCK,
+		//admit the newcomer and withdraw the oldest queued request, or the oldest waiting login of the role,
+		//which is then treated as rejected
+		SHED_OLDEST
+	}
+
+	//no caps, the default of every manager
+	public static final AdmissionControl UNBOUNDED =
+			new AdmissionControl(Integer.MAX_VALUE, Integer.MAX_VALUE, Overflow.REJECT);
+
+	final int maxPendingRequests;
+	final int maxWaitingPerRole;
+	final Overflow overflow;
+	final long blockNanos;
+
+	public AdmissionControl(int maxPendingRequests, int maxWaitingPerRole, Overflow overflow) {
+		this(maxPendingRequests, maxWaitingPerRole, overflow, 0, TimeUnit.NANOSECONDS);
+	}
+
+	//blockTimeout is how long a caller waits for room under Overflow.BLOCK
+	public AdmissionControl(int maxPendingRequests, int maxWaitingPerRole, Overflow overflow, long blockTimeout, TimeUnit unit) {
+		if (maxPendingRequests < 1 || maxWaitingPerRole < 1) {
+			throw new IllegalArgumentException("caps must be at least 1");
+		}
+		if (overflow == null) {
+			throw new IllegalArgumentException("an overflow policy is needed");
+		}
+		this.maxPendingRequests = maxPendingRequests;
+		this.maxWaitingPerRole = maxWaitingPerRole;
+		this.overflow = overflow;
+		this.blockNanos = unit.toNanos(blockTimeout);
+	}
+
+	@Override
+	public String toString() {
+		return "pending<=" + maxPendingRequests + " waiting/role<=" + maxWaitingPerRole + " " + overflow
+				+ ((overflow == Overflow.BLOCK) ? " " + TimeUnit.NANOSECONDS.toMillis(blockNanos) + "ms" : "");
+	}
+}
@@ -0,0 +1,810 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/* a Manager that parks futures instead of threads.
+ * Matching follows the same rules as DrillLoginManager in per-role mode (see TeamMatcher), but a waiting
+ * login is a CompletableFuture in its role's queue, so tens of thousands of pending logins can be served by
+ * a small executor. The lock is only held while the matcher runs: futures of assembled teams are completed
+ * after it has been released, so callbacks attached by callers never run under the lock.
+ * The blocking Manager methods are kept and simply wait on the futures. A call rejected or shed by admission
+ * control returns null (or without a team) from them, as from DrillLoginManager, rather than throwing.
+ *
+ * Cancelling a returned future withdraws what it stands for. A cancelled request leaves the queue in O(1)
+ * and the logins already seated in it go back among the waiting logins; a cancelled login gives its seat
+ * back, or is marked and skipped later if it was still waiting. The timed blocking methods cancel on timeout.
+ *
+ * With flatCombining, single requests and logins are posted to a FlatCombiner rather than each taking the
+ * lock: one thread applies the operations of every thread waiting for the lock in one pass, and completes
+ * their futures in one go afterwards. It pays off when many threads call in at once; under Overflow.BLOCK
+ * operations may wait under the lock, so they take it one by one as without combining */
+public class AsyncDrillLoginManager implements AsyncManager, Manager {
+
+	//queue depths and timings, readable without taking the lock (see ManagerMetrics)
+	private final ManagerMetrics metrics = new ManagerMetrics();
+
+	private final MeteredLock lock = new MeteredLock(metrics);
+
+	//queued team requests and the number of logins per role that are still waiting for a seat
+	private final TeamMatcher requestsMade;
+
+	/* logins waiting for a seat, per role id, oldest first. A cancelled login stays in its queue with queued
+	 * cleared, and is dropped when it reaches the front (see pollLogin). cancelledLogins counts those, and a
+	 * queue is swept once they outnumber the logins still waiting in it, so timed out logins cannot pile up */
+	private ArrayDeque<Login>[] waitingLogins = newQueues(8);
+	private int[] cancelledLogins = new int[8];
+
+	//teams assembled while the lock was held, released once it has been dropped
+	private final ArrayList<Team> assembled = new ArrayList<>();
+
+	//futures rejected or shed by admission control while the lock was held, failed once it has been dropped
+	private final ArrayList<CompletableFuture<String>> rejected = new ArrayList<>();
+
+	/* caps on queued requests and waiting logins (see AdmissionControl). Callers blocked for room wait on
+	 * requestRoom, or on their role's loginRoom condition, which is created when the first one blocks */
+	private final AdmissionControl admission;
+	private final Condition requestRoom;
+	private Condition[] loginRoom = new Condition[8];
+
+	//numbering for anonymous teams, which are named prefix + number
+	private final String anonymousPrefix;
+	private int teamCount = 0;
+
+	//reports requests whose start deadline passed before they were assembled
+	private final DeadlineTicker deadlineTicker;
+
+	//publishes snapshots for dashboards once one has asked
+	private final SnapshotPublisher snapshots;
+
+	//assignment events for downstream systems, null until events() is first called; guarded by the lock
+	private EventStream events;
+
+	//applies requests and logins for whichever threads are waiting for the lock, null without flat combining
+	private final FlatCombiner combiner;
+
+	//how the blocking methods wait for their futures, see WaitStrategy
+	private volatile WaitStrategy waitStrategy = WaitStrategy.BLOCK;
+
+	public AsyncDrillLoginManager() {
+		this(0);
+	}
+
+	//maxHeadSkips > 0 turns on non-head-of-line matching, as in DrillLoginManager
+	public AsyncDrillLoginManager(int maxHeadSkips) {
+		this(maxHeadSkips, new SchedulingPolicy.Fifo());
+	}
+
+	//the policy decides which queued request is offered logins first, see SchedulingPolicy
+	public AsyncDrillLoginManager(int maxHeadSkips, SchedulingPolicy policy) {
+		this(maxHeadSkips, policy, AdmissionControl.UNBOUNDED);
+	}
+
+	/* admission caps the number of queued requests and of waiting logins per role. Under Overflow.BLOCK the
+	 * thread calling the async method is the one that waits for room */
+	public AsyncDrillLoginManager(int maxHeadSkips, SchedulingPolicy policy, AdmissionControl admission) {
+		this(maxHeadSkips, policy, admission, "team");
+	}
+
+	//flatCombining has threads contending for the lock apply each other's operations, see FlatCombiner
+	public AsyncDrillLoginManager(int maxHeadSkips, SchedulingPolicy policy, AdmissionControl admission, boolean flatCombining) {
+		this(maxHeadSkips, policy, admission, "team", flatCombining);
+	}
+
+	//a shard of ShardedDrillLoginManager, whose anonymous team names carry the rig so they stay unique
+	AsyncDrillLoginManager(int maxHeadSkips, SchedulingPolicy policy, AdmissionControl admission, String anonymousPrefix) {
+		this(maxHeadSkips, policy, admission, anonymousPrefix, false);
+	}
+
+	private AsyncDrillLoginManager(int maxHeadSkips, SchedulingPolicy policy, AdmissionControl admission,
+			String anonymousPrefix, boolean flatCombining) {
+		this.anonymousPrefix = anonymousPrefix;
+		this.admission = admission;
+		this.requestRoom = lock.newCondition();
+		this.requestsMade = new TeamMatcher(maxHeadSkips, policy, new TeamMatcher.Listener() {
+			@Override
+			public void assigned(TeamRequest team, int roleId, int count) {
+				for (int i = 0; i < count; i++) {
+					((Team) team).join(pollLogin(roleId));
+				}
+				loginRoomMade(roleId, count);
+			}
+
+			@Override
+			public void seated(TeamRequest team, TeamMatcher.SkilledWorker worker) {
+				((Team) team).join(((SkilledLogin) worker).login);
+			}
+
+			@Override
+			public void completed(TeamRequest team) {
+				team.complete = true;
+				assembled.add((Team) team);
+				requestRoom.signal();
+			}
+		}, metrics);
+		this.deadlineTicker = new DeadlineTicker(lock, requestsMade, anonymousPrefix + " deadlines");
+		this.snapshots = new SnapshotPublisher(lock, requestsMade, anonymousPrefix + " snapshots");
+		this.combiner = (flatCombining && admission.overflow != AdmissionControl.Overflow.BLOCK)
+				? new FlatCombiner(lock, this::unlockAndRelease, metrics) : null;
+	}
+
+	@Override
+	public CompletableFuture<String> smallTeamRequestAsync(Map<String, Integer> team) {
+		return smallTeamRequestAsync(team, 0);
+	}
+
+	//smallTeamRequestAsync with a priority, which only a policy such as SchedulingPolicy.WeightedPriority looks at
+	public CompletableFuture<String> smallTeamRequestAsync(Map<String, Integer> team, int priority) {
+		return locked(() -> {
+			if (!admitRequest()) {
+				return rejectedRequest();
+			}
+			Team request = new Team(anonymousPrefix + (++teamCount), toSeats(team));
+			request.priority = priority;
+			requestsMade.add(request);
+			requestsMade.match();
+			return request.assembled;
+		});
+	}
+
+	/* a batch of anonymous requests, e.g. a dispatch system's plan at shift start: one future per team, in the
+	 * order given. The whole batch is queued under one lock acquisition and matched against the waiting logins
+	 * in one pass, rather than one pass per request. Requests turned away by admission control fail as in
+	 * smallTeamRequestAsync */
+	public List<CompletableFuture<String>> smallTeamRequestsAsync(List<Map<String, Integer>> teams) {
+		List<CompletableFuture<String>> requests = new ArrayList<>(teams.size());
+		lock.lock();
+		try {
+			for (Map<String, Integer> team : teams) {
+				if (requestsMade.pendingRequests() >= admission.maxPendingRequests) {
+					//assemble what the batch so far allows before turning anyone away
+					requestsMade.match();
+				}
+				if (!admitRequest()) {
+					requests.add(rejectedRequest());
+					continue;
+				}
+				Team request = new Team(anonymousPrefix + (++teamCount), toSeats(team));
+				requestsMade.add(request);
+				requests.add(request.assembled);
+			}
+			requestsMade.match();
+		}
+		finally {
+			unlockAndRelease();
+		}
+		return requests;
+	}
+
+	/* smallTeamRequestAsync for a team that should be assembled within startWithin, see
+	 * DrillLoginManager.requestTeam with a deadline. The future still completes if the deadline is missed */
+	public CompletableFuture<String> smallTeamRequestAsync(Map<String, Integer> team, long startWithin, TimeUnit unit, int priority) {
+		long deadline = System.nanoTime() + unit.toNanos(startWithin);
+		return locked(() -> {
+			if (!admitRequest()) {
+				return rejectedRequest();
+			}
+			Team request = new Team(anonymousPrefix + (++teamCount), toSeats(team));
+			request.priority = priority;
+			request.hasDeadline = true;
+			request.deadline = deadline;
+			requestsMade.add(request);
+			requestsMade.match();
+			deadlineTicker.deadlineQueued();
+			return request.assembled;
+		});
+	}
+
+	/* called with the name of every request whose start deadline passes before its team is assembled, from the
+	 * manager's deadline thread and without the lock held. Replaces any previous listener; null removes it */
+	public void onDeadlineMissed(Consumer<String> listener) {
+		lock.lock();
+		try {
+			deadlineTicker.setListener(listener);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public CompletableFuture<String> drillerRequestAsync(String teamName, Map<String, Integer> team) {
+		return leadRequestAsync(teamName, "Driller", team);
+	}
+
+	/* completes with teamName once the team has been assembled. The lead fills its own role's seats, so
+	 * they are dropped from this request when it is queued (see DrillLoginManager.leadRequest) */
+	public CompletableFuture<String> leadRequestAsync(String teamName, String leadRole, Map<String, Integer> team) {
+		return locked(() -> {
+			if (!admitRequest()) {
+				return rejectedRequest();
+			}
+			Team request = new Team(teamName, toSeats(team, leadRole));
+			requestsMade.add(request);
+			requestsMade.match();
+			return request.assembled;
+		});
+	}
+
+	//a login turned away by admission control completes exceptionally with a RejectedExecutionException
+	@Override
+	public CompletableFuture<String> workerLoginAsync(String role) {
+		Login login = new Login(this);
+		return locked(() -> {
+			int roleId = roleId(role);
+			if (admitLogin(roleId)) {
+				arrive(login, roleId);
+			}
+			else {
+				//nobody has seen the future yet, so it can be failed under the lock
+				metrics.rejectedLogins.increment();
+				login.completeExceptionally(new RejectedExecutionException("too many " + role + " logins waiting"));
+			}
+			return login;
+		});
+	}
+
+	/* a block of logins for one role, e.g. from a badge gateway at shift start: one future per login, in the
+	 * order given. The block joins the role's waiting logins under one lock acquisition and is matched against
+	 * the queued requests in one pass, instead of each login looking for a seat on its own. Logins turned away
+	 * by admission control fail as in workerLoginAsync */
+	public List<CompletableFuture<String>> workerLoginsAsync(String role, int count) {
+		List<CompletableFuture<String>> logins = new ArrayList<>(count);
+		lock.lock();
+		try {
+			int roleId = roleId(role);
+			for (int i = 0; i < count; i++) {
+				Login login = new Login(this);
+				logins.add(login);
+				if (requestsMade.waiting(roleId) >= admission.maxWaitingPerRole) {
+					//seat the logins of the block so far before turning anyone away
+					requestsMade.match();
+				}
+				if (admitLogin(roleId)) {
+					login.roleId = roleId;
+					login.queued = true;
+					waitingLogins[roleId].add(login);
+					requestsMade.login(roleId);
+				}
+				else {
+					metrics.rejectedLogins.increment();
+					login.completeExceptionally(new RejectedExecutionException("too many " + role + " logins waiting"));
+				}
+			}
+			requestsMade.match();
+		}
+		finally {
+			unlockAndRelease();
+		}
+		return logins;
+	}
+
+	/* log in a worker whose pending login is the given future, which is also returned. Used by
+	 * ShardedDrillLoginManager to move a waiting login over from another shard (see stealLogin) */
+	CompletableFuture<String> adoptLogin(String role, CompletableFuture<String> future) {
+		Login login = (Login) future;
+		lock.lock();
+		try {
+			//a login cancelled while it was being moved is not logged in again
+			if (!login.isDone()) {
+				arrive(login, roleId(role));
+			}
+		}
+		finally {
+			unlockAndRelease();
+		}
+		return login;
+	}
+
+	/* log in a worker certified for several roles, who may be given a seat for any of them (see
+	 * TeamMatcher.arriveSkilled). Completes with the name of the team the worker has been released to */
+	public CompletableFuture<String> workerLoginAsync(Set<String> roles) {
+		Login login = new Login(this);
+		return locked(() -> {
+			for (String role : roles) {
+				roleId(role);
+			}
+			long skills = requestsMade.skills(roles);
+			if (skills == 0) {
+				throw new IllegalArgumentException("a multi-skilled worker needs one to 64 roles, within the first 64 seen: " + roles);
+			}
+			login.skilled = new SkilledLogin(skills, login);
+			arriveSkilled(login);
+			return login;
+		});
+	}
+
+	/* take the oldest waiting login of this role away from this manager, so the borrower can adopt it.
+	 * Only a login the queued requests here have no open seat for is given up; returns null otherwise.
+	 * The login belongs to the borrower from here on, so a cancel while it is moved is handled there */
+	CompletableFuture<String> stealLogin(String role, AsyncDrillLoginManager borrower) {
+		lock.lock();
+		try {
+			int roleId = requestsMade.roles.find(role);
+			if (roleId < 0 || requestsMade.waiting(roleId) <= requestsMade.openSeats(roleId)) {
+				return null;
+			}
+			requestsMade.logout(roleId);
+			Login login = pollLogin(roleId);
+			login.owner = borrower;
+			loginRoomMade(roleId, 1);
+			return login;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/* run a request or login with the lock held, then release what it assembled: through the combiner with
+	 * flat combining, otherwise by taking the lock */
+	private CompletableFuture<String> locked(Supplier<CompletableFuture<String>> operation) {
+		if (combiner != null) {
+			return combiner.apply(operation);
+		}
+		lock.lock();
+		try {
+			return operation.get();
+		}
+		finally {
+			unlockAndRelease();
+		}
+	}
+
+	//a single-role login takes a seat or joins its role's waiting queue
+	private void arrive(Login login, int roleId) {
+		login.roleId = roleId;
+		Team team = (Team) requestsMade.arrive(roleId);
+		if (team != null) {
+			team.join(login);
+		}
+		else {
+			login.queued = true;
+			waitingLogins[roleId].add(login);
+		}
+	}
+
+	private void arriveSkilled(Login login) {
+		Team team = (Team) requestsMade.arriveSkilled(login.skilled);
+		if (team != null) {
+			team.join(login);
+		}
+	}
+
+	//the oldest waiting login of this role that has not been cancelled, counted out of the waiting workers
+	private Login pollLogin(int roleId) {
+		Login login = waitingLogins[roleId].poll();
+		while (!login.queued) {
+			cancelledLogins[roleId]--;
+			login = waitingLogins[roleId].poll();
+		}
+		login.queued = false;
+		return login;
+	}
+
+	//a waiting login has been cancelled and left in its queue: sweep the queue once it is mostly cancelled logins
+	private void loginCancelled(int roleId) {
+		if (++cancelledLogins[roleId] > requestsMade.waiting(roleId) + 16) {
+			waitingLogins[roleId].removeIf(login -> !login.queued);
+			cancelledLogins[roleId] = 0;
+		}
+	}
+
+	/* the login has been cancelled by its caller: take it out of the waiting workers, or give its seat back if
+	 * it had one in a team that is still being assembled. Returns false if the login has moved to another
+	 * manager in the meantime */
+	private boolean withdraw(Login login) {
+		lock.lock();
+		try {
+			if (login.owner != this) {
+				return false;
+			}
+			if (login.queued) {
+				login.queued = false;
+				requestsMade.logout(login.roleId);
+				metrics.abandonedLogins.increment();
+				loginCancelled(login.roleId);
+				loginRoomMade(login.roleId, 1);
+			}
+			else if (login.skilled != null && login.skilled.team == null && login.team == null) {
+				requestsMade.logoutSkilled(login.skilled);
+				metrics.abandonedLogins.increment();
+			}
+			else if (login.team != null && !login.team.complete) {
+				Team team = login.team;
+				team.members.remove(login);
+				login.team = null;
+				if (login.skilled != null) {
+					requestsMade.unseatSkilled(team, login.skilled);
+				}
+				else {
+					requestsMade.unseat(team, login.roleId);
+				}
+				metrics.abandonedLogins.increment();
+				requestsMade.match();
+			}
+			return true;
+		}
+		finally {
+			unlockAndRelease();
+		}
+	}
+
+	/* the request has been cancelled by its caller: withdraw it if it is still queued, and put the logins
+	 * already seated in it back among the waiting logins, where they may fill other requests */
+	private void withdraw(Team team) {
+		lock.lock();
+		try {
+			if (!team.complete) {
+				withdrawQueued(team);
+			}
+		}
+		finally {
+			unlockAndRelease();
+		}
+	}
+
+	//as withdraw(Team), with the lock held and the team still queued
+	private void withdrawQueued(Team team) {
+		requestsMade.cancel(team);
+		team.complete = true;
+		for (Login member : team.members) {
+			member.team = null;
+			if (member.skilled != null) {
+				member.skilled.team = null;
+				member.skilled.seat = -1;
+				arriveSkilled(member);
+			}
+			else {
+				arrive(member, member.roleId);
+			}
+		}
+		team.members.clear();
+		requestsMade.match();
+		requestRoom.signal();
+	}
+
+	/* make room for a new request under the admission caps, shedding or blocking as configured. Returns false
+	 * if the request is to be rejected */
+	private boolean admitRequest() {
+		if (requestsMade.pendingRequests() < admission.maxPendingRequests) {
+			return true;
+		}
+		switch (admission.overflow) {
+		case SHED_OLDEST:
+			Team oldest = (Team) requestsMade.oldest();
+			withdrawQueued(oldest);
+			metrics.shedRequests.increment();
+			rejected.add(oldest.assembled);
+			return true;
+		case BLOCK:
+			long blockUntil = System.nanoTime() + admission.blockNanos;
+			while (requestsMade.pendingRequests() >= admission.maxPendingRequests) {
+				if (!awaitRoom(requestRoom, blockUntil)) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	//as admitRequest, for a single-role login about to arrive
+	private boolean admitLogin(int roleId) {
+		if (requestsMade.waiting(roleId) < admission.maxWaitingPerRole) {
+			return true;
+		}
+		switch (admission.overflow) {
+		case SHED_OLDEST:
+			requestsMade.logout(roleId);
+			rejected.add(pollLogin(roleId));
+			metrics.shedLogins.increment();
+			return true;
+		case BLOCK:
+			long blockUntil = System.nanoTime() + admission.blockNanos;
+			while (requestsMade.waiting(roleId) >= admission.maxWaitingPerRole) {
+				if (loginRoom[roleId] == null) {
+					loginRoom[roleId] = lock.newCondition();
+				}
+				if (!awaitRoom(loginRoom[roleId], blockUntil)) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private CompletableFuture<String> rejectedRequest() {
+		metrics.rejectedRequests.increment();
+		CompletableFuture<String> request = new CompletableFuture<String>();
+		request.completeExceptionally(new RejectedExecutionException("too many team requests queued"));
+		return request;
+	}
+
+	//count logins of this role have stopped waiting: let that many logins blocked for room in
+	private void loginRoomMade(int roleId, int count) {
+		Condition room = loginRoom[roleId];
+		if (room != null) {
+			for (int i = 0; i < count; i++) {
+				room.signal();
+			}
+		}
+	}
+
+	/* wait for room under the admission caps until the deadline. Returns false once the deadline has passed
+	 * or the thread has been interrupted (its interrupt status is kept) */
+	private boolean awaitRoom(Condition room, long deadline) {
+		long remaining = deadline - System.nanoTime();
+		if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+			return false;
+		}
+		lock.pauseHold();
+		try {
+			room.awaitNanos(remaining);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		lock.resumeHold();
+		return true;
+	}
+
+	@Override
+	public void smallTeamRequest(Map<String, Integer> team) {
+		smallTeamRequestAsync(team);
+	}
+
+	@Override
+	public void drillerRequest(String teamName, Map<String, Integer> team) {
+		await(drillerRequestAsync(teamName, team));
+	}
+
+	public void leadRequest(String teamName, String leadRole, Map<String, Integer> team) {
+		await(leadRequestAsync(teamName, leadRole, team));
+	}
+
+	@Override
+	public String workerLogin(String role) {
+		return await(workerLoginAsync(role));
+	}
+
+	public String workerLogin(Set<String> roles) {
+		return await(workerLoginAsync(roles));
+	}
+
+	/* how threads in the blocking methods without a timeout wait to be released, WaitStrategy.BLOCK by default.
+	 * Applies to waits that start after the call */
+	public void setWaitStrategy(WaitStrategy strategy) {
+		waitStrategy = strategy;
+	}
+
+	//wait for the future as the wait strategy says, then take its result
+	private String await(CompletableFuture<String> future) {
+		waitStrategy.await(future::isDone, () -> result(future));
+		return result(future);
+	}
+
+	//as workerLogin, but the login is withdrawn if no team has been assembled by the timeout; returns null then
+	public String workerLogin(String role, long timeout, TimeUnit unit) {
+		return await(workerLoginAsync(role), timeout, unit);
+	}
+
+	//as leadRequest, but the request is withdrawn if it has not been assembled by the timeout; returns false then
+	public boolean leadRequest(String teamName, String leadRole, Map<String, Integer> team, long timeout, TimeUnit unit) {
+		return await(leadRequestAsync(teamName, leadRole, team), timeout, unit) != null;
+	}
+
+	/* wait for the future until the timeout, then cancel it. A future completed just before the cancel still
+	 * counts, and an interrupt cancels too, keeping the thread's interrupt status */
+	private static String await(CompletableFuture<String> future, long timeout, TimeUnit unit) {
+		try {
+			future.get(timeout, unit);
+		}
+		catch (TimeoutException e) {
+			future.cancel(false);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.cancel(false);
+		}
+		catch (ExecutionException e) {
+			//failed: result says how
+		}
+		return result(future);
+	}
+
+	/* the team a completed future holds, or null if it was cancelled or turned away by AdmissionControl, which 
+	 * is what DrillLoginManager returns for the same calls. Any other failure is rethrown as it was raised.
+	 * ShardedDrillLoginManager's blocking methods return the same */
+	static String result(CompletableFuture<String> future) {
+		try {
+			return future.join();
+		}
+		catch (CancellationException e) {
+			return null;
+		}
+		catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RejectedExecutionException) {
+				return null;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	//the queue and the waiting logins, published as in DrillLoginManager.snapshot
+	public ManagerSnapshot snapshot() {
+		ManagerSnapshot published = requestsMade.publishedSnapshot();
+		return (published != null) ? published : snapshots.start();
+	}
+
+	/* the stream of requests, logins and seat assignments (see EventStream), created on the first call. Events
+	 * are only published while a consumer is subscribed */
+	public EventStream events() {
+		lock.lock();
+		try {
+			if (events == null) {
+				events = new EventStream(lock, EventStream.DEFAULT_CAPACITY);
+				requestsMade.setEvents(events);
+			}
+			return events;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public ManagerMetrics getMetrics() {
+		return metrics;
+	}
+
+	//whether admission control parks the thread calling an async method until there is room (Overflow.BLOCK)
+	boolean blocksCallers() {
+		return admission.overflow == AdmissionControl.Overflow.BLOCK;
+	}
+
+	/* drop the lock, then complete the futures of every team assembled while it was held */
+	private void unlockAndRelease() {
+		if (assembled.isEmpty() && rejected.isEmpty()) {
+			lock.unlock();
+			return;
+		}
+		Team[] teams = assembled.toArray(new Team[assembled.size()]);
+		assembled.clear();
+		ArrayList<CompletableFuture<String>> failed = new ArrayList<>(rejected);
+		rejected.clear();
+		lock.unlock();
+		for (CompletableFuture<String> future : failed) {
+			future.completeExceptionally(new RejectedExecutionException("shed to make room for newer ones"));
+		}
+		for (Team team : teams) {
+			for (Login member : team.members) {
+				member.complete(team.name);
+			}
+			team.assembled.complete(team.name);
+		}
+	}
+
+	//the id of a role, growing the per-role queues when a new role is registered
+	private int roleId(String role) {
+		int roleId = requestsMade.roleId(role);
+		if (roleId >= waitingLogins.length) {
+			ArrayDeque<Login>[] grown = newQueues(waitingLogins.length * 2);
+			System.arraycopy(waitingLogins, 0, grown, 0, waitingLogins.length);
+			waitingLogins = grown;
+			int[] grownCancelled = new int[cancelledLogins.length * 2];
+			System.arraycopy(cancelledLogins, 0, grownCancelled, 0, cancelledLogins.length);
+			cancelledLogins = grownCancelled;
+			Condition[] grownRoom = new Condition[loginRoom.length * 2];
+			System.arraycopy(loginRoom, 0, grownRoom, 0, loginRoom.length);
+			loginRoom = grownRoom;
+		}
+		return roleId;
+	}
+
+	private int[] toSeats(Map<String, Integer> team) {
+		for (String role : team.keySet()) {
+			roleId(role);
+		}
+		return requestsMade.toSeats(team);
+	}
+
+	private int[] toSeats(Map<String, Integer> team, String leadRole) {
+		for (String role : team.keySet()) {
+			roleId(role);
+		}
+		return requestsMade.toSeats(team, leadRole);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static ArrayDeque<Login>[] newQueues(int length) {
+		ArrayDeque<Login>[] queues = new ArrayDeque[length];
+		for (int i = 0; i < length; i++) {
+			queues[i] = new ArrayDeque<>();
+		}
+		return queues;
+	}
+
+	/* a pending login. Its fields are guarded by the lock of the manager that owns it, which only changes
+	 * when ShardedDrillLoginManager moves a waiting login to another shard */
+	private static final class Login extends CompletableFuture<String> {
+		volatile AsyncDrillLoginManager owner;
+		//the role id of a single-role login in its owner, and whether it is in that role's waiting queue
+		int roleId = -1;
+		boolean queued = false;
+		//the matcher's view of a multi-skilled login, null for a single-role one
+		SkilledLogin skilled;
+		//the team the login has a seat in while that team is being assembled
+		Team team;
+
+		Login(AsyncDrillLoginManager owner) {
+			this.owner = owner;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				while (!owner.withdraw(this)) {
+					//moved to another shard while we were waiting for the lock, try the new owner
+				}
+			}
+			return cancelled;
+		}
+	}
+
+	//a multi-skilled login as the matcher sees it
+	private static final class SkilledLogin extends TeamMatcher.SkilledWorker {
+		final Login login;
+
+		SkilledLogin(long skills, Login login) {
+			super(skills);
+			this.login = login;
+		}
+	}
+
+	//a team request whose members are futures rather than parked threads
+	private final class Team extends TeamRequest {
+		final ArrayList<Login> members = new ArrayList<>();
+
+		//cancelling this future withdraws the request
+		final CompletableFuture<String> assembled = new CompletableFuture<String>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				boolean cancelled = super.cancel(mayInterruptIfRunning);
+				if (cancelled) {
+					withdraw(Team.this);
+				}
+				return cancelled;
+			}
+		};
+
+		Team(String name, int[] seats) {
+			super(name, seats, null);
+		}
+
+		void join(Login login) {
+			members.add(login);
+			login.team = this;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/* asynchronous counterpart of Manager: no call blocks, each one returns a future instead, so pending 
+ * logins and requests cost an object rather than a parked thread */
+public interface AsyncManager {
+	
+	//completes with the generated team name once the team has been assembled
+	public CompletableFuture<String> smallTeamRequestAsync(Map<String, Integer> team);
+	
+	//completes with teamName once the team has been assembled, i.e. when drillerRequest would return
+	public CompletableFuture<String> drillerRequestAsync(String teamName, Map<String, Integer> team);
+	
+	//completes with the name of the team the worker has been released to
+	public CompletableFuture<String> workerLoginAsync(String role);
+	
+}
@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/* compares flat combining (see FlatCombiner) with the plain lock on AsyncDrillLoginManager.
+ *
+ *   java CombiningBenchmark [warmupSeconds] [measureSeconds] [maxThreads]
+ *
+ * Every thread loops over the async API without waiting on the futures: a request for two Roustabouts, then
+ * two Roustabout logins that fill it (or one posted by another thread). Each call is one short operation
+ * under the lock, so the run measures what it costs to get the lock and the matcher's data to the calling
+ * thread. Run with 1, 2, 4, ... up to maxThreads threads (the number of processors by default), each count
+ * on a fresh manager of either kind. Reported:
+ *   ops/sec:     calls returned per second, over all threads
+ *   p50, p99:    time inside one call, in microseconds
+ *   locks/op:    lock acquisitions per call (1 with the plain lock)
+ *   ops/pass:    calls applied per combining pass */
+public class CombiningBenchmark {
+
+	private static final Map<String, Integer> TEAM = Collections.singletonMap("Roustabout", 2);
+
+	//latency samples kept per thread; later samples overwrite the oldest
+	private static final int SAMPLES = 1 << 16;
+
+	public static void main(String[] args) throws InterruptedException {
+		double warmup = (args.length > 0) ? Double.parseDouble(args[0]) : 1;
+		double measure = (args.length > 1) ? Double.parseDouble(args[1]) : 2;
+		int maxThreads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		System.out.printf("%-10s %7s %12s %8s %8s %9s %9s%n", "lock", "threads", "ops/sec", "p50 us", "p99 us",
+				"locks/op", "ops/pass");
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			for (boolean combining : new boolean[] {false, true}) {
+				run(combining, threads, warmup);
+				run(combining, threads, measure).print(combining ? "combining" : "plain", threads);
+			}
+		}
+	}
+
+	private static AsyncDrillLoginManager manager(boolean combining) {
+		return new AsyncDrillLoginManager(0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED, combining);
+	}
+
+	//one timed run of this many threads on a fresh manager
+	static Result run(boolean combining, int threads, double seconds) throws InterruptedException {
+		AsyncDrillLoginManager manager = manager(combining);
+		long[][] samples = new long[threads][SAMPLES];
+		long[] calls = new long[threads];
+		Flags flags = new Flags();
+
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			int index = t;
+			Thread worker = new Thread(() -> {
+				long count = 0;
+				while (!flags.stop) {
+					count = sample(samples[index], count, () -> manager.smallTeamRequestAsync(TEAM));
+					count = sample(samples[index], count, () -> manager.workerLoginAsync("Roustabout"));
+					count = sample(samples[index], count, () -> manager.workerLoginAsync("Roustabout"));
+				}
+				calls[index] = count;
+			});
+			worker.setDaemon(true);
+			workers.add(worker);
+		}
+
+		long start = System.nanoTime();
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		Thread.sleep((long) (seconds * 1000));
+		flags.stop = true;
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		long total = 0;
+		List<long[]> latencies = new ArrayList<long[]>();
+		for (int t = 0; t < threads; t++) {
+			total += calls[t];
+			latencies.add(Arrays.copyOf(samples[t], (int) Math.min(calls[t], SAMPLES)));
+		}
+		return new Result(total, elapsed, merge(latencies), manager.getMetrics());
+	}
+
+	//make one call, recording its latency as the count-th sample of the thread
+	private static long sample(long[] samples, long count, Call call) {
+		long start = System.nanoTime();
+		call.make();
+		samples[(int) (count & (SAMPLES - 1))] = System.nanoTime() - start;
+		return count + 1;
+	}
+
+	private static long[] merge(List<long[]> parts) {
+		int length = 0;
+		for (long[] part : parts) {
+			length += part.length;
+		}
+		long[] all = new long[length];
+		int offset = 0;
+		for (long[] part : parts) {
+			System.arraycopy(part, 0, all, offset, part.length);
+			offset += part.length;
+		}
+		Arrays.sort(all);
+		return all;
+	}
+
+	private interface Call {
+		CompletableFuture<String> make();
+	}
+
+	private static final class Flags {
+		volatile boolean stop;
+	}
+
+	static final class Result {
+		final long calls;
+		final double seconds;
+		final long[] latencies;
+		final ManagerMetrics metrics;
+
+		Result(long calls, double seconds, long[] latencies, ManagerMetrics metrics) {
+			this.calls = calls;
+			this.seconds = seconds;
+			this.latencies = latencies;
+			this.metrics = metrics;
+		}
+
+		void print(String name, int threads) {
+			long passes = metrics.getCombiningPasses();
+			System.out.printf("%-10s %7d %12.0f %8.2f %8.2f %9.3f %9s%n", name, threads, calls / seconds,
+					ManagerBenchmark.percentile(latencies, 0.50), ManagerBenchmark.percentile(latencies, 0.99),
+					(double) metrics.getLockWait().count() / Math.max(calls, 1),
+					(passes == 0) ? "-" : String.format("%.2f", (double) metrics.getCombinedOperations() / passes));
+		}
+	}
+}
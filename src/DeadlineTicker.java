@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Consumer;
+
+/* tells a manager's deadline listener about requests whose start deadline has passed before their team was
+ * assembled. One thread per manager runs the ticks of the matcher's timer wheel (see TimerWheel): it is
+ * started when a request with a deadline is queued and ends once no deadline is pending, and between ticks it
+ * waits on a condition of the manager's lock. The listener is called after the lock has been dropped */
+final class DeadlineTicker implements Runnable {
+
+	private final MeteredLock lock;
+	private final Condition tick;
+	private final TeamMatcher matcher;
+	private final String threadName;
+
+	//guarded by lock
+	private boolean running = false;
+	private Consumer<String> listener;
+
+	DeadlineTicker(MeteredLock lock, TeamMatcher matcher, String threadName) {
+		this.lock = lock;
+		this.tick = lock.newCondition();
+		this.matcher = matcher;
+		this.threadName = threadName;
+	}
+
+	//called with the lock held. A listener set while a request is queued is told about that request too
+	void setListener(Consumer<String> listener) {
+		this.listener = listener;
+	}
+
+	/* called with the lock held, after a request with a deadline has been queued and matched. Nothing is
+	 * started if the request has already been assembled */
+	void deadlineQueued() {
+		if (!running && matcher.hasDeadlines()) {
+			running = true;
+			Thread thread = new Thread(this, threadName);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	@Override
+	public void run() {
+		ArrayList<TeamRequest> missed = new ArrayList<TeamRequest>();
+		while (true) {
+			Consumer<String> notify;
+			lock.lock();
+			try {
+				long now = System.nanoTime();
+				matcher.expireDeadlines(now, missed);
+				if (missed.isEmpty()) {
+					if (!matcher.hasDeadlines()) {
+						running = false;
+						return;
+					}
+					lock.pauseHold();
+					try {
+						tick.awaitNanos(matcher.nanosToNextTick(now));
+					}
+					catch (InterruptedException e) {
+						//nobody else holds this thread, the next tick is simply taken early
+					}
+					lock.resumeHold();
+					continue;
+				}
+				notify = listener;
+			}
+			finally {
+				lock.unlock();
+			}
+			if (notify != null) {
+				for (TeamRequest request : missed) {
+					notify.accept(request.name);
+				}
+			}
+			missed.clear();
+		}
+	}
+}
@@ -1,88 +1,374 @@
 
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.Condition; //Note that the 'notifyAll' method or similar polling mechanism MUST not be used
+import java.util.concurrent.TimeUnit; //Note that this is only the unit timeouts are given in: an enum, with no locking or shared state
 
 // IMPORTANT:
-//Thread safe classes other than those above (e.g. java.util.concurrent) MUST not be used.
+//Thread safe classes other than those above (e.g. the rest of java.util.concurrent) MUST not be used.
 //You MUST not use the keyword 'synchronized', or any other `thread safe` classes or mechanisms  
 //or any delays or 'busy waiting' (spin lock) methods.
 //However, you may import non-tread safe classes e.g.:
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.ArrayDeque;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.function.Consumer;
 
 
 //IMPORTANT: DrillLoginManager must handle exceptions locally i.e. it must not  explicitly 'throw' exceptions 
 //otherwise the compilation with the Test classes will fail
-public class DrillLoginManager implements Manager {
+public class DrillLoginManager implements Manager, AutoCloseable {
 
+	/* queue depths, wakeups and timings, readable without taking the lock (see ManagerMetrics).
+	 * Created before the lock, which records its wait and hold times into it */
+	private final ManagerMetrics metrics = new ManagerMetrics();
+	
 	//adding a Reentrant lock
-	private final ReentrantLock lock = new ReentrantLock();
+	private final MeteredLock lock = new MeteredLock(metrics);
 	
 	//adding a condition variable to block workers until a team request needs the worker
 	private final Condition workerCondition = lock.newCondition();
 	
-	//adding a condition variable to block driller
-	private final Condition drillerConditon = lock.newCondition();
+	/* the matcher stores all the team that makes the request and their worker requirements, in the order 
+	 * in which the requests were made (so we can use FIFO), along with the number of workers per role 
+	 * that are logged in and ready to work. Each TeamRequest has its own completion condition, 
+	 * so the driller and members of one team wait on it */
+	private final TeamMatcher requestsMade;
+	
+	/* numbering for anonymous teams. A counter rather than the queue size, so a new team can never reuse 
+	 * the name of a team that is still waiting to be filled */
+	private int teamCount = 0;
+	
+	/* queued requests by name, so cancelRequest finds one in O(1). If several queued requests share a name 
+	 * (driller team names are chosen by the caller) the latest one is found */
+	private final HashMap<String, TeamRequest> queuedByName = new HashMap<>();
+	
+	/* shared mode: multi-skilled workers parked on workerCondition. The matcher does not count them as waiting,
+	 * as it never queues them, so requestTeams adds them to the workers it may wake */
+	private int skilledParked = 0;
+	
+	//deadline value for waits that have no timeout
+	private static final long UNTIMED = Long.MIN_VALUE;
+	
+	/* per-role wait queues: when enabled every role gets its own condition variable so a request
+	 * only wakes workers of the roles it asks for. When disabled every role shares workerCondition */
+	private final boolean perRoleQueues;
+	private Condition[] roleConditions = new Condition[8];
+	
+	/* per-role mode also matches requests against workers that are already waiting: the manager fills
+	 * the seats itself, puts the team on the role's hand-off queue and signals exactly one waiting worker
+	 * per seat, which picks the team up. The matcher's waiting count then only covers parked workers that 
+	 * have not been handed a team yet */
+	private ArrayDeque<TeamRequest>[] handoffs = newQueues(8);
+	
+	//reports requests whose start deadline passed before they were assembled, see requestTeam with a deadline
+	private final DeadlineTicker deadlineTicker;
+	
+	//publishes snapshots for dashboards once one has asked, see snapshot()
+	private final SnapshotPublisher snapshots;
+	
+	//assignment events for downstream systems, null until events() is first called; guarded by the lock
+	private EventStream events;
 	
-	//adding a condition variable to check if the request is fulfilled or not
-	private final Condition isFulfilled = lock.newCondition();
+	/* caps on queued requests and waiting workers (see AdmissionControl). Callers blocked for room wait on 
+	 * requestRoom, or on their role's loginRoom condition, which is created when the first one blocks */
+	private final AdmissionControl admission;
+	private final Condition requestRoom = lock.newCondition();
+	private Condition[] loginRoom = new Condition[8];
+	
+	/* per-role mode: waiting workers shed to make room for newer ones, not yet woken. They have already been 
+	 * counted out of the waiting workers. The worker shed is the longest parked one of its role, picked from 
+	 * parked, which holds a role's parked workers in the order they parked (those that have since left are 
+	 * dropped as they reach the front). The role's condition wakes its longest waiter, which may not be the 
+	 * one shed, so a worker woken while a shed worker of its role is still parked passes the signal on */
+	private int[] shedLogins = new int[8];
+	private ArrayDeque<ParkedWorker>[] parked = newQueues(8);
+	
+	/* write-ahead journal of the queue and the waiting workers, or null; see the journalDirectory constructor.
+	 * Records are flushed to disk by the journal's commit thread once per commit window. Guarded by the lock
+	 * once the manager has been created; null again after close */
+	private Journal journal;
+	static final int JOURNAL_SEGMENT_BYTES = 8 << 20;
+	static final long JOURNAL_COMMIT_MILLIS = 5;
+	
+	/* workers per role recovered from the journal who have not logged in again since the restart. They are
+	 * still counted as waiting, or hold their seat on the role's hand-off queue, until a worker of the role
+	 * takes their place. Lead requests recovered from the journal are kept by name until their lead is back */
+	private int[] recoveredWorkers = new int[8];
+	private final HashMap<String, TeamRequest> recoveredLeads = new HashMap<>();
+	
+	public DrillLoginManager() {
+		this(false);
+	}
+	
+	public DrillLoginManager(boolean perRoleQueues) {
+		this(perRoleQueues, 0);
+	}
+	
+	/* maxHeadSkips > 0 turns on non-head-of-line matching: a worker whose role the head request does not 
+	 * need may fill a later request, until a request has been overtaken maxHeadSkips times (see TeamMatcher) */
+	public DrillLoginManager(boolean perRoleQueues, int maxHeadSkips) {
+		this(perRoleQueues, maxHeadSkips, new SchedulingPolicy.Fifo());
+	}
 	
-	/* making a map that will store all the team that makes the request and their worker requirements 
-	 * the map stores the team name as the key and the value is another map that stores the worker role and the number of workers 
-	 * Using LinkedHashMap to have an order in which the requests enter the map. (so we can use FIFO) */
-	private final LinkedHashMap<String, Map<String, Integer>> requestsMade = new LinkedHashMap<>();
+	//the policy decides which queued request is offered workers first, see SchedulingPolicy
+	public DrillLoginManager(boolean perRoleQueues, int maxHeadSkips, SchedulingPolicy policy) {
+		this(perRoleQueues, maxHeadSkips, policy, AdmissionControl.UNBOUNDED);
+	}
 	
-	/* storing all the workers that log-in in a map. 
-	 * storing the role along with the number of workers that are logged in and ready to work*/
-	private final HashMap<String, Integer> availableWorkers = new HashMap<>();
+	//admission caps the number of queued requests and of waiting workers per role
+	public DrillLoginManager(boolean perRoleQueues, int maxHeadSkips, SchedulingPolicy policy, AdmissionControl admission) {
+		this(perRoleQueues, maxHeadSkips, policy, admission, null, 0);
+	}
 	
-	//checking if the request put forth is by a drillerTeam or not 
-	private boolean byDriller = false;
+	/* a manager with per-role queues whose queue survives a restart. Requests, logins and seats taken are
+	 * journaled to journalDirectory (see Journal), and a manager created on a directory that already holds a
+	 * journal starts from the requests, partial assignments and waiting workers recorded there. 
+	 * The threads of the workers recorded there are gone, so each worker that logs in after the restart takes 
+	 * over the place of a recovered worker of its role, seat included, before any new worker is counted; 
+	 * a lead recovers its request by making it again under the same name. Seats held by multi-skilled workers 
+	 * are not journaled and are open again after a restart */
+	public DrillLoginManager(File journalDirectory, int maxHeadSkips, SchedulingPolicy policy, AdmissionControl admission) {
+		this(true, maxHeadSkips, policy, admission, journalDirectory, JOURNAL_SEGMENT_BYTES);
+	}
 	
-	//keeps a track of all workers that log-in
-	private Integer workerCount = 0;
+	//segmentBytes is the size of a journal segment, and so the amount of journal replayed after the snapshot at most
+	DrillLoginManager(boolean perRoleQueues, int maxHeadSkips, SchedulingPolicy policy, AdmissionControl admission, 
+			File journalDirectory, int segmentBytes) {
+		this.perRoleQueues = perRoleQueues;
+		this.admission = admission;
+		this.requestsMade = new TeamMatcher(maxHeadSkips, policy, new TeamMatcher.Listener() {
+			@Override
+			public void assigned(TeamRequest team, int roleId, int count) {
+				handOff(team, roleId, count);
+			}
+			
+			//wake the multi-skilled worker that has been given the seat
+			@Override
+			public void seated(TeamRequest team, TeamMatcher.SkilledWorker worker) {
+				((SkilledLogin) worker).handed.signal();
+				metrics.signals.increment();
+			}
+			
+			//release this team's members and its driller (if any)
+			@Override
+			public void completed(TeamRequest team) {
+				queuedByName.remove(team.name, team);
+				team.release();
+				requestRoom.signal();
+			}
+		}, metrics);
+		this.deadlineTicker = new DeadlineTicker(lock, requestsMade, "DrillLoginManager deadlines");
+		this.snapshots = new SnapshotPublisher(lock, requestsMade, "DrillLoginManager snapshots");
+		if (journalDirectory == null) {
+			this.journal = null;
+			return;
+		}
+		journalDirectory.mkdirs();
+		Journal.State recovered = Journal.recover(journalDirectory);
+		this.journal = new Journal(journalDirectory, recovered.lastSegment, segmentBytes, JOURNAL_COMMIT_MILLIS, 
+				TimeUnit.MILLISECONDS, lock, this::journalState, metrics, "DrillLoginManager journal");
+		lock.lock();
+		try {
+			recover(recovered);
+			requestsMade.setJournal(journal);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
 		
 	@Override
 	public void smallTeamRequest(Map<String, Integer> team) {
+		requestTeam(team);
+	}
+	
+	/* smallTeamRequest, returning the generated team name so that the request can be withdrawn 
+	 * with cancelRequest, or null if AdmissionControl rejected it */
+	public String requestTeam(Map<String, Integer> team) {
+		return requestTeam(team, 0);
+	}
+	
+	//requestTeam with a priority, which only a policy such as SchedulingPolicy.WeightedPriority looks at
+	public String requestTeam(Map<String, Integer> team, int priority) {
+		return requestTeam(team, priority, UNTIMED);
+	}
+	
+	/* requestTeam for a team that should be assembled within startWithin. Under
+	 * SchedulingPolicy.EarliestDeadlineFirst requests are served by their deadline; whatever the policy, the
+	 * listener set with onDeadlineMissed is told if the deadline passes first. The request stays queued */
+	public String requestTeam(Map<String, Integer> team, long startWithin, TimeUnit unit, int priority) {
+		return requestTeam(team, priority, deadline(startWithin, unit));
+	}
+	
+	private String requestTeam(Map<String, Integer> team, int priority, long deadline) {
 		
 		//lock protection
 		lock.lock();
 		try {
+			if (!admitRequest()) {
+				metrics.rejectedRequests.increment();
+				return null;
+			}
+			
 			//add the request to the map
-			String teamName = "team" + (requestsMade.size() +1);
-			requestsMade.put(teamName, team);
+			String teamName = nextTeamName();
+			TeamRequest request = new TeamRequest(teamName, toSeats(team), lock.newCondition());
+			request.priority = priority;
+			if (deadline != UNTIMED) {
+				request.hasDeadline = true;
+				request.deadline = deadline;
+			}
+			requestsMade.add(request);
+			queuedByName.put(teamName, request);
 			
 			//unblock worker
-			callSignal(team);
+			callSignal(request);
+			if (deadline != UNTIMED) {
+				deadlineTicker.deadlineQueued();
+			}
+			return teamName;
 		}
 		finally {
 			lock.unlock();
 		}	
 	}
+	
+	/* a batch of anonymous requests, e.g. a dispatch system's plan at shift start. Returns the generated team
+	 * names in the order given, null for a request rejected by AdmissionControl. The whole batch is queued under
+	 * one lock acquisition, followed by one wakeup round: in per-role mode one matching pass that signals a
+	 * worker per seat it fills, in shared mode as many signals as the batch has seats, but no more than there
+	 * are waiting workers to wake, single-role or multi-skilled */
+	public List<String> requestTeams(List<Map<String, Integer>> teams) {
+		List<String> names = new ArrayList<>(teams.size());
+		
+		//lock protection
+		lock.lock();
+		try {
+			int seats = 0;
+			for (Map<String, Integer> team : teams) {
+				if (perRoleQueues && requestsMade.pendingRequests() >= admission.maxPendingRequests) {
+					//assemble what the batch so far allows before turning anyone away
+					requestsMade.match();
+				}
+				if (!admitRequest()) {
+					metrics.rejectedRequests.increment();
+					names.add(null);
+					continue;
+				}
+				String teamName = nextTeamName();
+				TeamRequest request = new TeamRequest(teamName, toSeats(team), lock.newCondition());
+				requestsMade.add(request);
+				queuedByName.put(teamName, request);
+				names.add(teamName);
+				seats += request.open;
+			}
+			
+			//unblock workers, once for the whole batch
+			if (perRoleQueues) {
+				requestsMade.match();
+			}
+			else {
+				int waiting = skilledParked;
+				for (int roleId = 0; roleId < requestsMade.roles.size(); roleId++) {
+					waiting += requestsMade.waiting(roleId);
+				}
+				for (int i = 0; i < Math.min(seats, waiting); i++) {
+					workerCondition.signal();
+				}
+				metrics.signals.add(Math.min(seats, waiting));
+			}
+			return names;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/* withdraw a queued request. It leaves the queue in O(1); workers already seated in it log in again
+	 * and may join other teams, and its lead (if any) is released. Returns false if no request of that name
+	 * is queued, e.g. because it has already been assembled */
+	public boolean cancelRequest(String teamName) {
+		lock.lock();
+		try {
+			TeamRequest request = queuedByName.get(teamName);
+			if (request == null) {
+				return false;
+			}
+			cancel(request);
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/* called with the name of every request whose start deadline passes before its team is assembled, from the
+	 * manager's deadline thread and without the lock held. Replaces any previous listener; null removes it */
+	public void onDeadlineMissed(Consumer<String> listener) {
+		lock.lock();
+		try {
+			deadlineTicker.setListener(listener);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
 
 	@Override
 	public void drillerRequest(String teamName, Map<String, Integer> team) {
+		leadRequest(teamName, "Driller", team);
+	}
+	
+	/* a request made by a lead worker, who blocks until the team is assembled. The lead fills its own
+	 * role's seats, so they are dropped from this request (and no other) when it is queued.
+	 * drillerRequest is the lead request with "Driller" as the lead role. A request rejected or shed by
+	 * AdmissionControl returns without a team */
+	public void leadRequest(String teamName, String leadRole, Map<String, Integer> team) {
+		leadRequest(teamName, leadRole, team, UNTIMED);
+	}
+	
+	/* as leadRequest, but the request is withdrawn (see cancelRequest) if it has not been assembled by the 
+	 * timeout. Returns true if the team was assembled */
+	public boolean leadRequest(String teamName, String leadRole, Map<String, Integer> team, long timeout, TimeUnit unit) {
+		return leadRequest(teamName, leadRole, team, deadline(timeout, unit));
+	}
+	
+	private boolean leadRequest(String teamName, String leadRole, Map<String, Integer> team, long deadline) {
 		
 		//lock protection
 		lock.lock();
 		try {
+			/* a lead whose request was recovered from the journal takes it up again, see recover, and is released
+			 * at once if it was assembled meanwhile. Only one withdrawn meanwhile is asked for again */
+			TeamRequest request = recoveredLeads.remove(teamName);
+			if (request != null && request.cancelled) {
+				request = null;
+			}
+			if (request == null) {
+				if (!admitRequest()) {
+					metrics.rejectedRequests.increment();
+					return false;
+				}
+				
+				//add the request to the map without the lead's seats, marking that the lead waits on it
+				request = new TeamRequest(teamName, toSeats(team, leadRole), lock.newCondition());
+				request.hasLead = true;
+				requestsMade.add(request);
+				queuedByName.put(teamName, request);
+				
+				//unblock worker
+				callSignal(request);
+			}
 			
-			//setting the variable true because request is by driller team
-			byDriller = true;
-			
-			//add the request to the map
-			requestsMade.put(teamName, team);
-			
-			//remove the driller from the request and process the rest as normal
-			for (Map.Entry<String, Map<String, Integer>> requests : requestsMade.entrySet()) {
-				requests.getValue().remove("Driller");
-			}			
-			//unblock worker
-			callSignal(team);
-			
-			//await the driller
-			drillerConditon.awaitUninterruptibly();
+			//await the lead on this team's own completion handle
+			if (!awaitFilled(request, deadline)) {
+				cancel(request);
+				return false;
+			}
+			return !request.cancelled;
 		}
 		finally {
 			lock.unlock();
@@ -91,61 +377,126 @@ public class DrillLoginManager implements Manager {
 
 	@Override
 	public String workerLogin(String role) {
+		return workerLogin(role, UNTIMED);
+	}
+	
+	/* as workerLogin, but the worker gives up if it has not been released with a team by the timeout, and 
+	 * null is returned. A seat it had taken is given back. An interrupt ends the wait the same way.
+	 * Both also return null for a login rejected or shed by AdmissionControl */
+	public String workerLogin(String role, long timeout, TimeUnit unit) {
+		return workerLogin(role, deadline(timeout, unit));
+	}
+	
+	private String workerLogin(String role, long deadline) {
 		
 		//lock protection
 		lock.lock();
 		try {
-			/* adding worker to the map*/
-			loginWorker(role);
+			int roleId = roleId(role);
+			
+			//a worker taking over the place of one recovered from the journal has been counted already
+			boolean recovered = recoveredWorkers[roleId] > 0;
+			if (recovered) {
+				recoveredWorkers[roleId]--;
+			}
+			else if (!admitLogin(roleId, deadline)) {
+				metrics.rejectedLogins.increment();
+				return null;
+			}
+			
+			/* adding worker to the available workers*/
+			loginWorker(roleId);
+			long loginTime = System.nanoTime();
+			
+			//per-role mode: take a reachable seat or wait to be handed a team by the manager
+			if (perRoleQueues) {
+				while (true) {
+					TeamRequest team = recovered ? awaitHandOff(roleId, deadline) : joinTeam(roleId, deadline);
+					recovered = false;
+					if (team == null) {
+						return null;
+					}
+					if (!awaitFilled(team, deadline)) {
+						//gave up holding a seat: give it back, a waiting worker may take it
+						requestsMade.unseat(team, roleId);
+						metrics.abandonedLogins.increment();
+						requestsMade.match();
+						return null;
+					}
+					if (!team.cancelled) {
+						metrics.idleWorkerNanos.add(System.nanoTime() - loginTime);
+						return team.name;
+					}
+					//the request was withdrawn, log in again
+				}
+			}
 			
 			/* check possible scenarios: 
 			 * if the team in the request is null
 			 * if the request contains the needed role 
 			 * if the request for the role requirement has already fulfilled
+			 * (with non-head-of-line matching later requests are also checked, see findSeat)
 			 * if scenarios are positive, then add the worker to the team
 			 * else use await. this will block the worker thread until a signal is called on it (use c.v. workerCondition)
 			 * */
+			//set once this worker has been woken up, so a wakeup that ends in another await can be counted
+			boolean woken = false;
 			while (true) {
 				
-				//checking if the linkedHashMap is empty before getting its head value
+				//checking if the queue is empty before looking for a seat
 				if(requestsMade.isEmpty()) {
-					workerCondition.awaitUninterruptibly();
+					if (expired(deadline)) {
+						return abandon(roleId);
+					}
+					woken = awaitRole(roleId, woken, deadline);
 				}
 				else {
-				 Map.Entry<String, Map<String, Integer>> head = requestsMade.entrySet().iterator().next();	
-				 Map<String, Integer> team = head.getValue();
-				 String teamName = head.getKey();
+				 TeamRequest team = requestsMade.findSeat(roleId);	
 							
-					if((team != null) && team.containsKey(role) &&  team.get(role) > 0) {
-						
+					if(team != null) {
+						 String teamName = team.name;
 				
 							/* Add the worker to the team */
-							addWorker(team, role);
+							addWorker(team, roleId);
 							
 							//if the team has no worker requirement left, remove the team request
 							if (canProceed(team)) {
 								
-								//if the request was by a drillerTeam, unblock the driller
-								if(byDriller) {
-									drillerConditon.signal();
-								}
-								
-								requestsMade.remove(teamName);
+								requestsMade.complete(team);
+								metrics.idleWorkerNanos.add(System.nanoTime() - loginTime);
 								return(teamName);
 							}
 							
 							
 							//unblock a waiting worker
 							workerCondition.signal();
+							metrics.signals.increment();
 							
 							
-							//block until the request can be processed
-							isFulfilled.awaitUninterruptibly();
+							//block until this team's request can be processed
+							if (!awaitFilled(team, deadline)) {
+								//gave up holding a seat: give it back and let a waiting worker take it
+								requestsMade.unseat(team, roleId);
+								metrics.abandonedLogins.increment();
+								workerCondition.signal();
+								metrics.signals.increment();
+								return null;
+							}
+							if (team.cancelled) {
+								//the request was withdrawn, log in again
+								requestsMade.login(roleId);
+								woken = false;
+								continue;
+							}
+							metrics.idleWorkerNanos.add(System.nanoTime() - loginTime);
 							//return the team name as per requirements
 							return teamName;
 						}
 						else {
-							workerCondition.awaitUninterruptibly();	
+							if (expired(deadline)) {
+								return abandon(roleId);
+							}
+							woken = awaitRole(roleId, woken, deadline);
 						}
 					}
 				}
@@ -156,33 +507,424 @@ public class DrillLoginManager implements Manager {
 		}	
 	}
 	
-	//using helper functions to simplify workerLogin
+	/* login for a worker certified for several roles, who may be given a seat for any of them 
+	 * (see TeamMatcher.arriveSkilled). Works in both modes: with per-role queues the manager hands the worker
+	 * a seat, in shared mode the worker looks for one itself each time it is woken. A login with no roles, or
+	 * with one past the first 64 roles the manager has seen, is rejected and returns null */
+	public String workerLogin(Set<String> roles) {
+		
+		//lock protection
+		lock.lock();
+		try {
+			for (String role : roles) {
+				roleId(role);
+			}
+			long skills = requestsMade.skills(roles);
+			if (skills == 0) {
+				metrics.rejectedLogins.increment();
+				return null;
+			}
+			SkilledLogin worker = new SkilledLogin(skills, lock.newCondition());
+			long loginTime = System.nanoTime();
+			if (!perRoleQueues) {
+				return sharedSkilledLogin(worker, loginTime);
+			}
+			
+			while (true) {
+				//take a seat straight away or wait until the manager hands this worker one
+				if (requestsMade.arriveSkilled(worker) == null) {
+					while (worker.team == null) {
+						lock.pauseHold();
+						worker.handed.awaitUninterruptibly();
+						lock.resumeHold();
+						metrics.wakeups.increment();
+					}
+				}
+				TeamRequest team = worker.team;
+				awaitFilled(team, UNTIMED);
+				if (!team.cancelled) {
+					metrics.idleWorkerNanos.add(System.nanoTime() - loginTime);
+					return team.name;
+				}
+				//the request was withdrawn, log in again
+				worker.team = null;
+				worker.seat = -1;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
 	
-	/* if the role is already in the map, update the count of workers for that role
-	 * else, create a key-value for that role and set count to 1 */
-	private void loginWorker(String role) {
-		if (availableWorkers.containsKey(role)) {
-			int workerCount = availableWorkers.get(role);
-			availableWorkers.put(role, workerCount + 1);
+	/* shared mode: the multi-skilled worker takes a reachable seat for any of its roles, as a single-role worker
+	 * does for its one role, or parks on workerCondition with the other workers and looks again when woken. 
+	 * Requests signal a worker per seat, so like single-role workers it may be woken for a seat it cannot take */
+	private String sharedSkilledLogin(SkilledLogin worker, long loginTime) {
+		requestsMade.loginSkilled();
+		//any of its roles: in shared mode they all wait on workerCondition
+		int anyRole = Long.numberOfTrailingZeros(worker.skills);
+		boolean woken = false;
+		while (true) {
+			TeamRequest team = requestsMade.seatSkilled(worker);
+			if (team == null) {
+				skilledParked++;
+				woken = awaitRole(anyRole, woken, UNTIMED);
+				skilledParked--;
+				continue;
+			}
+			if (team.open > 0) {
+				//unblock a waiting worker, as a single-role worker does after taking a seat
+				workerCondition.signal();
+				metrics.signals.increment();
+			}
+			awaitFilled(team, UNTIMED);
+			if (!team.cancelled) {
+				metrics.idleWorkerNanos.add(System.nanoTime() - loginTime);
+				return team.name;
+			}
+			//the request was withdrawn, log in again
+			worker.team = null;
+			worker.seat = -1;
+			woken = false;
 		}
-		else {
-			availableWorkers.put(role, 1);
+	}
+	
+	//using helper functions to simplify workerLogin
+	
+	/* update the count of workers for that role */
+	private void loginWorker(int roleId) {
+		if (!perRoleQueues) {
+			requestsMade.login(roleId);
 		}
-		workerCount ++;
 	}
 	
 	/* decrement the number of workers needed for that role in the request
 	 * also remove the worker from available workers (similar decrement from role) */
-	private void addWorker(Map<String, Integer> team, String role) {
-		team.put(role, team.get(role) - 1);
-		availableWorkers.put(role, availableWorkers.get(role) -1);
+	private void addWorker(TeamRequest team, int roleId) {
+		requestsMade.take(team, roleId);
+		loginRoomMade(roleId, 1);
+	}
+	
+	/* per-role mode: take a seat straight away if one is reachable, otherwise wait on the role's queue
+	 * until the manager hands this worker a team. Returns null if the worker gave up or was shed */
+	private TeamRequest joinTeam(int roleId, long deadline) {
+		TeamRequest team = requestsMade.arrive(roleId);
+		if (team != null) {
+			return team;
+		}
+		return awaitHandOff(roleId, deadline);
 	}
 	
-	private void callSignal(Map<String, Integer> request) {
+	/* per-role mode: wait, counted as waiting, until the manager hands this worker a team or sheds it. The seat 
+	 * taken for a hand-off has already been filled */
+	private TeamRequest awaitHandOff(int roleId, long deadline) {
+		ParkedWorker worker = new ParkedWorker();
+		parked[roleId].add(worker);
+		boolean woken = false;
+		while (true) {
+			if (worker.shed) {
+				//already counted out; a team handed off meanwhile is left to the next worker woken
+				shedLogins[roleId]--;
+				if (!handoffs[roleId].isEmpty()) {
+					conditionFor(roleId).signal();
+				}
+				return null;
+			}
+			if (woken && shedLogins[roleId] > 0) {
+				//the wakeup may have been meant for the worker shed
+				conditionFor(roleId).signal();
+			}
+			if (!handoffs[roleId].isEmpty()) {
+				worker.left = true;
+				return handoffs[roleId].poll();
+			}
+			if (expired(deadline)) {
+				//not handed a team, so this worker is still counted as waiting
+				worker.left = true;
+				requestsMade.logout(roleId);
+				metrics.abandonedLogins.increment();
+				loginRoomMade(roleId, 1);
+				return null;
+			}
+			woken = awaitRole(roleId, woken, deadline);
+		}
+	}
+	
+	//per-role mode: the longest parked worker of the role that is still parked and not shed, or null
+	private ParkedWorker oldestParked(int roleId) {
+		ArrayDeque<ParkedWorker> queue = parked[roleId];
+		while (!queue.isEmpty() && queue.peek().left) {
+			queue.poll();
+		}
+		return queue.poll();
+	}
+	
+	//shared mode: a waiting worker gives up
+	private String abandon(int roleId) {
+		requestsMade.logout(roleId);
+		metrics.abandonedLogins.increment();
+		loginRoomMade(roleId, 1);
+		return null;
+	}
+	
+	/* make room for a new request under the admission caps, shedding or blocking as configured. 
+	 * Returns false if the request is to be rejected */
+	private boolean admitRequest() {
+		if (requestsMade.pendingRequests() < admission.maxPendingRequests) {
+			return true;
+		}
+		switch (admission.overflow) {
+		case SHED_OLDEST:
+			cancel(requestsMade.oldest());
+			metrics.shedRequests.increment();
+			return true;
+		case BLOCK:
+			long blockUntil = deadline(admission.blockNanos, TimeUnit.NANOSECONDS);
+			while (requestsMade.pendingRequests() >= admission.maxPendingRequests) {
+				if (expired(blockUntil)) {
+					return false;
+				}
+				awaitRoom(requestRoom, blockUntil);
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/* as admitRequest, for a worker of this role about to log in. A timed login blocks until its own deadline
+	 * at most. In shared mode parked workers are not kept in any order, so SHED_OLDEST rejects the newcomer */
+	private boolean admitLogin(int roleId, long deadline) {
+		if (requestsMade.waiting(roleId) < admission.maxWaitingPerRole) {
+			return true;
+		}
+		switch (admission.overflow) {
+		case SHED_OLDEST:
+			if (!perRoleQueues) {
+				return false;
+			}
+			ParkedWorker oldest = oldestParked(roleId);
+			if (oldest == null) {
+				//every worker counted as waiting is a recovered one still to log in again: nobody to shed
+				return false;
+			}
+			oldest.shed = true;
+			requestsMade.logout(roleId);
+			shedLogins[roleId]++;
+			conditionFor(roleId).signal();
+			metrics.shedLogins.increment();
+			return true;
+		case BLOCK:
+			long blockUntil = deadline(admission.blockNanos, TimeUnit.NANOSECONDS);
+			if (deadline != UNTIMED && deadline - blockUntil < 0) {
+				blockUntil = deadline;
+			}
+			while (requestsMade.waiting(roleId) >= admission.maxWaitingPerRole) {
+				if (expired(blockUntil)) {
+					return false;
+				}
+				if (loginRoom[roleId] == null) {
+					loginRoom[roleId] = lock.newCondition();
+				}
+				awaitRoom(loginRoom[roleId], blockUntil);
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	//count workers of this role have stopped waiting: let that many logins blocked for room in
+	private void loginRoomMade(int roleId, int count) {
+		Condition room = loginRoom[roleId];
+		if (room != null) {
+			for (int i = 0; i < count; i++) {
+				room.signal();
+			}
+		}
+	}
+	
+	//block a caller waiting for room under the admission caps, until the deadline at most
+	private void awaitRoom(Condition room, long deadline) {
+		lock.pauseHold();
+		try {
+			room.awaitNanos(deadline - System.nanoTime());
+		}
+		catch (InterruptedException e) {
+			//keep the status: expired() sees it and the caller is rejected
+			Thread.currentThread().interrupt();
+		}
+		lock.resumeHold();
+	}
+	
+	/* rebuild the queue and the waiting workers from the journal, before journaling starts. The workers it
+	 * recorded are logged in again as recovered workers (see recoveredWorkers): those seated in a request take
+	 * their seat back and are put on the role's hand-off queue, the others are counted as waiting */
+	private void recover(Journal.State recovered) {
+		//new team names carry on after the last one given out, whether or not its request is still queued
+		teamCount = recovered.teamCount;
+		for (String role : recovered.roles) {
+			roleId(role);
+		}
+		for (Journal.SavedRequest saved : recovered.requests.values()) {
+			TeamRequest request = new TeamRequest(saved.name, saved.seats.clone(), lock.newCondition());
+			request.priority = saved.priority;
+			request.hasLead = saved.hasLead;
+			if (saved.hasDeadline) {
+				request.hasDeadline = true;
+				request.deadline = deadline(saved.deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			}
+			requestsMade.add(request);
+			queuedByName.put(saved.name, request);
+			if (saved.hasLead) {
+				recoveredLeads.put(saved.name, request);
+			}
+			for (int roleId = 0; roleId < saved.filled.length; roleId++) {
+				for (int i = 0; i < saved.filled[roleId]; i++) {
+					requestsMade.login(roleId);
+					requestsMade.take(request, roleId);
+					handoffs[roleId].add(request);
+					recoveredWorkers[roleId]++;
+				}
+			}
+		}
+		for (int roleId = 0; roleId < recovered.roles.size(); roleId++) {
+			for (int i = 0; i < recovered.waiting(roleId); i++) {
+				requestsMade.login(roleId);
+				recoveredWorkers[roleId]++;
+			}
+		}
+		requestsMade.match();
+		deadlineTicker.deadlineQueued();
+	}
+	
+	//the matcher's journaled state and the anonymous team count, for a checkpoint; called with the lock held
+	private Journal.State journalState() {
+		Journal.State state = requestsMade.journalState();
+		state.teamCount = teamCount;
+		return state;
+	}
+	
+	//the name of a new anonymous team, journaled so a restarted manager does not give it out again
+	private String nextTeamName() {
+		teamCount++;
+		if (journal != null) {
+			journal.teams(teamCount);
+		}
+		return "team" + teamCount;
+	}
+	
+	/* force the journal to disk now rather than at the end of the commit window, e.g. before a planned 
+	 * shutdown. Does nothing for a manager without a journal */
+	public void syncJournal() {
+		lock.lock();
+		try {
+			if (journal != null) {
+				journal.sync();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/* stop journaling and release the journal: what has been appended is forced to disk, then its commit 
+	 * thread ends and its segment is unmapped, so the directory can be recovered by a new manager. The manager
+	 * itself keeps working, in memory only. Does nothing for a manager without a journal */
+	@Override
+	public void close() {
+		Journal closing;
+		lock.lock();
+		try {
+			closing = journal;
+			journal = null;
+			requestsMade.removeJournal();
+		}
+		finally {
+			lock.unlock();
+		}
+		//the commit thread needs the lock to finish
+		if (closing != null) {
+			closing.close();
+		}
+	}
+	
+	/* withdraw a queued request and release whoever is parked on it; they see it was cancelled.
+	 * The queue in front of the waiting workers may have changed, so they are given another look */
+	private void cancel(TeamRequest request) {
+		queuedByName.remove(request.name, request);
+		requestsMade.cancel(request);
+		request.release();
+		requestRoom.signal();
+		TeamRequest head = requestsMade.requests.peek();
+		if (head != null) {
+			callSignal(head);
+		}
+	}
+	
+	/* the id of a role, growing the per-role arrays when a new role is registered */
+	private int roleId(String role) {
+		int roleId = requestsMade.roleId(role);
+		if (roleId >= roleConditions.length) {
+			Condition[] grownConditions = new Condition[roleConditions.length * 2];
+			System.arraycopy(roleConditions, 0, grownConditions, 0, roleConditions.length);
+			roleConditions = grownConditions;
+			Condition[] grownRoom = new Condition[loginRoom.length * 2];
+			System.arraycopy(loginRoom, 0, grownRoom, 0, loginRoom.length);
+			loginRoom = grownRoom;
+			int[] grownShed = new int[shedLogins.length * 2];
+			System.arraycopy(shedLogins, 0, grownShed, 0, shedLogins.length);
+			shedLogins = grownShed;
+			int[] grownRecovered = new int[recoveredWorkers.length * 2];
+			System.arraycopy(recoveredWorkers, 0, grownRecovered, 0, recoveredWorkers.length);
+			recoveredWorkers = grownRecovered;
+			ArrayDeque<TeamRequest>[] grownHandoffs = newQueues(handoffs.length * 2);
+			System.arraycopy(handoffs, 0, grownHandoffs, 0, handoffs.length);
+			handoffs = grownHandoffs;
+			ArrayDeque<ParkedWorker>[] grownParked = newQueues(parked.length * 2);
+			System.arraycopy(parked, 0, grownParked, 0, parked.length);
+			parked = grownParked;
+		}
+		return roleId;
+	}
+	
+	/* convert a request map into seats per role id, registering its roles */
+	private int[] toSeats(Map<String, Integer> team) {
+		for (String role : team.keySet()) {
+			roleId(role);
+		}
+		return requestsMade.toSeats(team);
+	}
+	
+	private int[] toSeats(Map<String, Integer> team, String leadRole) {
+		for (String role : team.keySet()) {
+			roleId(role);
+		}
+		return requestsMade.toSeats(team, leadRole);
+	}
+	
+	/* per-role mode: the matcher has filled seats from the waiting workers of this role, 
+	 * hand the team to exactly that many of them */
+	private void handOff(TeamRequest team, int roleId, int count) {
+		Condition condition = conditionFor(roleId);
+		for (int i = 0; i < count; i++) {
+			handoffs[roleId].add(team);
+			condition.signal();
+		}
+		metrics.signals.add(count);
+		loginRoomMade(roleId, count);
+	}
+	
+	private void callSignal(TeamRequest request) {
+		
+		//with per-role queues the manager fills the request from the waiting workers itself
+		if (perRoleQueues) {
+			requestsMade.match();
+			return;
+		}
 		int requestCount = 0;
 		
-		 for (Map.Entry<String, Integer> roles : request.entrySet()) {
-			 int currCount = roles.getValue();
+		 for (int currCount : request.seats) {
 			 requestCount += currCount;
 		 }
 
@@ -190,20 +932,160 @@ public class DrillLoginManager implements Manager {
 		{
 			workerCondition.signal();
 		}
+		metrics.signals.add(requestCount);
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> ArrayDeque<T>[] newQueues(int length) {
+		ArrayDeque<T>[] queues = new ArrayDeque[length];
+		for (int i = 0; i < length; i++) {
+			queues[i] = new ArrayDeque<>();
+		}
+		return queues;
+	}
+	
+	//the condition a worker of this role waits on, created the first time the role is seen
+	private Condition conditionFor(int roleId) {
+		if (!perRoleQueues) {
+			return workerCondition;
+		}
+		Condition condition = roleConditions[roleId];
+		if (condition == null) {
+			condition = lock.newCondition();
+			roleConditions[roleId] = condition;
+		}
+		return condition;
+	}
+	
+	/* every wait in this manager parks on a condition, here and in awaitFilled, awaitRoom and the multi-skilled 
+	 * login. The rules at the top forbid busy waiting, so unlike AsyncDrillLoginManager and 
+	 * LockFreeDrillLoginManager it takes no WaitStrategy: it always waits as WaitStrategy.BLOCK does */
+	
+	/* block the worker on its role's queue, until the deadline at most. Returns true so the caller knows it 
+	 * has been woken, which lets a second await be counted as a wasted wakeup */
+	private boolean awaitRole(int roleId, boolean woken, long deadline) {
+		if (woken) {
+			metrics.wastedWakeups.increment();
+		}
+		lock.pauseHold();
+		if (deadline == UNTIMED) {
+			conditionFor(roleId).awaitUninterruptibly();
+		}
+		else {
+			try {
+				conditionFor(roleId).awaitNanos(deadline - System.nanoTime());
+			}
+			catch (InterruptedException e) {
+				//keep the status: expired() sees it and the worker gives up
+				Thread.currentThread().interrupt();
+			}
+		}
+		lock.resumeHold();
+		metrics.wakeups.increment();
+		return true;
+	}
+	
+	/* block until the team is assembled or cancelled, or the deadline passes (returning false); 
+	 * the time parked does not count as holding the lock */
+	private boolean awaitFilled(TeamRequest team, long deadline) {
+		lock.pauseHold();
+		boolean filled = true;
+		if (deadline == UNTIMED) {
+			team.awaitFilled();
+		}
+		else {
+			filled = team.awaitFilled(deadline);
+		}
+		lock.resumeHold();
+		return filled;
+	}
+	
+	private static long deadline(long timeout, TimeUnit unit) {
+		return System.nanoTime() + unit.toNanos(timeout);
+	}
+	
+	//a timed wait is over once its deadline has passed or the thread has been interrupted
+	private static boolean expired(long deadline) {
+		return deadline != UNTIMED && (deadline - System.nanoTime() <= 0 || Thread.currentThread().isInterrupted());
+	}
+	
+	//a multi-skilled worker, woken through its own condition when the manager gives it a seat
+	private static final class SkilledLogin extends TeamMatcher.SkilledWorker {
+		final Condition handed;
+		
+		SkilledLogin(long skills, Condition handed) {
+			super(skills);
+			this.handed = handed;
+		}
 	}
 	
 	//checking if the team has any worker requirements left
-	private boolean canProceed(Map<String, Integer> team) {
-		for (int count : team.values()) {
-			if (count != 0) {
-				return false;
+	private boolean canProceed(TeamRequest team) {
+		return team.open == 0;
+	}
+	
+	/* a read-only view of the queue and the waiting workers, for dashboards (see ManagerSnapshot): a volatile
+	 * read of the last snapshot published. The first call takes the lock once, to have the threads making 
+	 * changes publish them from then on, at most once per TeamMatcher.SNAPSHOT_INTERVAL_NANOS (see 
+	 * SnapshotPublisher) */
+	public ManagerSnapshot snapshot() {
+		ManagerSnapshot published = requestsMade.publishedSnapshot();
+		return (published != null) ? published : snapshots.start();
+	}
+	
+	/* the stream of requests, logins and seat assignments (see EventStream), created on the first call. Events
+	 * are only published while a consumer is subscribed */
+	public EventStream events() {
+		lock.lock();
+		try {
+			if (events == null) {
+				events = new EventStream(lock, EventStream.DEFAULT_CAPACITY);
+				requestsMade.setEvents(events);
 			}
+			return events;
 		}
-		for(int i = 0; i < workerCount; i++){
-			
-		//signal that the request can be processed
-		isFulfilled.signal();
+		finally {
+			lock.unlock();
 		}
-		return true;
+	}
+	
+	/* measurement helpers: totals since the manager was created. These read the metrics, so polling them
+	 * never takes the lock */
+	
+	public ManagerMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public long getRequestCount() {
+		return metrics.getRequests();
+	}
+	
+	public long getSignalCount() {
+		return metrics.getSignalsSent();
+	}
+	
+	public long getWakeupCount() {
+		return metrics.getWakeups();
+	}
+	
+	public long getTeamsCompleted() {
+		return metrics.getTeamsCompleted();
+	}
+	
+	//total time workers have spent inside workerLogin before being released with a team
+	public double getIdleWorkerSeconds() {
+		return metrics.getIdleWorkerSeconds();
+	}
+	
+	public long getWastedWakeupCount() {
+		return metrics.getWastedWakeups();
+	}
+	
+	//per-role mode: a worker parked in awaitHandOff, in its role's parked queue
+	private static final class ParkedWorker {
+		//picked by admitLogin to make room; set under the lock
+		boolean shed;
+		//handed a team or gave up; dropped from the queue once it reaches the front
+		boolean left;
 	}
 }
@@ -0,0 +1,195 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/* what a manager does, as a stream of events for downstream systems (payroll, PPE issuing, safety rosters):
+ * requests queued, cancelled and assembled, workers logging in and out, and each seat a worker is assigned
+ * to. A worker released from workerLogin with a team name shows up as an ASSIGNED event for that team and
+ * role, followed by the team's ASSEMBLED event.
+ *
+ * Events go into a ring of preallocated slots, one array per field, so publishing one allocates nothing.
+ * The manager publishes with its lock held, which makes it the ring's only writer: a slot is filled with plain
+ * writes and published by one volatile write of the cursor. Every consumer reads on its own thread, in
+ * batches, without the manager's lock, and hands each slot back by a volatile write of its own sequence.
+ *
+ * The writer never waits for consumers, since it runs under the manager's lock. While the slowest consumer is
+ * a whole ring behind, new events are dropped and counted (see getDropped) rather than overwriting unread
+ * ones. Consumer.lag and remainingCapacity show how close the stream is to that */
+public class EventStream {
+
+	//a request queued: team, count = seats asked for
+	public static final byte REQUEST = 0;
+	//a worker logged in: role (null for a multi-skilled worker), count = 1
+	public static final byte LOGIN = 1;
+	//a waiting worker left without a seat (gave up, shed or moved to another shard): role, count = 1
+	public static final byte LOGOUT = 2;
+	//a worker took a seat: team, role, count = 1
+	public static final byte ASSIGNED = 3;
+	//a worker gave a seat back before the team was assembled: team, role, count = 1
+	public static final byte UNSEATED = 4;
+	//a request withdrawn before it was assembled: team
+	public static final byte CANCELLED = 5;
+	//a team assembled and its members released: team, count = team size
+	public static final byte ASSEMBLED = 6;
+
+	static final int DEFAULT_CAPACITY = 1 << 14;
+
+	private final ReentrantLock lock;
+
+	private final int mask;
+	private final byte[] kinds;
+	private final String[] teams;
+	private final String[] roles;
+	private final int[] counts;
+	private final long[] times;
+
+	//the last sequence published: slots up to it may be read
+	private volatile long cursor = -1;
+
+	//subscribed consumers, replaced as a whole under the manager's lock
+	private volatile Consumer[] consumers = new Consumer[0];
+
+	/* the sequence of the slowest consumer when the writer last looked. Only rechecked once the ring looks
+	 * full from here, so a writer well ahead of its consumers does not read their sequences at all */
+	private long gate = -1;
+
+	//events not published because the slowest consumer was a whole ring behind
+	private volatile long dropped = 0;
+
+	//lock is the manager's, which guards publish and subscriptions; capacity is rounded up to a power of two
+	EventStream(ReentrantLock lock, int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.lock = lock;
+		this.mask = size - 1;
+		this.kinds = new byte[size];
+		this.teams = new String[size];
+		this.roles = new String[size];
+		this.counts = new int[size];
+		this.times = new long[size];
+	}
+
+	/* publish an event, with the manager's lock held. Nothing is written while nobody is subscribed */
+	void publish(byte kind, String team, String role, int count) {
+		Consumer[] current = consumers;
+		if (current.length == 0) {
+			return;
+		}
+		long next = cursor + 1;
+		if (next - kinds.length > gate) {
+			gate = slowest(current);
+			if (next - kinds.length > gate) {
+				dropped++;
+				return;
+			}
+		}
+		int slot = (int) next & mask;
+		kinds[slot] = kind;
+		teams[slot] = team;
+		roles[slot] = role;
+		counts[slot] = count;
+		times[slot] = System.nanoTime();
+		cursor = next;
+	}
+
+	private static long slowest(Consumer[] consumers) {
+		long slowest = Long.MAX_VALUE;
+		for (Consumer consumer : consumers) {
+			slowest = Math.min(slowest, consumer.sequence);
+		}
+		return slowest;
+	}
+
+	/* a new consumer, which sees the events published from now on. Poll it from one thread at a time, and
+	 * close it when done: an abandoned consumer holds the stream back until events are dropped */
+	public Consumer subscribe() {
+		lock.lock();
+		try {
+			Consumer consumer = new Consumer(cursor);
+			Consumer[] current = consumers;
+			Consumer[] grown = Arrays.copyOf(current, current.length + 1);
+			grown[current.length] = consumer;
+			consumers = grown;
+			return consumer;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void unsubscribe(Consumer consumer) {
+		lock.lock();
+		try {
+			Consumer[] current = consumers;
+			for (int i = 0; i < current.length; i++) {
+				if (current[i] == consumer) {
+					Consumer[] shrunk = new Consumer[current.length - 1];
+					System.arraycopy(current, 0, shrunk, 0, i);
+					System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+					consumers = shrunk;
+					gate = -1;
+					return;
+				}
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int capacity() {
+		return kinds.length;
+	}
+
+	//the last sequence published, -1 before the first event
+	public long getCursor() {
+		return cursor;
+	}
+
+	//slots free before events are dropped: the ring size less what the slowest consumer has yet to read
+	public long remainingCapacity() {
+		Consumer[] current = consumers;
+		return (current.length == 0) ? kinds.length : kinds.length - (cursor - slowest(current));
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	//receives the events of a batch; its arguments are the slot's fields, so reading allocates nothing
+	public interface Handler {
+		void onEvent(long sequence, byte kind, String team, String role, int count, long nanoTime);
+	}
+
+	/* one reader of the stream, with its own position. Not thread safe: each consumer is polled by one
+	 * thread at a time */
+	public final class Consumer implements AutoCloseable {
+		//the last sequence read; slots up to it may be reused by the writer
+		private volatile long sequence;
+
+		private Consumer(long sequence) {
+			this.sequence = sequence;
+		}
+
+		/* hand up to maxBatch of the events published since the last poll to the handler, in order, then give
+		 * their slots back to the writer. Returns the number handled, 0 if there was nothing new */
+		public int poll(Handler handler, int maxBatch) {
+			long from = sequence;
+			long to = Math.min(cursor, from + maxBatch);
+			for (long next = from + 1; next <= to; next++) {
+				int slot = (int) next & mask;
+				handler.onEvent(next, kinds[slot], teams[slot], roles[slot], counts[slot], times[slot]);
+			}
+			sequence = to;
+			return (int) (to - from);
+		}
+
+		//events published that this consumer has not read yet
+		public long lag() {
+			return cursor - sequence;
+		}
+
+		@Override
+		public void close() {
+			unsubscribe(this);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/* flat combining over a manager's lock. A thread posts its operation in a slot of its own and then either
+ * finds it applied by another thread, or gets the lock and applies the pending operations of every thread in
+ * one pass, its own included. The matcher stays a plain single-owner structure; what changes is that under
+ * contention the lock, and the matcher's data with it, moves between cores once per pass instead of once per
+ * operation, and a waiting thread spins on its own slot rather than queuing on the lock.
+ *
+ * Operations must be short and must not wait under the lock: a thread that fails to get the lock spins on its
+ * slot, yielding after a while, rather than parking. Anything thrown by an operation, Errors included, is
+ * rethrown to the thread that posted it. A slot is linked in on its thread's first operation, and unlinked by
+ * the combiner once it has gone MAX_IDLE combines without one, so a pass only looks at the slots of threads
+ * that have used the combiner lately; a thread whose slot was unlinked links it in again as it posts */
+final class FlatCombiner {
+
+	//spins on the slot before yielding between looks
+	private static final int SPINS = 64;
+
+	//passes a combiner makes over the slots at most, as long as each one finds work
+	private static final int PASSES = 4;
+
+	//combines a slot may go without an operation before it is unlinked
+	static final int MAX_IDLE = 64;
+
+	private final MeteredLock lock;
+	//releases the lock after a pass, doing whatever the owner does on the way out
+	private final Runnable unlock;
+	private final ManagerMetrics metrics;
+
+	private final AtomicReference<Slot> slots = new AtomicReference<Slot>();
+	private final ThreadLocal<Slot> slot = ThreadLocal.withInitial(this::register);
+
+	FlatCombiner(MeteredLock lock, Runnable unlock, ManagerMetrics metrics) {
+		this.lock = lock;
+		this.unlock = unlock;
+		this.metrics = metrics;
+	}
+
+	//run the operation with the lock held, by this thread or by whichever thread is combining
+	@SuppressWarnings("unchecked")
+	<T> T apply(Supplier<T> operation) {
+		Slot mine = slot.get();
+		if (mine.active) {
+			//called again from code run by unlock, e.g. a future's callback: the slot is still in use
+			lock.lock();
+			try {
+				return operation.get();
+			}
+			finally {
+				unlock.run();
+			}
+		}
+		mine.active = true;
+		try {
+			mine.operation = operation;
+			for (int spins = 0; mine.operation != null; spins++) {
+				if (!mine.linked) {
+					//unlinked as idle, possibly after the operation was posted: no combiner can see it until linked
+					link(mine);
+				}
+				if (!lock.isLocked() && lock.tryLock()) {
+					try {
+						combine();
+					}
+					finally {
+						unlock.run();
+					}
+				}
+				else if (spins >= SPINS) {
+					Thread.yield();
+				}
+			}
+			Throwable failure = mine.failure;
+			Object result = mine.result;
+			mine.failure = null;
+			mine.result = null;
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+			if (failure != null) {
+				//a checked exception, thrown past the compiler's checks
+				throw new IllegalStateException(failure);
+			}
+			return (T) result;
+		}
+		finally {
+			mine.active = false;
+		}
+	}
+
+	/* apply every posted operation, with the lock held. The volatile write that clears a slot publishes its result.
+	 * The first pass also ages the slots without an operation and unlinks those idle for MAX_IDLE combines. The
+	 * first slot in the list is never unlinked, as threads push new slots in front of it without the lock */
+	private void combine() {
+		for (int pass = 0; pass < PASSES; pass++) {
+			int applied = 0;
+			Slot kept = null;
+			for (Slot posted = slots.get(); posted != null; ) {
+				//read before the slot may be unlinked, after which its thread may push it again
+				Slot next = posted.next;
+				Supplier<?> operation = posted.operation;
+				if (operation != null) {
+					try {
+						posted.result = operation.get();
+					}
+					catch (Throwable e) {
+						posted.failure = e;
+					}
+					posted.idle = 0;
+					posted.operation = null;
+					applied++;
+					kept = posted;
+				}
+				else if (pass == 0 && kept != null && ++posted.idle > MAX_IDLE) {
+					posted.idle = 0;
+					posted.linked = false;
+					kept.next = next;
+				}
+				else {
+					kept = posted;
+				}
+				posted = next;
+			}
+			if (applied == 0) {
+				return;
+			}
+			metrics.combiningPasses.increment();
+			metrics.combinedOperations.add(applied);
+		}
+	}
+
+	//a new thread's slot, pushed onto the list
+	private Slot register() {
+		Slot slot = new Slot();
+		link(slot);
+		return slot;
+	}
+
+	//push the slot onto the list, by its own thread
+	private void link(Slot slot) {
+		slot.linked = true;
+		do {
+			slot.next = slots.get();
+		} while (!slots.compareAndSet(slot.next, slot));
+	}
+
+	//the slots linked in: one per thread that has used the combiner in the last MAX_IDLE combines, and a few more
+	int slotCount() {
+		int count = 0;
+		for (Slot linked = slots.get(); linked != null; linked = linked.next) {
+			count++;
+		}
+		return count;
+	}
+
+	//one thread's posted operation, and what applying it gave
+	private static final class Slot {
+		volatile Supplier<?> operation;
+		Object result;
+		Throwable failure;
+		Slot next;
+		//cleared by the combiner that unlinks the slot, set again by its thread as it pushes it back
+		volatile boolean linked;
+		//combines in a row that found no operation in the slot, counted by the combiners
+		int idle;
+		//the owning thread is inside apply; only ever read and written by that thread
+		boolean active;
+	}
+}
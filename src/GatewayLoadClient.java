@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/* load generator for ManagerGateway.
+ *
+ *   java GatewayLoadClient [connections] [depth] [seconds] [host port]
+ *
+ * Without host and port it starts a gateway on a free loopback port, in front of an AsyncDrillLoginManager.
+ * Every connection is a badge reader that keeps depth logins pending, logging a worker in again as soon as
+ * one is released; two in three log in Roustabouts and the rest Floorhands. One more connection is the
+ * dispatch console: it keeps a request for a team of two Roustabouts and a Floorhand queued for every three
+ * pending logins, and makes a new one as each is assembled. The client is a single thread with its own
+ * selector, pipelining every frame and writing each connection's frames together once per select.
+ * Reported: logins released per second, the time from sending a login to its reply (p50, p99, p99.9), and
+ * reply frames per read, which shows how far the gateway batched its replies */
+public class GatewayLoadClient {
+
+	private static final String[] ROLES = {"Roustabout", "Roustabout", "Floorhand"};
+
+	//latency samples kept; later samples overwrite the oldest
+	private static final int SAMPLES = 1 << 20;
+
+	public static void main(String[] args) throws IOException {
+		int connections = (args.length > 0) ? Integer.parseInt(args[0]) : 300;
+		int depth = (args.length > 1) ? Integer.parseInt(args[1]) : 30;
+		double seconds = (args.length > 2) ? Double.parseDouble(args[2]) : 5;
+		//whole teams' worth of readers, so the roles balance
+		connections = Math.max(ROLES.length, connections - connections % ROLES.length);
+
+		ManagerGateway gateway = null;
+		InetSocketAddress address;
+		if (args.length > 4) {
+			address = new InetSocketAddress(args[3], Integer.parseInt(args[4]));
+		}
+		else {
+			gateway = new ManagerGateway(new AsyncDrillLoginManager(), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			address = new InetSocketAddress(InetAddress.getLoopbackAddress(), gateway.port());
+		}
+		try {
+			Result result = run(address, connections, depth, seconds);
+			System.out.printf("%d connections x %d pending logins against %s for %.1fs%n", connections, depth, address, seconds);
+			System.out.printf("logins/s %.0f, teams %d, login reply p50 %.1fus p99 %.1fus p99.9 %.1fus, %.1f replies per read%n",
+					result.logins / result.seconds, result.teams, ManagerBenchmark.percentile(result.latencies, 0.50),
+					ManagerBenchmark.percentile(result.latencies, 0.99), ManagerBenchmark.percentile(result.latencies, 0.999),
+					(double) result.replies / Math.max(result.reads, 1));
+		}
+		finally {
+			if (gateway != null) {
+				gateway.close();
+			}
+		}
+	}
+
+	//drive the gateway at address for the given time
+	static Result run(InetSocketAddress address, int connections, int depth, double seconds) throws IOException {
+		Map<String, Integer> team = new LinkedHashMap<String, Integer>();
+		for (String role : ROLES) {
+			team.merge(role, 1, Integer::sum);
+		}
+		Result result = new Result();
+		List<Client> clients = new ArrayList<Client>();
+		try (Selector selector = Selector.open()) {
+			for (int c = 0; c <= connections; c++) {
+				SocketChannel channel = SocketChannel.open(address);
+				channel.socket().setTcpNoDelay(true);
+				channel.configureBlocking(false);
+				Client client = (c < connections) ? new Client(channel, ROLES[c % ROLES.length], depth) : new Client(channel, null, 0);
+				channel.register(selector, SelectionKey.OP_READ, client);
+				clients.add(client);
+			}
+			Client dispatcher = clients.get(connections);
+			long start = System.nanoTime();
+			for (Client client : clients) {
+				for (int slot = 0; slot < client.sentAt.length; slot++) {
+					client.login(slot, start);
+				}
+			}
+			for (int i = 0; i < connections * depth / ROLES.length; i++) {
+				dispatcher.request(team);
+			}
+
+			long end = start + (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+			for (long now = start; now < end; now = System.nanoTime()) {
+				for (Client client : clients) {
+					client.flush();
+				}
+				selector.select(TimeUnit.NANOSECONDS.toMillis(end - now) + 1);
+				for (SelectionKey key : selector.selectedKeys()) {
+					((Client) key.attachment()).read(result, team);
+				}
+				selector.selectedKeys().clear();
+			}
+			result.seconds = (System.nanoTime() - start) / 1e9;
+		}
+		finally {
+			for (Client client : clients) {
+				client.channel.close();
+			}
+		}
+		result.latencies = Arrays.copyOf(result.samples, (int) Math.min(result.logins, SAMPLES));
+		Arrays.sort(result.latencies);
+		return result;
+	}
+
+	//one connection: a badge reader with depth login slots, or the dispatch console if role is null
+	private static final class Client {
+		final SocketChannel channel;
+		final String role;
+		//when the login in each slot was sent; the slot is the login's id
+		final long[] sentAt;
+		int nextRequest = 0;
+		final ByteBuffer in = ByteBuffer.allocate(64 << 10);
+		final ByteBuffer out = ByteBuffer.allocate(1 << 20);
+
+		Client(SocketChannel channel, String role, int depth) {
+			this.channel = channel;
+			this.role = role;
+			this.sentAt = new long[depth];
+		}
+
+		void login(int slot, long now) {
+			sentAt[slot] = now;
+			ManagerGateway.writeFrame(out, ManagerGateway.LOGIN, slot, "", role, null);
+		}
+
+		void request(Map<String, Integer> team) {
+			ManagerGateway.writeFrame(out, ManagerGateway.REQUEST, nextRequest++, "", null, team);
+		}
+
+		void flush() throws IOException {
+			if (out.position() == 0) {
+				return;
+			}
+			out.flip();
+			channel.write(out);
+			out.compact();
+		}
+
+		//take the replies that have arrived, answering each with a new login or request
+		void read(Result result, Map<String, Integer> team) throws IOException {
+			if (channel.read(in) < 0) {
+				throw new IOException("gateway closed the connection");
+			}
+			result.reads++;
+			long now = System.nanoTime();
+			in.flip();
+			while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+				int length = in.getInt();
+				int next = in.position() + length;
+				int id = in.getInt();
+				byte status = in.get();
+				String text = ManagerGateway.readString(in);
+				in.position(next);
+				result.replies++;
+				if (status != ManagerGateway.ASSEMBLED) {
+					throw new IOException("gateway replied " + status + ": " + text);
+				}
+				if (role == null) {
+					result.teams++;
+					request(team);
+				}
+				else {
+					result.samples[(int) (result.logins++ & (SAMPLES - 1))] = now - sentAt[id];
+					login(id, now);
+				}
+			}
+			in.compact();
+		}
+	}
+
+	static final class Result {
+		long logins;
+		long teams;
+		long reads;
+		long replies;
+		double seconds;
+		final long[] samples = new long[SAMPLES];
+		long[] latencies;
+	}
+}
@@ -0,0 +1,728 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/* write-ahead journal of a matcher's queue: every request, cancellation, assembly, login, logout and seat
+ * taken or given back is appended as a small record, as is the count of anonymous team names given out, so a manager restarted on the same directory can rebuild
+ * its pending requests, their partial assignments and its waiting workers (see recover).
+ *
+ * Records go to segment files mapped into memory, so appending is a copy into the page cache under the
+ * manager's lock and never a system call. A kill of the JVM loses nothing that has been appended: the pages
+ * belong to the kernel. Against a crash of the machine the pages are forced to disk by a commit thread, at
+ * most once per commit window, so all the records appended in a window share one flush (group commit).
+ * Each record carries a CRC, and replay stops at the first torn one.
+ *
+ * Whenever a segment fills up a fresh segment is started, and the whole state as of its start is written to a
+ * snapshot file by the commit thread, without the lock. So replay reads one snapshot and at most a couple of
+ * segments' worth of records however long the manager has run. The commit thread also maps the next segment
+ * ahead of time and forces and unmaps the full ones, so starting a segment under the lock is a swap of buffers.
+ * Not thread safe apart from the commit thread: the owning matcher is guarded by its manager's lock, which the
+ * journal shares. close() ends the commit thread and releases the segment */
+final class Journal implements Runnable {
+
+	private static final byte ROLE = 1;
+	private static final byte REQUEST = 2;
+	private static final byte CANCEL = 3;
+	private static final byte COMPLETE = 4;
+	private static final byte LOGIN = 5;
+	private static final byte LOGOUT = 6;
+	private static final byte TAKE = 7;
+	private static final byte UNSEAT = 8;
+	private static final byte TEAMS = 9;
+
+	private static final byte HAS_LEAD = 1;
+	private static final byte HAS_DEADLINE = 2;
+
+	private static final String SNAPSHOT = "snapshot.bin";
+	//format 2 adds the anonymous team count; a format 1 snapshot is read as having none
+	private static final int SNAPSHOT_FORMAT = 2;
+
+	//length and CRC in front of every record
+	private static final int HEADER_BYTES = 8;
+
+	//a segment with less room than this left is full; smaller segments keep a quarter of themselves instead
+	private static final int ROLL_RESERVE = 4096;
+
+	private final File directory;
+	private final int segmentBytes;
+	private final int rollReserve;
+	private final long commitNanos;
+	private final Supplier<State> state;
+	private final ManagerMetrics metrics;
+
+	//the commit thread waits on this condition of the manager's lock for records to flush
+	private final MeteredLock lock;
+	private final Condition commit;
+	//sync waits on this while the commit thread forces the full segments it has taken
+	private final Condition retiredForced;
+	private final Thread thread;
+
+	//guarded by lock
+	private MappedByteBuffer segment;
+	private int segmentIndex;
+	//segment segmentIndex + 1, mapped ahead by the commit thread, or null
+	private MappedByteBuffer spare;
+	//full segments the commit thread has yet to force and unmap, and whether it is doing so for some it has taken
+	private final ArrayList<MappedByteBuffer> retired = new ArrayList<MappedByteBuffer>();
+	private boolean forcingRetired = false;
+	private boolean dirty = false;
+	//started segment whose checkpoint the commit thread has yet to write, or null
+	private Checkpoint pendingCheckpoint;
+	private boolean closed = false;
+	private ByteBuffer record = ByteBuffer.allocate(256);
+	private final CRC32 crc = new CRC32();
+
+	/* lastSegment is the last segment read by recover; the first checkpoint starts the one after it.
+	 * state gives the matcher's current state for checkpoints, and is called with the lock held */
+	Journal(File directory, int lastSegment, int segmentBytes, long commitWindow, TimeUnit unit,
+			MeteredLock lock, Supplier<State> state, ManagerMetrics metrics, String threadName) {
+		this.directory = directory;
+		this.segmentIndex = lastSegment;
+		this.segmentBytes = segmentBytes;
+		this.rollReserve = Math.min(ROLL_RESERVE, segmentBytes / 4);
+		this.commitNanos = unit.toNanos(commitWindow);
+		this.lock = lock;
+		this.commit = lock.newCondition();
+		this.retiredForced = lock.newCondition();
+		//segments after the last one recovered follow a torn record and were not replayed: new ones start zeroed
+		for (int index = lastSegment + 1; segmentFile(directory, index).delete(); index++) {
+			//dropped
+		}
+		this.state = state;
+		this.metrics = metrics;
+		this.thread = new Thread(this, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void role(int roleId, String name) {
+		begin(ROLE).putInt(roleId);
+		putString(name);
+		append();
+	}
+
+	void request(TeamRequest team) {
+		int roles = 0;
+		for (int seats : team.seats) {
+			if (seats > 0) {
+				roles++;
+			}
+		}
+		byte flags = (byte) ((team.hasLead ? HAS_LEAD : 0) | (team.hasDeadline ? HAS_DEADLINE : 0));
+		begin(REQUEST).putLong(team.sequence).putInt(team.priority).put(flags).putLong(toMillis(team));
+		putString(team.name);
+		room(4 + roles * 8).putInt(roles);
+		for (int roleId = 0; roleId < team.seats.length; roleId++) {
+			if (team.seats[roleId] > 0) {
+				record.putInt(roleId).putInt(team.seats[roleId]);
+			}
+		}
+		append();
+	}
+
+	void cancel(TeamRequest team) {
+		begin(CANCEL).putLong(team.sequence);
+		append();
+	}
+
+	void complete(TeamRequest team) {
+		begin(COMPLETE).putLong(team.sequence);
+		append();
+	}
+
+	void login(int roleId) {
+		begin(LOGIN).putInt(roleId);
+		append();
+	}
+
+	void logout(int roleId) {
+		begin(LOGOUT).putInt(roleId);
+		append();
+	}
+
+	void take(TeamRequest team, int roleId) {
+		begin(TAKE).putLong(team.sequence).putInt(roleId);
+		append();
+	}
+
+	void unseat(TeamRequest team, int roleId) {
+		begin(UNSEAT).putLong(team.sequence).putInt(roleId);
+		append();
+	}
+
+	//count anonymous team names have been given out, so a restarted manager never gives one out again
+	void teams(int count) {
+		begin(TEAMS).putInt(count);
+		append();
+	}
+
+	/* start the first segment and write the current state to the snapshot file before returning, for the 
+	 * journal being set up. Later checkpoints are written by the commit thread, see append */
+	void checkpoint() {
+		segment = map(segmentIndex + 1, segmentBytes);
+		segmentIndex++;
+		writeCheckpoint(new Checkpoint(state.get(), segmentIndex));
+	}
+
+	/* write a checkpoint to the snapshot file; the segments before its own are then no longer needed. The 
+	 * snapshot is written aside and renamed over the old one, so a crash part way through leaves the previous 
+	 * snapshot and its segments in place. Called without the lock, apart from the first checkpoint */
+	private void writeCheckpoint(Checkpoint checkpoint) {
+		try {
+			File written = new File(directory, SNAPSHOT + ".tmp");
+			FileOutputStream file = new FileOutputStream(written);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+				out.writeInt(SNAPSHOT_FORMAT);
+				out.writeInt(checkpoint.segment);
+				checkpoint.state.write(out);
+				out.flush();
+				file.getFD().sync();
+			}
+			Files.move(written.toPath(), new File(directory, SNAPSHOT).toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			for (int index = checkpoint.segment - 1; index >= 0 && segmentFile(directory, index).delete(); index--) {
+				//older segments were deleted by earlier checkpoints
+			}
+			metrics.journalCheckpoints.increment();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("journal checkpoint failed in " + directory, e);
+		}
+	}
+
+	/* force what has been appended so far to disk now, rather than at the end of the commit window. Full
+	 * segments the commit thread is forcing are waited for, as it unmaps them once they are forced */
+	void sync() {
+		lock.pauseHold();
+		while (forcingRetired) {
+			retiredForced.awaitUninterruptibly();
+		}
+		lock.resumeHold();
+		//another sync may be waiting too
+		retiredForced.signal();
+		for (MappedByteBuffer full : retired) {
+			full.force();
+		}
+		if (retired.isEmpty()) {
+			//otherwise left for the commit thread to unmap them
+			dirty = false;
+		}
+		segment.force();
+		metrics.journalCommits.increment();
+	}
+
+	/* the commit thread: once a record has been appended it waits out the commit window, so the records of
+	 * the other callers in that window join the same flush, and then forces the segment without the lock.
+	 * Segments that filled up meanwhile are forced and unmapped, a checkpoint due for a new segment is written, 
+	 * and the next segment is mapped if it has been taken. Ends once the journal is closed and flushed */
+	@Override
+	public void run() {
+		while (true) {
+			MappedByteBuffer flushed;
+			Checkpoint checkpoint;
+			ArrayList<MappedByteBuffer> full = null;
+			int nextSegment = -1;
+			lock.lock();
+			try {
+				lock.pauseHold();
+				while (!dirty && !closed) {
+					commit.awaitUninterruptibly();
+				}
+				if (!dirty) {
+					lock.resumeHold();
+					return;
+				}
+				long windowEnd = System.nanoTime() + commitNanos;
+				for (long left = commitNanos; left > 0 && !closed; left = windowEnd - System.nanoTime()) {
+					try {
+						commit.awaitNanos(left);
+					}
+					catch (InterruptedException e) {
+						//nobody else holds this thread, the window is simply cut short
+						break;
+					}
+				}
+				lock.resumeHold();
+				dirty = false;
+				flushed = segment;
+				checkpoint = pendingCheckpoint;
+				pendingCheckpoint = null;
+				if (!retired.isEmpty()) {
+					full = new ArrayList<MappedByteBuffer>(retired);
+					retired.clear();
+					forcingRetired = true;
+				}
+				if (spare == null && !closed) {
+					nextSegment = segmentIndex + 1;
+				}
+			}
+			finally {
+				lock.unlock();
+			}
+			if (full != null) {
+				for (MappedByteBuffer retiring : full) {
+					retiring.force();
+					unmap(retiring);
+				}
+				lock.lock();
+				try {
+					forcingRetired = false;
+					retiredForced.signal();
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+			flushed.force();
+			metrics.journalCommits.increment();
+			if (checkpoint != null) {
+				try {
+					writeCheckpoint(checkpoint);
+				}
+				catch (UncheckedIOException e) {
+					//the previous snapshot and the segments after it are kept, and replay just as well
+				}
+			}
+			if (nextSegment >= 0) {
+				mapSpare(nextSegment);
+			}
+		}
+	}
+
+	//map the segment after the current one, without the lock, for append to carry on in once the current one fills
+	private void mapSpare(int index) {
+		MappedByteBuffer mapped;
+		try {
+			mapped = map(index, segmentBytes);
+		}
+		catch (UncheckedIOException e) {
+			//append maps the segment itself when it gets there
+			return;
+		}
+		boolean kept;
+		boolean unused;
+		lock.lock();
+		try {
+			kept = !closed && spare == null && index == segmentIndex + 1;
+			unused = index > segmentIndex;
+			if (kept) {
+				spare = mapped;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		if (!kept) {
+			//append got to the segment first and mapped the same file itself, or the journal has been closed
+			unmap(mapped);
+			if (unused) {
+				segmentFile(directory, index).delete();
+			}
+		}
+	}
+
+	/* end the commit thread once it has flushed what is outstanding, force the segment and release its
+	 * mapping. Called without the lock, once the owner has stopped appending (see TeamMatcher.removeJournal) */
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+			commit.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		for (MappedByteBuffer full : retired) {
+			full.force();
+			unmap(full);
+		}
+		retired.clear();
+		if (spare != null) {
+			unmap(spare);
+			spare = null;
+			segmentFile(directory, segmentIndex + 1).delete();
+		}
+		if (segment != null) {
+			segment.force();
+			unmap(segment);
+			segment = null;
+		}
+	}
+
+	/* release a mapping now rather than when its buffer is collected, which may be never for a long lived
+	 * manager. There is no public API for it: Unsafe.invokeCleaner from Java 9, the buffer's cleaner before.
+	 * Where neither can be reached the mapping is left to the collector. The buffer must not be used again */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			try {
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			}
+			catch (NoSuchMethodException e) {
+				Method cleanerOf = buffer.getClass().getMethod("cleaner");
+				cleanerOf.setAccessible(true);
+				Object cleaner = cleanerOf.invoke(buffer);
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			//left to the collector
+		}
+	}
+
+	private ByteBuffer begin(byte type) {
+		record.clear();
+		return room(1 + 8 + 4 + 1 + 8).put(type);
+	}
+
+	//the record buffer, grown if it has less than bytes left
+	private ByteBuffer room(int bytes) {
+		if (record.remaining() < bytes) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes));
+			record.flip();
+			grown.put(record);
+			record = grown;
+		}
+		return record;
+	}
+
+	private void putString(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		room(4 + bytes.length).putInt(bytes.length).put(bytes);
+	}
+
+	/* copy the record into the mapped segment behind its length and CRC. A segment is full once less than the
+	 * reserve is left; the next one is started after the record, and a checkpoint as of its start follows, so
+	 * replay never has to read more than the segments written since the last checkpoint the commit thread got
+	 * to. Only a record larger than the reserve may not fit: it starts a segment of its own, without a
+	 * checkpoint, as the state already holds what the record is about */
+	private void append() {
+		int length = record.position();
+		//room for the record and the zero length that marks the end of the segment
+		if (segment.remaining() < HEADER_BYTES + length + 4) {
+			nextSegment(Math.max(segmentBytes, HEADER_BYTES + length + 4));
+		}
+		crc.reset();
+		crc.update(record.array(), 0, length);
+		segment.putInt(length).putInt((int) crc.getValue()).put(record.array(), 0, length);
+		metrics.journalRecords.increment();
+		if (!dirty) {
+			dirty = true;
+			commit.signal();
+		}
+		if (segment.remaining() < rollReserve) {
+			nextSegment(segmentBytes);
+			//written by the commit thread, which the record above has woken if it was idle
+			pendingCheckpoint = new Checkpoint(state.get(), segmentIndex);
+		}
+	}
+
+	/* carry on in the next segment: the spare the commit thread mapped, unless it has not got to it yet or the
+	 * segment must be larger. The full segment is left to the commit thread to force and unmap */
+	private void nextSegment(int bytes) {
+		retired.add(segment);
+		MappedByteBuffer next = spare;
+		spare = null;
+		if (next == null || next.capacity() < bytes) {
+			if (next != null) {
+				retired.add(next);
+			}
+			next = map(segmentIndex + 1, bytes);
+		}
+		segment = next;
+		segmentIndex++;
+	}
+
+	/* map a segment, creating its file. Files are never truncated: a new segment's file does not exist yet, 
+	 * see the constructor, and the commit thread and append may map the same one (see mapSpare) */
+	private MappedByteBuffer map(int index, int bytes) {
+		try (FileChannel channel = FileChannel.open(segmentFile(directory, index).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("cannot open journal segment " + index + " in " + directory, e);
+		}
+	}
+
+	private static File segmentFile(File directory, int index) {
+		return new File(directory, String.format("journal-%08d.log", index));
+	}
+
+	//a deadline as a wall clock time, which unlike a System.nanoTime value still means something after a restart
+	private static long toMillis(TeamRequest team) {
+		return team.hasDeadline
+				? System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(team.deadline - System.nanoTime())
+				: 0;
+	}
+
+	/* read the snapshot and the segments after it. Records past a torn or corrupt one are ignored, as they
+	 * were appended after it. An empty or missing directory gives an empty state */
+	static State recover(File directory) {
+		State state = new State();
+		int next = 0;
+		try {
+			File snapshot = new File(directory, SNAPSHOT);
+			if (snapshot.exists()) {
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+					int format = in.readInt();
+					if (format != 1 && format != SNAPSHOT_FORMAT) {
+						throw new IOException("unknown journal snapshot format");
+					}
+					next = in.readInt();
+					state.read(in, format);
+				}
+			}
+			state.lastSegment = next - 1;
+			for (int index = next; segmentFile(directory, index).exists(); index++) {
+				state.lastSegment = index;
+				if (!replay(segmentFile(directory, index), state)) {
+					break;
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("cannot recover the journal in " + directory, e);
+		}
+		return state;
+	}
+
+	//apply the records of one segment to state. Returns false if it ends in a torn record
+	private static boolean replay(File file, State state) throws IOException {
+		MappedByteBuffer segment;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		CRC32 crc = new CRC32();
+		while (segment.remaining() >= HEADER_BYTES) {
+			int length = segment.getInt();
+			if (length == 0) {
+				return true;
+			}
+			int checksum = segment.getInt();
+			if (length < 0 || length > segment.remaining()) {
+				return false;
+			}
+			byte[] bytes = new byte[length];
+			segment.get(bytes);
+			crc.reset();
+			crc.update(bytes, 0, length);
+			if ((int) crc.getValue() != checksum) {
+				return false;
+			}
+			state.apply(ByteBuffer.wrap(bytes));
+		}
+		return true;
+	}
+
+	/* the journaled state of a matcher: role names by id, waiting workers per role, and the queued requests in
+	 * queue order with the seats filled by workers of each role. Built from the live matcher for a checkpoint,
+	 * and from the snapshot and records on recovery */
+	//the state as of the start of a segment, to be written to the snapshot file
+	private static final class Checkpoint {
+		final State state;
+		final int segment;
+
+		Checkpoint(State state, int segment) {
+			this.state = state;
+			this.segment = segment;
+		}
+	}
+
+	static final class State {
+		final ArrayList<String> roles = new ArrayList<String>();
+		int[] waiting = new int[8];
+		final LinkedHashMap<Long, SavedRequest> requests = new LinkedHashMap<Long, SavedRequest>();
+		//anonymous team names given out, set by the manager that owns the matcher
+		int teamCount = 0;
+		//the last segment read by recover, -1 if none
+		int lastSegment = -1;
+
+		int waiting(int roleId) {
+			return (roleId < waiting.length) ? waiting[roleId] : 0;
+		}
+
+		private void apply(ByteBuffer record) {
+			byte type = record.get();
+			switch (type) {
+			case ROLE:
+				record.getInt();
+				roles.add(getString(record));
+				break;
+			case REQUEST:
+				SavedRequest request = new SavedRequest(record.getLong(), roles.size());
+				request.priority = record.getInt();
+				byte flags = record.get();
+				request.hasLead = (flags & HAS_LEAD) != 0;
+				request.hasDeadline = (flags & HAS_DEADLINE) != 0;
+				request.deadlineMillis = record.getLong();
+				request.name = getString(record);
+				for (int count = record.getInt(); count > 0; count--) {
+					request.seats[record.getInt()] = record.getInt();
+				}
+				requests.put(request.sequence, request);
+				break;
+			case CANCEL:
+			case COMPLETE:
+				requests.remove(record.getLong());
+				break;
+			case LOGIN:
+				count(record.getInt(), 1);
+				break;
+			case LOGOUT:
+				count(record.getInt(), -1);
+				break;
+			case TAKE:
+				SavedRequest taken = requests.get(record.getLong());
+				int roleId = record.getInt();
+				count(roleId, -1);
+				if (taken != null) {
+					taken.filled[roleId]++;
+				}
+				break;
+			case UNSEAT:
+				SavedRequest left = requests.get(record.getLong());
+				if (left != null) {
+					left.filled[record.getInt()]--;
+				}
+				break;
+			case TEAMS:
+				teamCount = Math.max(teamCount, record.getInt());
+				break;
+			default:
+				throw new IllegalStateException("unknown journal record type " + type);
+			}
+		}
+
+		private void count(int roleId, int delta) {
+			if (roleId >= waiting.length) {
+				waiting = Arrays.copyOf(waiting, Math.max(waiting.length * 2, roleId + 1));
+			}
+			waiting[roleId] += delta;
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			out.writeInt(roles.size());
+			for (int roleId = 0; roleId < roles.size(); roleId++) {
+				out.writeUTF(roles.get(roleId));
+				out.writeInt(waiting(roleId));
+			}
+			out.writeInt(teamCount);
+			out.writeInt(requests.size());
+			for (SavedRequest request : requests.values()) {
+				out.writeLong(request.sequence);
+				out.writeUTF(request.name);
+				out.writeInt(request.priority);
+				out.writeBoolean(request.hasLead);
+				out.writeBoolean(request.hasDeadline);
+				out.writeLong(request.deadlineMillis);
+				out.writeInt(request.seats.length);
+				for (int roleId = 0; roleId < request.seats.length; roleId++) {
+					out.writeInt(request.seats[roleId]);
+					out.writeInt(request.filled[roleId]);
+				}
+			}
+		}
+
+		private void read(DataInputStream in, int format) throws IOException {
+			for (int count = in.readInt(); count > 0; count--) {
+				roles.add(in.readUTF());
+				count(roles.size() - 1, in.readInt());
+			}
+			if (format >= 2) {
+				teamCount = in.readInt();
+			}
+			for (int count = in.readInt(); count > 0; count--) {
+				long sequence = in.readLong();
+				String name = in.readUTF();
+				int priority = in.readInt();
+				boolean hasLead = in.readBoolean();
+				boolean hasDeadline = in.readBoolean();
+				long deadlineMillis = in.readLong();
+				SavedRequest request = new SavedRequest(sequence, in.readInt());
+				request.name = name;
+				request.priority = priority;
+				request.hasLead = hasLead;
+				request.hasDeadline = hasDeadline;
+				request.deadlineMillis = deadlineMillis;
+				for (int roleId = 0; roleId < request.seats.length; roleId++) {
+					request.seats[roleId] = in.readInt();
+					request.filled[roleId] = in.readInt();
+				}
+				requests.put(sequence, request);
+			}
+		}
+
+		private static String getString(ByteBuffer record) {
+			byte[] bytes = new byte[record.getInt()];
+			record.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	/* a queued request as journaled: the seats it was queued with per role id, and how many of them workers of
+	 * that role had taken. Seats of multi-skilled members are not journaled and count as open */
+	static final class SavedRequest {
+		final long sequence;
+		String name;
+		int priority;
+		boolean hasLead;
+		boolean hasDeadline;
+		//wall clock, see toMillis
+		long deadlineMillis;
+		final int[] seats;
+		final int[] filled;
+
+		SavedRequest(long sequence, int roles) {
+			this.sequence = sequence;
+			this.seats = new int[roles];
+			this.filled = new int[roles];
+		}
+
+		SavedRequest(TeamRequest team) {
+			this(team.sequence, team.seats.length);
+			name = team.name;
+			priority = team.priority;
+			hasLead = team.hasLead;
+			hasDeadline = team.hasDeadline;
+			deadlineMillis = toMillis(team);
+		}
+	}
+}
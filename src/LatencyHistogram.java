@@ -0,0 +1,59 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/* a histogram of durations in nanoseconds with power-of-two buckets.
+ * Recording is a couple of atomic adds and never blocks, and it can be read at any time without
+ * stopping the writers. Percentiles are reported as the upper bound of the bucket they fall in */
+public class LatencyHistogram {
+	
+	//bucket i holds durations in [2^(i-1), 2^i), bucket 0 holds 0
+	private final AtomicLongArray buckets = new AtomicLongArray(64);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+		count.increment();
+		total.add(nanos);
+	}
+	
+	public long count() {
+		return count.sum();
+	}
+	
+	public double meanNanos() {
+		long n = count.sum();
+		return (n == 0) ? 0 : (double) total.sum() / n;
+	}
+	
+	//the duration (upper bucket bound, in nanoseconds) below which a fraction p of the recordings fall
+	public long percentileNanos(double p) {
+		long[] counts = new long[buckets.length()];
+		long n = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			n += counts[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(p * n);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return (i == 0) ? 0 : (i == 63) ? Long.MAX_VALUE : (1L << i) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus", count(), meanNanos() / 1000,
+				percentileNanos(0.50) / 1000.0, percentileNanos(0.99) / 1000.0);
+	}
+}
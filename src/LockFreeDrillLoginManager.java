@@ -0,0 +1,290 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/* a Manager that does not funnel every call through one ReentrantLock.
+ *
+ * Team requests form a linked queue that is appended to with CAS, so team names are handed out in
+ * queue order exactly like DrillLoginManager ("team1", "team2", ... for anonymous requests).
+ * A worker claims a seat on the head team by decrementing that role's atomic counter, and only parks
+ * when the head team has no seat left for its role. Like DrillLoginManager, only the head team
+ * takes workers, so the FIFO results are the same.
+ *
+ * Lead requests (drillerRequest, whose lead role is "Driller") have the lead's seats stripped from
+ * their own request only, and a request with no seats left to fill is assembled as soon as it is made */
+public class LockFreeDrillLoginManager implements Manager {
+
+	//sentinel node: the real queue starts at head.next
+	private final AtomicReference<Team> head;
+	private final AtomicReference<Team> tail;
+
+	//workers parked because the head team had no seat for their role, one queue per role
+	private final ConcurrentHashMap<String, ConcurrentLinkedQueue<Waiter>> waiters = new ConcurrentHashMap<>();
+
+	//how parked workers and leads wait to be released, see WaitStrategy
+	private volatile WaitStrategy waitStrategy = WaitStrategy.BLOCK;
+
+	public LockFreeDrillLoginManager() {
+		Team sentinel = new Team(null, 0, new ConcurrentHashMap<String, AtomicInteger>(), 0);
+		sentinel.complete = true;
+		head = new AtomicReference<>(sentinel);
+		tail = new AtomicReference<>(sentinel);
+	}
+
+	@Override
+	public void smallTeamRequest(Map<String, Integer> team) {
+		enqueue(null, null, team);
+	}
+
+	@Override
+	public void drillerRequest(String teamName, Map<String, Integer> team) {
+		leadRequest(teamName, "Driller", team);
+	}
+
+	//see DrillLoginManager.leadRequest
+	public void leadRequest(String teamName, String leadRole, Map<String, Integer> team) {
+		Team request = enqueue(teamName, leadRole, team);
+
+		//block the lead until its team is assembled
+		request.awaitComplete(waitStrategy);
+	}
+
+	@Override
+	public String workerLogin(String role) {
+		while (true) {
+			Team team = firstOpen();
+
+			if (team != null && team.claim(role)) {
+				if (team.open.decrementAndGet() == 0) {
+					//last seat: this worker assembles the team
+					completeTeam(team);
+				}
+				else {
+					team.awaitComplete(waitStrategy);
+				}
+				return team.name;
+			}
+
+			/* no seat for this role: register as a waiter first and then check again, so a seat
+			 * opened between the two checks is never missed */
+			Waiter waiter = new Waiter(Thread.currentThread());
+			waitersFor(role).add(waiter);
+
+			team = firstOpen();
+			if (team != null && team.hasSeat(role)) {
+				waiter.cancel();
+				continue;
+			}
+			waiter.park(waitStrategy);
+		}
+	}
+
+	/* how workers and leads wait to be released, WaitStrategy.BLOCK by default. Applies to waits that start
+	 * after the call */
+	public void setWaitStrategy(WaitStrategy strategy) {
+		waitStrategy = strategy;
+	}
+
+	/* append a request to the tail of the queue. The anonymous team number is derived from the
+	 * predecessor while appending, so names always follow queue order */
+	private Team enqueue(String teamName, String leadRole, Map<String, Integer> team) {
+		ConcurrentHashMap<String, AtomicInteger> seats = new ConcurrentHashMap<>();
+		int open = 0;
+		for (Map.Entry<String, Integer> roles : team.entrySet()) {
+			if (roles.getKey().equals(leadRole)) {
+				continue;
+			}
+			if (roles.getValue() > 0) {
+				seats.put(roles.getKey(), new AtomicInteger(roles.getValue()));
+				open += roles.getValue();
+			}
+		}
+
+		while (true) {
+			Team last = tail.get();
+			Team next = last.next;
+			if (next != null) {
+				//tail is lagging behind, help move it on
+				tail.compareAndSet(last, next);
+				continue;
+			}
+			int anonymousCount = last.anonymousCount + (teamName == null ? 1 : 0);
+			String name = (teamName == null) ? "team" + anonymousCount : teamName;
+			Team request = new Team(name, anonymousCount, seats, open);
+			if (teamName != null) {
+				request.lead = Thread.currentThread();
+			}
+			if (last.casNext(null, request)) {
+				tail.compareAndSet(last, request);
+				if (open == 0) {
+					request.complete = true;
+				}
+				//the new request may already be at the head, wake the workers it needs
+				Team first = firstOpen();
+				if (first != null) {
+					wakeRoles(first);
+				}
+				return request;
+			}
+		}
+	}
+
+	//the head team, skipping (and unlinking) teams that have already been assembled
+	private Team firstOpen() {
+		while (true) {
+			Team h = head.get();
+			Team first = h.next;
+			if (first == null) {
+				return null;
+			}
+			if (!first.complete) {
+				return first;
+			}
+			head.compareAndSet(h, first);
+		}
+	}
+
+	//release the members and lead of a team, then wake workers needed by the next head
+	private void completeTeam(Team team) {
+		team.complete = true;
+		Waiter member;
+		while ((member = team.members.poll()) != null) {
+			member.signal();
+		}
+		if (team.lead != null) {
+			LockSupport.unpark(team.lead);
+		}
+		Team next = firstOpen();
+		if (next != null) {
+			wakeRoles(next);
+		}
+	}
+
+	//wake at most one parked worker per open seat of each role
+	private void wakeRoles(Team team) {
+		for (Map.Entry<String, AtomicInteger> roles : team.seats.entrySet()) {
+			ConcurrentLinkedQueue<Waiter> queue = waiters.get(roles.getKey());
+			if (queue == null) {
+				continue;
+			}
+			int toWake = roles.getValue().get();
+			while (toWake > 0) {
+				Waiter waiter = queue.poll();
+				if (waiter == null) {
+					break;
+				}
+				//waiters that already gave up their place do not use up a wakeup
+				if (waiter.signal()) {
+					toWake--;
+				}
+			}
+		}
+	}
+
+	private ConcurrentLinkedQueue<Waiter> waitersFor(String role) {
+		ConcurrentLinkedQueue<Waiter> queue = waiters.get(role);
+		if (queue == null) {
+			queue = waiters.computeIfAbsent(role, r -> new ConcurrentLinkedQueue<Waiter>());
+		}
+		return queue;
+	}
+
+	//a node of the request queue
+	private static final class Team {
+		final String name;
+		//number of anonymous teams up to and including this one, used to name the next anonymous team
+		final int anonymousCount;
+		final ConcurrentHashMap<String, AtomicInteger> seats;
+		//seats still open over all roles
+		final AtomicInteger open;
+		//members that claimed a seat and are waiting for the team to be assembled
+		final ConcurrentLinkedQueue<Waiter> members = new ConcurrentLinkedQueue<>();
+		volatile Thread lead;
+		volatile boolean complete = false;
+		volatile Team next;
+
+		private static final AtomicReferenceFieldUpdater<Team, Team> NEXT =
+				AtomicReferenceFieldUpdater.newUpdater(Team.class, Team.class, "next");
+
+		Team(String name, int anonymousCount, ConcurrentHashMap<String, AtomicInteger> seats, int open) {
+			this.name = name;
+			this.anonymousCount = anonymousCount;
+			this.seats = seats;
+			this.open = new AtomicInteger(open);
+		}
+
+		boolean casNext(Team expected, Team update) {
+			return NEXT.compareAndSet(this, expected, update);
+		}
+
+		boolean hasSeat(String role) {
+			AtomicInteger count = seats.get(role);
+			return count != null && count.get() > 0;
+		}
+
+		//take one seat of this role if any is left
+		boolean claim(String role) {
+			AtomicInteger count = seats.get(role);
+			if (count == null) {
+				return false;
+			}
+			while (true) {
+				int current = count.get();
+				if (current <= 0) {
+					return false;
+				}
+				if (count.compareAndSet(current, current - 1)) {
+					return true;
+				}
+			}
+		}
+
+		//park until the team is assembled, registering first so completion cannot be missed
+		void awaitComplete(WaitStrategy strategy) {
+			if (lead == Thread.currentThread()) {
+				strategy.await(() -> complete, () -> LockSupport.park(this));
+				return;
+			}
+			Waiter member = new Waiter(Thread.currentThread());
+			members.add(member);
+			if (complete) {
+				return;
+			}
+			member.park(strategy);
+		}
+	}
+
+	//a parked thread. The state only moves away from WAITING once, either by a signal or a cancel
+	private static final class Waiter {
+		static final int WAITING = 0;
+		static final int SIGNALLED = 1;
+		static final int CANCELLED = 2;
+
+		final Thread thread;
+		final AtomicInteger state = new AtomicInteger(WAITING);
+
+		Waiter(Thread thread) {
+			this.thread = thread;
+		}
+
+		boolean signal() {
+			if (state.compareAndSet(WAITING, SIGNALLED)) {
+				LockSupport.unpark(thread);
+				return true;
+			}
+			return false;
+		}
+
+		void cancel() {
+			state.compareAndSet(WAITING, CANCELLED);
+		}
+
+		void park(WaitStrategy strategy) {
+			strategy.await(() -> state.get() != WAITING, () -> LockSupport.park(this));
+		}
+	}
+}
@@ -12,6 +12,26 @@ public class Main {
 		exampleTests.test_UR4();
 		exampleTests.test_UR5();
 		exampleTests.testUR6();
+		exampleTests.test_PerRoleQueues();
+		exampleTests.test_LockFreeManager();
+		exampleTests.test_NonHeadOfLine();
+		exampleTests.test_AsyncManager();
+		exampleTests.test_Metrics();
+		exampleTests.test_ShardedManager();
+		exampleTests.test_LeadRoles();
+		exampleTests.test_MultiSkilled();
+		exampleTests.test_Cancellation();
+		exampleTests.test_SchedulingPolicies();
+		exampleTests.test_Deadlines();
+		exampleTests.test_AdmissionControl();
+		exampleTests.test_Snapshots();
+		exampleTests.test_Journal();
+		exampleTests.test_TraceReplay();
+		exampleTests.test_BatchSubmission();
+		exampleTests.test_FlatCombining();
+		exampleTests.test_WaitStrategies();
+		exampleTests.test_Gateway();
+		exampleTests.test_EventStream();
 
 		
 	}
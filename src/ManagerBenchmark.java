@@ -0,0 +1,296 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/* benchmark harness for the Manager implementations.
+ * The project has no build file to pull JMH in with, so this is a small self-contained harness in the same
+ * spirit: warmup iterations that are thrown away, timed measurement iterations, a fresh manager per
+ * iteration, and results reported as ops/sec with latency percentiles.
+ *
+ *   java ManagerBenchmark [warmupSeconds] [measureSeconds] [iterations] [manager]
+ *
+ * Every combination of manager, role mix, team size, request kind and worker thread count is run:
+ *   role mix:     "single" (Roustabout only) or "mixed" (Roustabout, Floorhand, Toolpusher)
+ *   request kind: "small" (smallTeamRequest from one requester thread, kept ahead of the workers) or
+ *                 "driller" (one driller thread per team's worth of workers, looping drillerRequest)
+ * Worker threads loop on workerLogin with a fixed role. ops/sec counts workerLogin calls that returned,
+ * and the latency is the time spent inside workerLogin. The requests are reported alongside: req/sec counts
+ * request calls that returned, and their latency is the time spent inside the call. For "driller" that is
+ * the time to an assembled team, since drillerRequest returns once its team is complete; for "small" it is
+ * only the time to queue the request, as smallTeamRequest does not wait for its team */
+public class ManagerBenchmark {
+
+	private static final String[] MIXED = {"Roustabout", "Floorhand", "Toolpusher"};
+	private static final String[] SINGLE = {"Roustabout"};
+
+	//latency samples kept per worker thread and iteration; later samples overwrite the oldest
+	private static final int SAMPLES = 1 << 16;
+
+	public static void main(String[] args) throws InterruptedException {
+		double warmup = (args.length > 0) ? Double.parseDouble(args[0]) : 1;
+		double measure = (args.length > 1) ? Double.parseDouble(args[1]) : 2;
+		int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+		String only = (args.length > 3) ? args[3] : null;
+
+		System.out.printf("%-20s %-7s %4s %-7s %7s %12s %10s %10s %10s %10s %10s %10s %10s%n",
+				"manager", "roles", "team", "request", "threads", "ops/sec", "p50 us", "p90 us", "p99 us", "p99.9 us",
+				"req/sec", "req p50 us", "req p99 us");
+		for (String name : managers().keySet()) {
+			if (only != null && !name.equals(only)) {
+				continue;
+			}
+			for (String[] roles : new String[][] {SINGLE, MIXED}) {
+				for (int teamSize : new int[] {3, 6}) {
+					for (String kind : new String[] {"small", "driller"}) {
+						for (int threads : new int[] {teamSize, teamSize * 4}) {
+							run(name, roles, teamSize, kind, threads, warmup, measure, iterations);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	//every Manager implementation in the project, with the settings worth comparing
+	static Map<String, Supplier<Manager>> managers() {
+		Map<String, Supplier<Manager>> managers = new LinkedHashMap<String, Supplier<Manager>>();
+		managers.put("DrillLogin", () -> new DrillLoginManager());
+		managers.put("DrillLogin/perRole", () -> new DrillLoginManager(true));
+		managers.put("LockFree", () -> new LockFreeDrillLoginManager());
+		managers.put("Async", () -> new AsyncDrillLoginManager());
+		managers.put("Async/combining", () -> new AsyncDrillLoginManager(0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED, true));
+		managers.put("Sharded/4", () -> new ShardedDrillLoginManager(4));
+		return managers;
+	}
+
+	private static void run(String name, String[] roles, int teamSize, String kind, int threads,
+			double warmup, double measure, int iterations) throws InterruptedException {
+		Map<String, Integer> team = composition(roles, teamSize);
+		for (int i = 0; i < iterations; i++) {
+			iteration(managers().get(name).get(), team, kind, threads, warmup);
+		}
+
+		long ops = 0;
+		long requests = 0;
+		double seconds = 0;
+		List<long[]> latencies = new ArrayList<long[]>();
+		List<long[]> requestLatencies = new ArrayList<long[]>();
+		for (int i = 0; i < iterations; i++) {
+			Result result = iteration(managers().get(name).get(), team, kind, threads, measure);
+			ops += result.ops;
+			requests += result.requests;
+			seconds += result.seconds;
+			latencies.add(result.latencies);
+			requestLatencies.add(result.requestLatencies);
+		}
+		long[] all = merge(latencies);
+		long[] allRequests = merge(requestLatencies);
+		System.out.printf("%-20s %-7s %4d %-7s %7d %12.0f %10.1f %10.1f %10.1f %10.1f %10.0f %10.1f %10.1f%n",
+				name, (roles.length == 1) ? "single" : "mixed", teamSize, kind, threads, ops / seconds,
+				percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 0.999),
+				requests / seconds, percentile(allRequests, 0.50), percentile(allRequests, 0.99));
+	}
+
+	/* one timed iteration on a fresh manager. Workers get their roles in the same proportion as the team,
+	 * so the workers can always fill the next team */
+	private static Result iteration(Manager manager, Map<String, Integer> team, String kind, int threads, double seconds)
+			throws InterruptedException {
+		String[] pattern = pattern(team);
+		AtomicLong completed = new AtomicLong();
+		AtomicLong seatsRequested = new AtomicLong();
+		long[][] samples = new long[threads][SAMPLES];
+		int[] sampleCounts = new int[threads];
+		Flags flags = new Flags();
+
+		//one requester for "small", one driller per team's worth of workers for "driller"
+		int requesterCount = kind.equals("driller") ? threads / pattern.length : 1;
+		long[][] requestSamples = new long[requesterCount][SAMPLES];
+		int[] requestCounts = new int[requesterCount];
+		AtomicLong requestsMade = new AtomicLong();
+
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			int index = t;
+			String role = pattern[t % pattern.length];
+			workers.add(start(() -> {
+				while (!flags.stopWorkers) {
+					long start = System.nanoTime();
+					manager.workerLogin(role);
+					long latency = System.nanoTime() - start;
+					if (flags.measuring) {
+						samples[index][sampleCounts[index]++ & (SAMPLES - 1)] = latency;
+						completed.incrementAndGet();
+					}
+				}
+			}));
+		}
+
+		List<Thread> requesters = new ArrayList<Thread>();
+		if (kind.equals("driller")) {
+			for (int d = 0; d < requesterCount; d++) {
+				int driller = d;
+				requesters.add(start(() -> {
+					for (int n = 0; !flags.stopRequests; n++) {
+						long start = System.nanoTime();
+						manager.drillerRequest("driller" + driller + "-" + n, withDriller(team));
+						long latency = System.nanoTime() - start;
+						if (flags.measuring) {
+							requestSamples[driller][requestCounts[driller]++ & (SAMPLES - 1)] = latency;
+							requestsMade.incrementAndGet();
+						}
+					}
+				}));
+			}
+		}
+		else {
+			//keep enough seats open for every worker thread, so workers never wait for a request
+			requesters.add(start(() -> {
+				while (!flags.stopRequests) {
+					if (seatsRequested.get() - completed.get() < 2L * threads) {
+						Map<String, Integer> request = new HashMap<String, Integer>(team);
+						long start = System.nanoTime();
+						manager.smallTeamRequest(request);
+						long latency = System.nanoTime() - start;
+						seatsRequested.addAndGet(pattern.length);
+						if (flags.measuring) {
+							requestSamples[0][requestCounts[0]++ & (SAMPLES - 1)] = latency;
+							requestsMade.incrementAndGet();
+						}
+					}
+					else {
+						LockSupport.parkNanos(1000);
+					}
+				}
+			}));
+		}
+
+		long start = System.nanoTime();
+		flags.measuring = true;
+		seatsRequested.set(0);
+		Thread.sleep((long) (seconds * 1000));
+		flags.measuring = false;
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		//stop making requests, let the last driller requests fill, then release the workers still parked
+		flags.stopRequests = true;
+		for (Thread requester : requesters) {
+			requester.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		flags.stopWorkers = true;
+		drain(manager, team, workers);
+
+		List<long[]> latencies = new ArrayList<long[]>();
+		for (int t = 0; t < threads; t++) {
+			latencies.add(Arrays.copyOf(samples[t], Math.min(sampleCounts[t], SAMPLES)));
+		}
+		List<long[]> requestLatencies = new ArrayList<long[]>();
+		for (int r = 0; r < requesterCount; r++) {
+			requestLatencies.add(Arrays.copyOf(requestSamples[r], Math.min(requestCounts[r], SAMPLES)));
+		}
+		return new Result(completed.get(), elapsed, merge(latencies), requestsMade.get(), merge(requestLatencies));
+	}
+
+	/* release every worker thread still inside workerLogin. Extra requests free the parked workers, and a
+	 * team's worth of one-off logins fills a team that the stopped workers left partly assembled. Those
+	 * one-off logins can themselves be left parked on the abandoned manager, which is why they are daemons */
+	private static void drain(Manager manager, Map<String, Integer> team, List<Thread> workers) throws InterruptedException {
+		String[] pattern = pattern(team);
+		for (Thread worker : workers) {
+			while (worker.isAlive()) {
+				manager.smallTeamRequest(new HashMap<String, Integer>(team));
+				worker.join(1);
+				if (worker.isAlive()) {
+					for (String role : pattern) {
+						start(() -> manager.workerLogin(role));
+					}
+				}
+			}
+		}
+	}
+
+	private static Thread start(Runnable body) {
+		Thread thread = new Thread(body);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	//teamSize seats spread as evenly as possible over the roles
+	private static Map<String, Integer> composition(String[] roles, int teamSize) {
+		Map<String, Integer> team = new HashMap<String, Integer>();
+		for (int i = 0; i < teamSize; i++) {
+			team.merge(roles[i % roles.length], 1, Integer::sum);
+		}
+		return team;
+	}
+
+	private static Map<String, Integer> withDriller(Map<String, Integer> team) {
+		Map<String, Integer> request = new HashMap<String, Integer>(team);
+		request.put("Driller", 1);
+		return request;
+	}
+
+	//the roles of one team, one entry per seat
+	private static String[] pattern(Map<String, Integer> team) {
+		List<String> seats = new ArrayList<String>();
+		for (Map.Entry<String, Integer> entry : team.entrySet()) {
+			for (int i = 0; i < entry.getValue(); i++) {
+				seats.add(entry.getKey());
+			}
+		}
+		return seats.toArray(new String[seats.size()]);
+	}
+
+	private static long[] merge(List<long[]> parts) {
+		int length = 0;
+		for (long[] part : parts) {
+			length += part.length;
+		}
+		long[] all = new long[length];
+		int offset = 0;
+		for (long[] part : parts) {
+			System.arraycopy(part, 0, all, offset, part.length);
+			offset += part.length;
+		}
+		Arrays.sort(all);
+		return all;
+	}
+
+	//latency at this percentile of the sorted samples, in microseconds
+	static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+		return sorted[Math.max(0, index)] / 1000.0;
+	}
+
+	private static final class Flags {
+		volatile boolean measuring;
+		volatile boolean stopRequests;
+		volatile boolean stopWorkers;
+	}
+
+	private static final class Result {
+		final long ops;
+		final double seconds;
+		final long[] latencies;
+		final long requests;
+		final long[] requestLatencies;
+
+		Result(long ops, double seconds, long[] latencies, long requests, long[] requestLatencies) {
+			this.ops = ops;
+			this.seconds = seconds;
+			this.latencies = latencies;
+			this.requests = requests;
+			this.requestLatencies = requestLatencies;
+		}
+	}
+}
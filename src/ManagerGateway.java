@@ -0,0 +1,398 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* serves an AsyncManager to other processes (badge readers, dispatch consoles) over TCP.
+ * One selector thread does all the network work. A pending login or request is a future and an entry in its
+ * connection's pending set, not a thread, so a gateway can hold as many of them as the manager can.
+ * Closing a connection cancels what it still has pending, which withdraws it from the manager.
+ *
+ * Every message is a frame: an int length (of what follows) and the payload, big-endian. Strings are an
+ * unsigned short length and UTF-8 bytes; a team is an unsigned byte count of (role string, unsigned short
+ * seats) pairs. Client to gateway:
+ *   REQUEST id rig team            smallTeamRequestAsync
+ *   DRILLER id rig teamName team   drillerRequestAsync
+ *   LOGIN   id rig role            workerLoginAsync
+ * where the first byte is the operation, id an int the client picks to match the reply and rig a string.
+ * A ShardedDrillLoginManager is called with the rig, so each frame goes to the shard it names (an unknown
+ * rig fails); any other manager has one rig, and takes only the empty string. Gateway to client, once the
+ * future completes:
+ *   id ASSEMBLED teamName      the team was assembled (for a login: the team the worker was released to)
+ *   id REJECTED message        turned away or shed by admission control
+ *   id FAILED message          anything else that went wrong
+ * Clients may pipeline any number of frames without waiting for replies, and replies come in the order the
+ * futures complete. Replies completed while the selector thread is busy are written together, in as few
+ * writes as the socket allows. A malformed frame, or a client that lets MAX_BUFFERED bytes of replies pile up
+ * unread, gets its connection closed.
+ *
+ * The selector thread makes every call into the manager, so a manager under AdmissionControl Overflow.BLOCK,
+ * which parks the calling thread until there is room, is refused: it would stall every connection */
+public class ManagerGateway implements Closeable {
+
+	static final byte REQUEST = 1;
+	static final byte DRILLER = 2;
+	static final byte LOGIN = 3;
+
+	static final byte ASSEMBLED = 0;
+	static final byte REJECTED = 1;
+	static final byte FAILED = 2;
+
+	//largest frame payload accepted, and most unread reply bytes held for one connection
+	static final int MAX_FRAME = 64 << 10;
+	static final int MAX_BUFFERED = 1 << 20;
+
+	private final AsyncManager manager;
+	//the same manager when it is sharded, which frames address by rig; null otherwise
+	private final ShardedDrillLoginManager sharded;
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final Thread thread;
+
+	//connections that replies have been queued for since the selector thread last wrote to them
+	private final ConcurrentLinkedQueue<Connection> flushes = new ConcurrentLinkedQueue<Connection>();
+
+	private volatile boolean closed = false;
+
+	//listen on the address; a port of 0 picks a free one, see port()
+	public ManagerGateway(AsyncManager manager, InetSocketAddress address) throws IOException {
+		if ((manager instanceof AsyncDrillLoginManager && ((AsyncDrillLoginManager) manager).blocksCallers())
+				|| (manager instanceof ShardedDrillLoginManager && ((ShardedDrillLoginManager) manager).blocksCallers())) {
+			throw new IllegalArgumentException("a manager under Overflow.BLOCK would park the selector thread");
+		}
+		this.manager = manager;
+		this.sharded = (manager instanceof ShardedDrillLoginManager) ? (ShardedDrillLoginManager) manager : null;
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		server.bind(address);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		this.thread = new Thread(this::run, "ManagerGateway " + port());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int port() {
+		return server.socket().getLocalPort();
+	}
+
+	//stop accepting, close every connection (cancelling what is pending on it) and end the selector thread
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Connection connection = (Connection) key.attachment();
+					if (key.isReadable()) {
+						read(connection);
+					}
+					if (key.isValid() && key.isWritable()) {
+						write(connection);
+					}
+				}
+				for (Connection connection = flushes.poll(); connection != null; connection = flushes.poll()) {
+					connection.flushQueued.set(false);
+					write(connection);
+				}
+			}
+		}
+		catch (IOException e) {
+			//the selector itself failed: nothing more can be served
+		}
+		finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() != null) {
+					((Connection) key.attachment()).close();
+				}
+			}
+			closeQuietly(server);
+			closeQuietly(selector);
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Connection connection = new Connection(channel);
+		connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+	}
+
+	//read what has arrived and dispatch every complete frame in it
+	private void read(Connection connection) {
+		try {
+			if (connection.channel.read(connection.in) < 0) {
+				connection.close();
+				return;
+			}
+			ByteBuffer in = connection.in;
+			in.flip();
+			while (in.remaining() >= 4) {
+				int length = in.getInt(in.position());
+				if (length < 5 || length > MAX_FRAME) {
+					connection.close();
+					return;
+				}
+				if (in.remaining() < 4 + length) {
+					break;
+				}
+				in.position(in.position() + 4);
+				ByteBuffer frame = in.slice();
+				frame.limit(length);
+				in.position(in.position() + length);
+				dispatch(connection, frame);
+			}
+			in.compact();
+			if (!in.hasRemaining()) {
+				//a frame longer than the buffer: grow it, MAX_FRAME bounds how far
+				ByteBuffer grown = ByteBuffer.allocate(in.capacity() * 2);
+				in.flip();
+				grown.put(in);
+				connection.in = grown;
+			}
+		}
+		catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			connection.close();
+		}
+	}
+
+	/* hand one frame to the manager, and have the reply queued when its future completes. A frame the manager
+	 * refuses outright, e.g. for an unknown rig, gets a FAILED reply; only a malformed one closes the connection */
+	private void dispatch(Connection connection, ByteBuffer frame) {
+		byte operation = frame.get();
+		int id = frame.getInt();
+		if (operation != REQUEST && operation != DRILLER && operation != LOGIN) {
+			throw new IllegalArgumentException("unknown operation " + operation);
+		}
+		String rig = readString(frame);
+		String name = (operation != REQUEST) ? readString(frame) : null;
+		Map<String, Integer> team = (operation != LOGIN) ? readTeam(frame) : null;
+		CompletableFuture<String> future;
+		try {
+			future = submit(operation, rig, name, team);
+		}
+		catch (RuntimeException e) {
+			connection.reply(reply(id, null, e));
+			return;
+		}
+		connection.pending.add(future);
+		future.whenComplete((assembled, failure) -> {
+			connection.pending.remove(future);
+			connection.reply(reply(id, assembled, failure));
+		});
+	}
+
+	//the manager's future for a parsed frame: from the rig's shard when the manager is sharded
+	private CompletableFuture<String> submit(byte operation, String rig, String name, Map<String, Integer> team) {
+		if (sharded != null) {
+			switch (operation) {
+			case REQUEST:
+				return sharded.smallTeamRequestAsync(rig, team);
+			case DRILLER:
+				return sharded.drillerRequestAsync(rig, name, team);
+			default:
+				return sharded.workerLoginAsync(rig, name);
+			}
+		}
+		if (!rig.isEmpty()) {
+			throw new IllegalArgumentException("unknown rig " + rig + ": this manager is not sharded");
+		}
+		switch (operation) {
+		case REQUEST:
+			return manager.smallTeamRequestAsync(team);
+		case DRILLER:
+			return manager.drillerRequestAsync(name, team);
+		default:
+			return manager.workerLoginAsync(name);
+		}
+	}
+
+	//write the replies queued for the connection, as many as the socket takes
+	private void write(Connection connection) {
+		if (!connection.key.isValid()) {
+			return;
+		}
+		ByteBuffer out = connection.out;
+		for (byte[] reply = connection.replies.poll(); reply != null; reply = connection.replies.poll()) {
+			if (out.remaining() < reply.length) {
+				if (out.position() + reply.length > MAX_BUFFERED) {
+					connection.close();
+					return;
+				}
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + reply.length));
+				out.flip();
+				grown.put(out);
+				connection.out = out = grown;
+			}
+			out.put(reply);
+		}
+		try {
+			out.flip();
+			connection.channel.write(out);
+			out.compact();
+		}
+		catch (IOException e) {
+			connection.close();
+			return;
+		}
+		int interest = (out.position() > 0) ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+		if (connection.key.interestOps() != interest) {
+			connection.key.interestOps(interest);
+		}
+	}
+
+	//the reply frame for a completed future
+	private static byte[] reply(int id, String team, Throwable failure) {
+		Throwable cause = (failure instanceof CompletionException && failure.getCause() != null) ? failure.getCause() : failure;
+		byte status = (cause == null) ? ASSEMBLED : (cause instanceof RejectedExecutionException) ? REJECTED : FAILED;
+		byte[] text = ((cause == null) ? team : String.valueOf(cause.getMessage())).getBytes(StandardCharsets.UTF_8);
+		ByteBuffer frame = ByteBuffer.allocate(4 + 4 + 1 + 2 + text.length);
+		frame.putInt(frame.capacity() - 4).putInt(id).put(status).putShort((short) text.length).put(text);
+		return frame.array();
+	}
+
+	//encoding shared with clients, see GatewayLoadClient
+
+	//a LOGIN, REQUEST or DRILLER frame for the rig ("" unless the manager is sharded); name and team are ignored where the operation has none
+	static void writeFrame(ByteBuffer out, byte operation, int id, String rig, String name, Map<String, Integer> team) {
+		int start = out.position();
+		out.putInt(0).put(operation).putInt(id);
+		writeString(out, rig);
+		if (operation != REQUEST) {
+			writeString(out, name);
+		}
+		if (operation != LOGIN) {
+			out.put((byte) team.size());
+			for (Map.Entry<String, Integer> seats : team.entrySet()) {
+				writeString(out, seats.getKey());
+				out.putShort((short) (int) seats.getValue());
+			}
+		}
+		out.putInt(start, out.position() - start - 4);
+	}
+
+	static void writeString(ByteBuffer out, String string) {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xffff) {
+			throw new IllegalArgumentException("string too long for a frame: " + bytes.length + " bytes");
+		}
+		out.putShort((short) bytes.length).put(bytes);
+	}
+
+	static String readString(ByteBuffer in) {
+		int length = in.getShort() & 0xffff;
+		if (length > in.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		String string = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return string;
+	}
+
+	static Map<String, Integer> readTeam(ByteBuffer in) {
+		int roles = in.get() & 0xff;
+		Map<String, Integer> team = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < roles; i++) {
+			String role = readString(in);
+			team.put(role, in.getShort() & 0xffff);
+		}
+		return team;
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch (IOException e) {
+			//closing anyway
+		}
+	}
+
+	/* one client connection. in and out are only touched by the selector thread; replies are queued by
+	 * whichever thread completes a future, which also queues the connection for a flush unless it is queued */
+	private final class Connection {
+		final SocketChannel channel;
+		SelectionKey key;
+		ByteBuffer in = ByteBuffer.allocate(4096);
+		//reply bytes not yet written, in write mode
+		ByteBuffer out = ByteBuffer.allocate(4096);
+
+		final ConcurrentLinkedQueue<byte[]> replies = new ConcurrentLinkedQueue<byte[]>();
+		final AtomicBoolean flushQueued = new AtomicBoolean();
+		final Set<CompletableFuture<String>> pending = ConcurrentHashMap.newKeySet();
+		volatile boolean open = true;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void reply(byte[] reply) {
+			if (!open) {
+				return;
+			}
+			replies.add(reply);
+			if (flushQueued.compareAndSet(false, true)) {
+				flushes.add(this);
+				if (Thread.currentThread() != thread) {
+					selector.wakeup();
+				}
+			}
+		}
+
+		//called by the selector thread: drop the connection and withdraw what it has pending
+		void close() {
+			if (!open) {
+				return;
+			}
+			open = false;
+			if (key != null) {
+				key.cancel();
+			}
+			closeQuietly(channel);
+			for (CompletableFuture<String> future : pending) {
+				future.cancel(false);
+			}
+		}
+	}
+}
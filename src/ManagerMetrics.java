@@ -0,0 +1,255 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/* counters and histograms describing what a manager is doing, for polling from monitoring code.
+ * The manager updates them as it goes (mostly while it holds its lock), but reading them never takes the
+ * manager's lock: counters are LongAdders, gauges are volatile or atomic, and histograms are atomic arrays.
+ * A poll therefore adds no contention to workerLogin, at the price of the values not being one atomic
+ * snapshot of the manager's state */
+public class ManagerMetrics {
+	
+	//team requests made and currently queued
+	final LongAdder requests = new LongAdder();
+	private volatile int pendingRequests = 0;
+	
+	//requests withdrawn before they were assembled, and logins given up (timed out or cancelled) by workers
+	final LongAdder cancelledRequests = new LongAdder();
+	final LongAdder abandonedLogins = new LongAdder();
+	
+	/* requests and logins turned away by AdmissionControl (including those that timed out blocking for room),
+	 * and those withdrawn to make room for newer ones */
+	final LongAdder rejectedRequests = new LongAdder();
+	final LongAdder rejectedLogins = new LongAdder();
+	final LongAdder shedRequests = new LongAdder();
+	final LongAdder shedLogins = new LongAdder();
+	
+	//teams assembled, and how long each spent between being requested and being assembled
+	final LongAdder teamsCompleted = new LongAdder();
+	final LatencyHistogram timeToFill = new LatencyHistogram();
+	
+	//requests made with a start deadline that were not assembled by it
+	final LongAdder missedDeadlines = new LongAdder();
+	
+	//signals sent to waiting workers, wakeups they caused, and wakeups that ended in another wait
+	final LongAdder signals = new LongAdder();
+	final LongAdder wakeups = new LongAdder();
+	final LongAdder wastedWakeups = new LongAdder();
+	
+	//journal records appended, flushes of the journal to disk (each covering a group of records) and snapshots
+	final LongAdder journalRecords = new LongAdder();
+	final LongAdder journalCommits = new LongAdder();
+	final LongAdder journalCheckpoints = new LongAdder();
+	
+	//passes made by flat combining threads (see FlatCombiner), and the operations they applied
+	final LongAdder combiningPasses = new LongAdder();
+	final LongAdder combinedOperations = new LongAdder();
+	
+	//total time workers spent inside workerLogin
+	final LongAdder idleWorkerNanos = new LongAdder();
+	
+	//time spent waiting to acquire the manager's lock, and how long it is then held for
+	final LatencyHistogram lockWait = new LatencyHistogram();
+	final LatencyHistogram lockHold = new LatencyHistogram();
+	
+	/* per-role gauges. The whole set is replaced (never resized in place) when a role is registered,
+	 * so readers always see names and counts of the same length */
+	private volatile RoleGauges roles = new RoleGauges(0);
+	
+	//multi-skilled workers waiting for a team, who are not counted under any one role
+	private volatile int waitingSkilled = 0;
+	
+	//called by the owning manager
+	
+	void roleRegistered(int roleId, String role) {
+		RoleGauges current = roles;
+		if (roleId >= current.names.length) {
+			RoleGauges grown = new RoleGauges(roleId + 1);
+			System.arraycopy(current.names, 0, grown.names, 0, current.names.length);
+			for (int i = 0; i < current.names.length; i++) {
+				grown.waiting.set(i, current.waiting.get(i));
+				grown.openSeats.set(i, current.openSeats.get(i));
+			}
+			grown.names[roleId] = role;
+			roles = grown;
+		}
+	}
+	
+	/* plain volatile writes rather than lazySet: ShardedDrillLoginManager relies on a login or request
+	 * published here being visible to a shard that publishes its own and then reads this one */
+	void setWaiting(int roleId, int count) {
+		roles.waiting.set(roleId, count);
+	}
+	
+	void setOpenSeats(int roleId, int count) {
+		roles.openSeats.set(roleId, count);
+	}
+	
+	void setWaitingSkilled(int count) {
+		waitingSkilled = count;
+	}
+	
+	void setPendingRequests(int count) {
+		pendingRequests = count;
+	}
+	
+	//read by monitoring code
+	
+	public long getRequests() {
+		return requests.sum();
+	}
+	
+	public int getPendingRequests() {
+		return pendingRequests;
+	}
+	
+	//role -> workers logged in and waiting for a team
+	public Map<String, Long> getWaitingWorkers() {
+		RoleGauges gauges = roles;
+		return gauges.toMap(gauges.waiting);
+	}
+	
+	public int getWaitingMultiSkilled() {
+		return waitingSkilled;
+	}
+	
+	//role -> seats still open for that role over all queued requests
+	public Map<String, Long> getOpenSeats() {
+		RoleGauges gauges = roles;
+		return gauges.toMap(gauges.openSeats);
+	}
+	
+	/* waiting workers of this role minus the seats queued requests still have open for it: positive when
+	 * workers of the role are idle, negative when requests are short of them. 0 for an unknown role */
+	long surplus(String role) {
+		RoleGauges gauges = roles;
+		for (int i = 0; i < gauges.names.length; i++) {
+			if (role.equals(gauges.names[i])) {
+				return gauges.waiting.get(i) - gauges.openSeats.get(i);
+			}
+		}
+		return 0;
+	}
+	
+	public long getTeamsCompleted() {
+		return teamsCompleted.sum();
+	}
+	
+	public long getCancelledRequests() {
+		return cancelledRequests.sum();
+	}
+	
+	public long getAbandonedLogins() {
+		return abandonedLogins.sum();
+	}
+	
+	public long getMissedDeadlines() {
+		return missedDeadlines.sum();
+	}
+	
+	public long getRejectedRequests() {
+		return rejectedRequests.sum();
+	}
+	
+	public long getRejectedLogins() {
+		return rejectedLogins.sum();
+	}
+	
+	public long getShedRequests() {
+		return shedRequests.sum();
+	}
+	
+	public long getShedLogins() {
+		return shedLogins.sum();
+	}
+	
+	public long getJournalRecords() {
+		return journalRecords.sum();
+	}
+	
+	public long getJournalCommits() {
+		return journalCommits.sum();
+	}
+	
+	public long getJournalCheckpoints() {
+		return journalCheckpoints.sum();
+	}
+	
+	public long getCombiningPasses() {
+		return combiningPasses.sum();
+	}
+	
+	public long getCombinedOperations() {
+		return combinedOperations.sum();
+	}
+	
+	public LatencyHistogram getTimeToFill() {
+		return timeToFill;
+	}
+	
+	public long getSignalsSent() {
+		return signals.sum();
+	}
+	
+	public long getWakeups() {
+		return wakeups.sum();
+	}
+	
+	public long getWastedWakeups() {
+		return wastedWakeups.sum();
+	}
+	
+	//wakeups after which the worker found something to do
+	public long getUsefulWakeups() {
+		return wakeups.sum() - wastedWakeups.sum();
+	}
+	
+	public double getIdleWorkerSeconds() {
+		return idleWorkerNanos.sum() / 1e9;
+	}
+	
+	public LatencyHistogram getLockWait() {
+		return lockWait;
+	}
+	
+	public LatencyHistogram getLockHold() {
+		return lockHold;
+	}
+	
+	@Override
+	public String toString() {
+		return "requests=" + getRequests() + " pending=" + getPendingRequests() + " waiting=" + getWaitingWorkers()
+				+ " multiSkilled=" + getWaitingMultiSkilled() + " openSeats=" + getOpenSeats()
+				+ " teamsCompleted=" + getTeamsCompleted() + " missedDeadlines=" + getMissedDeadlines()
+				+ " cancelled=" + getCancelledRequests() + " abandoned=" + getAbandonedLogins()
+				+ " rejected=" + getRejectedRequests() + "/" + getRejectedLogins() + " shed=" + getShedRequests() + "/" + getShedLogins()
+				+ ((getJournalRecords() > 0) ? " journal=" + getJournalRecords() + "/" + getJournalCommits() + "/" + getJournalCheckpoints() : "")
+				+ ((getCombiningPasses() > 0) ? " combined=" + getCombinedOperations() + "/" + getCombiningPasses() : "")
+				+ " signals=" + getSignalsSent() + " wakeups=" + getWakeups()
+				+ " wasted=" + getWastedWakeups() + "\n  timeToFill: " + timeToFill + "\n  lockWait: " + lockWait
+				+ "\n  lockHold: " + lockHold;
+	}
+	
+	private static final class RoleGauges {
+		final String[] names;
+		final AtomicLongArray waiting;
+		final AtomicLongArray openSeats;
+		
+		RoleGauges(int length) {
+			names = new String[length];
+			waiting = new AtomicLongArray(length);
+			openSeats = new AtomicLongArray(length);
+		}
+		
+		Map<String, Long> toMap(AtomicLongArray counts) {
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for (int i = 0; i < names.length; i++) {
+				if (names[i] != null) {
+					map.put(names[i], counts.get(i));
+				}
+			}
+			return map;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* a read-only view of a manager's queue, for dashboards: the pending teams in the order they will be served,
+ * the seats each still has open, and the workers waiting per role.
+ * The dashboard that asks takes the snapshot, under the manager's lock, and only when the queue has changed
+ * since the last one and that one is at least TeamMatcher.SNAPSHOT_INTERVAL_NANOS old (see
+ * TeamMatcher.publishSnapshot). Any other read is a single volatile read of the last one, and workerLogin and
+ * the requests never pay for snapshots. Snapshots are immutable; the version goes up with every one taken,
+ * so a poller can tell whether anything has happened since its last look. Only the first
+ * TeamMatcher.SNAPSHOT_TEAMS pending teams are copied, see getPendingTeamCount */
+public final class ManagerSnapshot {
+
+	private final long version;
+	private final long takenAt;
+	private final String[] roles;
+	private final int[] waiting;
+	private final int waitingMultiSkilled;
+	private final List<PendingTeam> pendingTeams;
+	private final int pendingTeamCount;
+
+	ManagerSnapshot(long version, long takenAt, String[] roles, int[] waiting, int waitingMultiSkilled,
+			List<PendingTeam> pendingTeams, int pendingTeamCount) {
+		this.version = version;
+		this.takenAt = takenAt;
+		this.roles = roles;
+		this.waiting = waiting;
+		this.waitingMultiSkilled = waitingMultiSkilled;
+		this.pendingTeams = Collections.unmodifiableList(pendingTeams);
+		this.pendingTeamCount = pendingTeamCount;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	//when the snapshot was published, as a System.nanoTime value
+	public long getTakenAtNanos() {
+		return takenAt;
+	}
+
+	//queued team requests, the one served first at the front; the first TeamMatcher.SNAPSHOT_TEAMS of them at most
+	public List<PendingTeam> getPendingTeams() {
+		return pendingTeams;
+	}
+
+	//every queued team request, including those left out of getPendingTeams
+	public int getPendingTeamCount() {
+		return pendingTeamCount;
+	}
+
+	//role -> workers logged in and waiting for a team, for every role seen so far
+	public Map<String, Integer> getWaitingWorkers() {
+		return toMap(roles, waiting, true);
+	}
+
+	//multi-skilled workers waiting for a team, who are not counted under any one role
+	public int getWaitingMultiSkilled() {
+		return waitingMultiSkilled;
+	}
+
+	@Override
+	public String toString() {
+		return "v" + version + " waiting=" + getWaitingWorkers() + " multiSkilled=" + waitingMultiSkilled
+				+ " pending=" + pendingTeams;
+	}
+
+	//the maps are built when asked for, so publishing a snapshot only copies arrays
+	private static Map<String, Integer> toMap(String[] roles, int[] counts, boolean withZeros) {
+		Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+		for (int roleId = 0; roleId < counts.length; roleId++) {
+			if (withZeros || counts[roleId] > 0) {
+				map.put(roles[roleId], counts[roleId]);
+			}
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	//a queued team request as it stood when the snapshot was taken
+	public static final class PendingTeam {
+		private final String name;
+		private final String[] roles;
+		private final int[] openSeats;
+		private final int size;
+		private final int open;
+		private final long waited;
+		private final int priority;
+		private final boolean hasDeadline;
+		private final long toDeadline;
+		private final boolean deadlineMissed;
+
+		//roles holds the names of at least the role ids seats covers
+		PendingTeam(TeamRequest request, String[] roles, long takenAt) {
+			this.name = request.name;
+			this.roles = roles;
+			this.openSeats = request.seats.clone();
+			this.size = request.size;
+			this.open = request.open;
+			this.waited = takenAt - request.requestedAt;
+			this.priority = request.priority;
+			this.hasDeadline = request.hasDeadline;
+			this.toDeadline = request.deadline - takenAt;
+			this.deadlineMissed = request.missed;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		//role -> seats still open, for the roles the team is still short of
+		public Map<String, Integer> getOpenSeats() {
+			return toMap(roles, openSeats, false);
+		}
+
+		public int getSeatsOpen() {
+			return open;
+		}
+
+		public int getSeatsFilled() {
+			return size - open;
+		}
+
+		//time since the request was made
+		public long getWaitedNanos() {
+			return waited;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+
+		public boolean hasDeadline() {
+			return hasDeadline;
+		}
+
+		//time left until the start deadline, negative once it has passed; 0 for a request without one
+		public long getNanosToDeadline() {
+			return hasDeadline ? toDeadline : 0;
+		}
+
+		public boolean isDeadlineMissed() {
+			return deadlineMissed;
+		}
+
+		@Override
+		public String toString() {
+			return name + getOpenSeats() + " filled=" + getSeatsFilled() + "/" + size;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/* a ReentrantLock that records how long threads wait to acquire it and how long they then hold it.
+ * Time spent parked on one of its conditions is not counted as holding the lock: the owner marks those
+ * waits with pauseHold() and resumeHold(). Only the outermost lock()/unlock() of a reentrant hold is timed */
+class MeteredLock extends ReentrantLock {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final LatencyHistogram waitTimes;
+	private final LatencyHistogram holdTimes;
+	
+	//when the current owner acquired (or resumed holding) the lock, guarded by the lock itself
+	private long heldSince;
+	
+	//run by the owner just before it releases the lock, see setReleaseHook; guarded by the lock itself
+	private Runnable releaseHook;
+	
+	MeteredLock(ManagerMetrics metrics) {
+		this.waitTimes = metrics.lockWait;
+		this.holdTimes = metrics.lockHold;
+	}
+	
+	@Override
+	public void lock() {
+		long start = System.nanoTime();
+		super.lock();
+		if (getHoldCount() == 1) {
+			heldSince = System.nanoTime();
+			waitTimes.record(heldSince - start);
+		}
+	}
+	
+	//a successful tryLock counts as an acquisition with no wait
+	@Override
+	public boolean tryLock() {
+		if (!super.tryLock()) {
+			return false;
+		}
+		if (getHoldCount() == 1) {
+			heldSince = System.nanoTime();
+			waitTimes.record(0);
+		}
+		return true;
+	}
+	
+	@Override
+	public void unlock() {
+		if (getHoldCount() == 1) {
+			if (releaseHook != null) {
+				releaseHook.run();
+			}
+			holdTimes.record(System.nanoTime() - heldSince);
+		}
+		super.unlock();
+	}
+	
+	//the owner is about to await on a condition, which releases the lock
+	void pauseHold() {
+		if (releaseHook != null) {
+			releaseHook.run();
+		}
+		holdTimes.record(System.nanoTime() - heldSince);
+	}
+	
+	/* have the hook run, with the lock still held, every time the owner is about to release it: on the
+	 * outermost unlock and on pauseHold. Called with the lock held */
+	void setReleaseHook(Runnable hook) {
+		releaseHook = hook;
+	}
+	
+	//the owner has returned from awaiting on a condition and holds the lock again
+	void resumeHold() {
+		heldSince = System.nanoTime();
+	}
+}
@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/* compares the scheduling policies (see SchedulingPolicy) on one arrival trace.
+ * The trace is generated from a seed, so every policy, and every run, sees the same requests at the same
+ * times. It is replayed in simulated time against an AsyncDrillLoginManager from a single thread: futures
+ * complete on the thread that calls the manager, so the replay is deterministic and the numbers repeat
+ * exactly from run to run.
+ *
+ *   java PolicyBenchmark [seed] [requests] [maxHeadSkips] [meanGapSeconds]
+ *
+ * The rig has a fixed crew per role, all logged in at the start. Requests arrive at random (exponential gaps)
+ * with a random team of up to all three roles: most teams are small, some are large. Once a team has been
+ * assembled its members work for the team's job time and then log in again. With the default gap between
+ * requests the crew is busy about two thirds of the time and every policy keeps up, so they differ in wait
+ * only; with a gap of 240s or less the rig is overloaded and they differ in throughput too. Reported per policy:
+ *   teams/h:    teams assembled per simulated hour while requests were still arriving
+ *   wait:       mean, p99 and max time from request to assembled team, over all requests (the run continues
+ *               after the last arrival until every request has been served)
+ *   prio3 wait: mean wait of the requests made with the highest priority */
+public class PolicyBenchmark {
+
+	private static final String[] ROLES = {"Roustabout", "Floorhand", "Toolpusher"};
+
+	//workers per role, and the mean job time in simulated seconds
+	private static final int CREW = 12;
+	private static final double MEAN_JOB = 1800;
+
+	private static final int TOP_PRIORITY = 3;
+
+	public static void main(String[] args) {
+		long seed = (args.length > 0) ? Long.parseLong(args[0]) : 42;
+		int count = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+		int maxHeadSkips = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+		double meanGap = (args.length > 3) ? Double.parseDouble(args[3]) : 300;
+
+		Arrival[] trace = trace(seed, count, meanGap);
+		System.out.printf("seed=%d requests=%d crew=%d/role maxHeadSkips=%d meanGap=%.0fs%n",
+				seed, count, CREW, maxHeadSkips, meanGap);
+		System.out.printf("%-18s %9s %11s %11s %11s %14s%n",
+				"policy", "teams/h", "mean wait", "p99 wait", "max wait", "prio3 wait");
+		for (SchedulingPolicy policy : policies()) {
+			new Replay(trace, new AsyncDrillLoginManager(maxHeadSkips, policy)).run().print(policy.toString());
+		}
+	}
+
+	static SchedulingPolicy[] policies() {
+		return new SchedulingPolicy[] {
+				new SchedulingPolicy.Fifo(),
+				new SchedulingPolicy.ShortestFirst(),
+				new SchedulingPolicy.BestFit(),
+				new SchedulingPolicy.WeightedPriority(20)};
+	}
+
+	/* the arrival trace: 80% of teams have one or two workers of a role or two, the rest ask for three to
+	 * five of every role. Priorities 0 to TOP_PRIORITY are spread evenly */
+	static Arrival[] trace(long seed, int count, double meanGap) {
+		Random random = new Random(seed);
+		Arrival[] trace = new Arrival[count];
+		long time = 0;
+		for (int i = 0; i < count; i++) {
+			time += (long) (-meanGap * Math.log(1 - random.nextDouble()));
+			Map<String, Integer> team = new LinkedHashMap<String, Integer>();
+			if (random.nextInt(10) < 8) {
+				team.put(ROLES[random.nextInt(ROLES.length)], 1 + random.nextInt(2));
+				if (random.nextBoolean()) {
+					team.put(ROLES[random.nextInt(ROLES.length)], 1);
+				}
+			}
+			else {
+				for (String role : ROLES) {
+					team.put(role, 3 + random.nextInt(3));
+				}
+			}
+			long job = 1 + (long) (-MEAN_JOB * Math.log(1 - random.nextDouble()));
+			trace[i] = new Arrival(time, team, random.nextInt(TOP_PRIORITY + 1), job);
+		}
+		return trace;
+	}
+
+	static final class Arrival {
+		final long time;
+		final Map<String, Integer> team;
+		final int priority;
+		final long job;
+
+		Arrival(long time, Map<String, Integer> team, int priority, long job) {
+			this.time = time;
+			this.team = team;
+			this.priority = priority;
+			this.job = job;
+		}
+	}
+
+	/* one run of the trace. Events are arrivals and crews coming back from a job, processed in time order
+	 * (ties in the order they were scheduled) */
+	private static final class Replay {
+		private final Arrival[] trace;
+		private final AsyncDrillLoginManager manager;
+		private final PriorityQueue<Event> events = new PriorityQueue<Event>();
+		private long scheduled = 0;
+		private long now = 0;
+
+		private final long[] waits;
+		private int served = 0;
+		private int servedBeforeEnd = 0;
+		private long topWait = 0;
+		private int topServed = 0;
+
+		Replay(Arrival[] trace, AsyncDrillLoginManager manager) {
+			this.trace = trace;
+			this.manager = manager;
+			this.waits = new long[trace.length];
+		}
+
+		Replay run() {
+			for (String role : ROLES) {
+				for (int i = 0; i < CREW; i++) {
+					manager.workerLoginAsync(role);
+				}
+			}
+			for (Arrival arrival : trace) {
+				schedule(arrival.time, arrival, false);
+			}
+			long end = trace[trace.length - 1].time;
+			while (!events.isEmpty()) {
+				Event event = events.poll();
+				now = event.time;
+				if (event.back) {
+					for (Map.Entry<String, Integer> seats : event.arrival.team.entrySet()) {
+						for (int i = 0; i < seats.getValue(); i++) {
+							manager.workerLoginAsync(seats.getKey());
+						}
+					}
+				}
+				else {
+					Arrival arrival = event.arrival;
+					//completes on this thread, inside the manager call that assembles the team
+					manager.smallTeamRequestAsync(arrival.team, arrival.priority).thenRun(() -> {
+						assembled(arrival, end);
+					});
+				}
+			}
+			return this;
+		}
+
+		private void assembled(Arrival arrival, long end) {
+			long wait = now - arrival.time;
+			waits[served++] = wait;
+			if (now <= end) {
+				servedBeforeEnd++;
+			}
+			if (arrival.priority == TOP_PRIORITY) {
+				topWait += wait;
+				topServed++;
+			}
+			schedule(now + arrival.job, arrival, true);
+		}
+
+		private void schedule(long time, Arrival arrival, boolean back) {
+			events.add(new Event(time, scheduled++, arrival, back));
+		}
+
+		void print(String policy) {
+			long[] sorted = Arrays.copyOf(waits, served);
+			Arrays.sort(sorted);
+			double mean = 0;
+			for (long wait : sorted) {
+				mean += wait;
+			}
+			mean /= Math.max(1, served);
+			double hours = trace[trace.length - 1].time / 3600.0;
+			long p99 = (served == 0) ? 0 : sorted[(int) Math.min(served - 1, Math.ceil(served * 0.99) - 1)];
+			long max = (served == 0) ? 0 : sorted[served - 1];
+			System.out.printf("%-18s %9.2f %10.0fs %10ds %10ds %13.0fs%n", policy, servedBeforeEnd / hours,
+					mean, p99, max, topWait / (double) Math.max(1, topServed));
+		}
+	}
+
+	private static final class Event implements Comparable<Event> {
+		final long time;
+		final long order;
+		final Arrival arrival;
+		//true for a crew coming back from the arrival's job, false for the arrival itself
+		final boolean back;
+
+		Event(long time, long order, Arrival arrival, boolean back) {
+			this.time = time;
+			this.order = order;
+			this.arrival = arrival;
+			this.back = back;
+		}
+
+		@Override
+		public int compareTo(Event other) {
+			if (time != other.time) {
+				return Long.compare(time, other.time);
+			}
+			return Long.compare(order, other.order);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/* queue of team requests, ordered by rank (lowest first) and then by the order they were added.
+ * The queue is linked through the requests themselves, so looking at the head, walking the queue and
+ * unlinking a request allocate nothing. Not thread safe: callers guard it with their own lock */
+class RequestQueue {
+	
+	private TeamRequest head;
+	private TeamRequest tail;
+	private int size = 0;
+	
+	/* add the request behind every request of the same or lower rank, and behind every request that has
+	 * been given workers already. The walk starts at the tail, so a request that ranks last (always, under
+	 * FIFO) is added in O(1) */
+	void insert(TeamRequest request) {
+		link(request, placeBefore(tail, request.rank));
+	}
+	
+	/* restore the order after the ranks have changed. A stable insertion sort: O(n) when the order is
+	 * almost unchanged, which is the usual case between two matches */
+	void sort() {
+		TeamRequest request = (head == null) ? null : head.next;
+		while (request != null) {
+			TeamRequest next = request.next;
+			TeamRequest before = placeBefore(request.prev, request.rank);
+			if (before != request.prev) {
+				remove(request);
+				link(request, before);
+			}
+			request = next;
+		}
+	}
+	
+	/* walking back from the given request, the last one a request of this rank has to stay behind, or null.
+	 * A request holding workers is never overtaken: those workers would be stuck in it while the requests
+	 * now in front wait for workers, and with every worker held that way no team could be assembled */
+	private static TeamRequest placeBefore(TeamRequest from, long rank) {
+		TeamRequest before = from;
+		while (before != null && before.rank > rank && before.open == before.size) {
+			before = before.prev;
+		}
+		return before;
+	}
+	
+	//link the request in right after before, or at the head if before is null
+	private void link(TeamRequest request, TeamRequest before) {
+		TeamRequest after = (before == null) ? head : before.next;
+		request.prev = before;
+		request.next = after;
+		if (before == null) {
+			head = request;
+		}
+		else {
+			before.next = request;
+		}
+		if (after == null) {
+			tail = request;
+		}
+		else {
+			after.prev = request;
+		}
+		size++;
+	}
+	
+	//the first request, or null if the queue is empty
+	TeamRequest peek() {
+		return head;
+	}
+	
+	void remove(TeamRequest request) {
+		if (request.prev == null) {
+			head = request.next;
+		}
+		else {
+			request.prev.next = request.next;
+		}
+		if (request.next == null) {
+			tail = request.prev;
+		}
+		else {
+			request.next.prev = request.prev;
+		}
+		request.prev = null;
+		request.next = null;
+		size--;
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+	
+	int size() {
+		return size;
+	}
+}
@@ -0,0 +1,43 @@
+import java.util.HashMap;
+
+/* turns worker role names into small int ids, once per role.
+ * The manager keeps its per-role state (waiting workers, wait queues, seats of a request) in int
+ * indexed arrays, so the login path does not hash into maps of boxed counts.
+ * Not thread safe: callers guard it with their own lock */
+class RoleRegistry {
+	
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	private String[] names = new String[8];
+	private int size = 0;
+	
+	//the id of a role, registering it the first time it is seen
+	int idOf(String role) {
+		Integer id = ids.get(role);
+		if (id != null) {
+			return id;
+		}
+		if (size == names.length) {
+			String[] grown = new String[size * 2];
+			System.arraycopy(names, 0, grown, 0, size);
+			names = grown;
+		}
+		names[size] = role;
+		ids.put(role, size);
+		return size++;
+	}
+	
+	//the id of a role, or -1 if no request or worker has used it yet
+	int find(String role) {
+		Integer id = ids.get(role);
+		return (id == null) ? -1 : id;
+	}
+	
+	String nameOf(int id) {
+		return names[id];
+	}
+	
+	//number of roles registered so far; ids run from 0 to size() - 1
+	int size() {
+		return size;
+	}
+}
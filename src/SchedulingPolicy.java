@@ -0,0 +1,141 @@
+/* decides which queued team request is offered workers first.
+ * The matcher keeps its queue sorted by rank, lowest first, with requests of equal rank in the order they
+ * were made, and then applies its usual rules to that order (only the head takes workers, or later requests
+ * too with non-head-of-line matching, see TeamMatcher). A policy whose ranks depend on the waiting workers
+ * is re-ranked before every match; the others are ranked once, when the request is queued.
+ * Called with the manager's lock held */
+public interface SchedulingPolicy {
+
+	/* the rank of a request. waiting holds the number of waiting workers per role id,
+	 * and may be shorter than request.seats */
+	long rank(TeamRequest request, int[] waiting);
+
+	//true if rank depends on the waiting workers, so the queue has to be re-sorted as they come and go
+	boolean dependsOnWaiting();
+
+	//requests are served in the order they were made
+	public static final class Fifo implements SchedulingPolicy {
+		@Override
+		public long rank(TeamRequest request, int[] waiting) {
+			return 0;
+		}
+
+		@Override
+		public boolean dependsOnWaiting() {
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "FIFO";
+		}
+	}
+
+	/* the smallest team is served first, so the most teams are assembled from a given pool.
+	 * A large team can be overtaken for as long as smaller ones keep arriving */
+	public static final class ShortestFirst implements SchedulingPolicy {
+		@Override
+		public long rank(TeamRequest request, int[] waiting) {
+			return request.size;
+		}
+
+		@Override
+		public boolean dependsOnWaiting() {
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "shortest-first";
+		}
+	}
+
+	/* the request that needs the fewest workers beyond those already waiting is served first, so teams the
+	 * current pool can assemble go ahead of teams that would only hold on to part of it.
+	 * Re-ranking costs O(queued requests) per match */
+	public static final class BestFit implements SchedulingPolicy {
+		@Override
+		public long rank(TeamRequest request, int[] waiting) {
+			long shortfall = 0;
+			for (int roleId = 0; roleId < request.seats.length; roleId++) {
+				int available = (roleId < waiting.length) ? waiting[roleId] : 0;
+				shortfall += Math.max(0, request.seats[roleId] - available);
+			}
+			return shortfall;
+		}
+
+		@Override
+		public boolean dependsOnWaiting() {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "best-fit";
+		}
+	}
+
+	/* requests are served in the order they were made, but each point of priority (TeamRequest.priority) lets
+	 * a request go ahead of up to overtakes requests made before it. Ageing is counted in requests rather than
+	 * time, so a request of low priority is served once enough requests have been made after it, and none
+	 * starves as long as priorities are bounded */
+	public static final class WeightedPriority implements SchedulingPolicy {
+		private final long overtakes;
+
+		public WeightedPriority(long overtakes) {
+			this.overtakes = overtakes;
+		}
+
+		@Override
+		public long rank(TeamRequest request, int[] waiting) {
+			return request.sequence - request.priority * overtakes;
+		}
+
+		@Override
+		public boolean dependsOnWaiting() {
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "weighted-priority";
+		}
+	}
+
+	/* earliest deadline first: requests made with a start deadline are served by it, each point of priority
+	 * counting as a deadline priorityNanos earlier. Requests without a deadline are filler work, served after
+	 * every request with one, by priority and then in the order they were made */
+	public static final class EarliestDeadlineFirst implements SchedulingPolicy {
+		private static final long FILLER = Long.MAX_VALUE / 2;
+
+		private final long priorityNanos;
+		//deadlines are ranked relative to this, so comparing ranks is safe wherever System.nanoTime starts
+		private final long origin = System.nanoTime();
+
+		public EarliestDeadlineFirst() {
+			this(0);
+		}
+
+		public EarliestDeadlineFirst(long priorityNanos) {
+			this.priorityNanos = priorityNanos;
+		}
+
+		@Override
+		public long rank(TeamRequest request, int[] waiting) {
+			if (!request.hasDeadline) {
+				return FILLER - request.priority;
+			}
+			return request.deadline - origin - request.priority * priorityNanos;
+		}
+
+		@Override
+		public boolean dependsOnWaiting() {
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "earliest-deadline";
+		}
+	}
+}
@@ -0,0 +1,235 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/* a Manager for many rigs, with one shard (an AsyncDrillLoginManager with its own lock and queues) per rig.
+ * Requests and logins for a rig only lock that rig's shard, so rigs do not contend with each other.
+ *
+ * Idle workers are shared between rigs. Every shard publishes, per role, how many workers are waiting and
+ * how many seats its queued requests still have open (see ManagerMetrics), and both can be read without a
+ * lock. A request that leaves its shard short of a role borrows waiting workers of that role from shards
+ * with more of them than they need, and a login that has to wait on a shard with no use for it moves to
+ * a shard that is short of its role. A borrowed worker is released with the name of the team it joined
+ * on the other rig.
+ *
+ * Both sides publish their own change before reading the other shards' gauges, so when a request and a
+ * login for different rigs race, at least one of them sees the other. Moving a login takes the lender's
+ * lock and then the borrower's, one after the other and never both, so shards cannot deadlock.
+ *
+ * Within a rig teams are assembled in the order the shard's matching rules give (see TeamMatcher);
+ * there is no ordering between rigs */
+public class ShardedDrillLoginManager implements AsyncManager, Manager {
+
+	private final String[] rigs;
+	private final AsyncDrillLoginManager[] shards;
+	private final Map<String, Integer> shardOfRig = new HashMap<String, Integer>();
+
+	//rigs named "rig1" .. "rigN"
+	public ShardedDrillLoginManager(int rigCount) {
+		this(rigNames(rigCount));
+	}
+
+	public ShardedDrillLoginManager(String... rigs) {
+		this(0, rigs);
+	}
+
+	//maxHeadSkips is passed on to every shard, as in DrillLoginManager
+	public ShardedDrillLoginManager(int maxHeadSkips, String... rigs) {
+		this(maxHeadSkips, new SchedulingPolicy.Fifo(), rigs);
+	}
+
+	//every shard orders its own queue with the policy, see SchedulingPolicy
+	public ShardedDrillLoginManager(int maxHeadSkips, SchedulingPolicy policy, String... rigs) {
+		this(maxHeadSkips, policy, AdmissionControl.UNBOUNDED, rigs);
+	}
+
+	/* the admission caps apply to every shard on its own. A login that is rejected by its rig's shard is not
+	 * tried on other rigs */
+	public ShardedDrillLoginManager(int maxHeadSkips, SchedulingPolicy policy, AdmissionControl admission, String... rigs) {
+		if (rigs.length == 0) {
+			throw new IllegalArgumentException("at least one rig is needed");
+		}
+		this.rigs = rigs.clone();
+		this.shards = new AsyncDrillLoginManager[rigs.length];
+		for (int i = 0; i < rigs.length; i++) {
+			if (shardOfRig.put(rigs[i], i) != null) {
+				throw new IllegalArgumentException("rig " + rigs[i] + " is listed twice");
+			}
+			shards[i] = new AsyncDrillLoginManager(maxHeadSkips, policy, admission, rigs[i] + "/team");
+		}
+	}
+
+	//requests and logins for a named rig
+
+	public CompletableFuture<String> smallTeamRequestAsync(String rig, Map<String, Integer> team) {
+		int shard = shardOf(rig);
+		CompletableFuture<String> assembled = shards[shard].smallTeamRequestAsync(team);
+		if (!assembled.isDone()) {
+			borrowFor(shard, team, null);
+		}
+		return assembled;
+	}
+
+	public CompletableFuture<String> drillerRequestAsync(String rig, String teamName, Map<String, Integer> team) {
+		return leadRequestAsync(rig, teamName, "Driller", team);
+	}
+
+	//see AsyncDrillLoginManager.leadRequestAsync
+	public CompletableFuture<String> leadRequestAsync(String rig, String teamName, String leadRole, Map<String, Integer> team) {
+		int shard = shardOf(rig);
+		CompletableFuture<String> assembled = shards[shard].leadRequestAsync(teamName, leadRole, team);
+		if (!assembled.isDone()) {
+			borrowFor(shard, team, leadRole);
+		}
+		return assembled;
+	}
+
+	public CompletableFuture<String> workerLoginAsync(String rig, String role) {
+		int shard = shardOf(rig);
+		CompletableFuture<String> login = shards[shard].workerLoginAsync(role);
+		if (!login.isDone()) {
+			lendFrom(shard, role);
+		}
+		return login;
+	}
+
+	/* a multi-skilled login (see AsyncDrillLoginManager.workerLoginAsync(Set)). It is matched on its own rig
+	 * only: borrowing between rigs works per role, and a multi-skilled login is not waiting under any one role */
+	public CompletableFuture<String> workerLoginAsync(String rig, Set<String> roles) {
+		return shards[shardOf(rig)].workerLoginAsync(roles);
+	}
+
+	public void smallTeamRequest(String rig, Map<String, Integer> team) {
+		smallTeamRequestAsync(rig, team);
+	}
+
+	/* the blocking methods return as AsyncDrillLoginManager's do: a call rejected or shed by its shard's 
+	 * admission control returns without a team, null for a login */
+
+	public void drillerRequest(String rig, String teamName, Map<String, Integer> team) {
+		AsyncDrillLoginManager.result(drillerRequestAsync(rig, teamName, team));
+	}
+
+	public void leadRequest(String rig, String teamName, String leadRole, Map<String, Integer> team) {
+		AsyncDrillLoginManager.result(leadRequestAsync(rig, teamName, leadRole, team));
+	}
+
+	public String workerLogin(String rig, String role) {
+		return AsyncDrillLoginManager.result(workerLoginAsync(rig, role));
+	}
+
+	/* the Manager and AsyncManager methods carry no rig, so each calling thread is given a home rig.
+	 * Idle workers still move to wherever they are needed */
+
+	@Override
+	public CompletableFuture<String> smallTeamRequestAsync(Map<String, Integer> team) {
+		return smallTeamRequestAsync(homeRig(), team);
+	}
+
+	@Override
+	public CompletableFuture<String> drillerRequestAsync(String teamName, Map<String, Integer> team) {
+		return drillerRequestAsync(homeRig(), teamName, team);
+	}
+
+	@Override
+	public CompletableFuture<String> workerLoginAsync(String role) {
+		return workerLoginAsync(homeRig(), role);
+	}
+
+	@Override
+	public void smallTeamRequest(Map<String, Integer> team) {
+		smallTeamRequest(homeRig(), team);
+	}
+
+	@Override
+	public void drillerRequest(String teamName, Map<String, Integer> team) {
+		drillerRequest(homeRig(), teamName, team);
+	}
+
+	@Override
+	public String workerLogin(String role) {
+		return workerLogin(homeRig(), role);
+	}
+
+	public void leadRequest(String teamName, String leadRole, Map<String, Integer> team) {
+		leadRequest(homeRig(), teamName, leadRole, team);
+	}
+
+	//the metrics of one rig's shard
+	public ManagerMetrics getMetrics(String rig) {
+		return shards[shardOf(rig)].getMetrics();
+	}
+
+	//the queue of one rig's shard, see AsyncDrillLoginManager.snapshot
+	public ManagerSnapshot snapshot(String rig) {
+		return shards[shardOf(rig)].snapshot();
+	}
+
+	//whether the shards' admission control parks the thread calling an async method, see AsyncDrillLoginManager
+	boolean blocksCallers() {
+		return shards[0].blocksCallers();
+	}
+
+	/* the request just queued on this shard is still open: for every role it is short of, move waiting
+	 * logins over from the other shards, as long as they have more of that role than they need. The lead
+	 * role (null for anonymous requests) has no seats queued, so nothing is borrowed for it */
+	private void borrowFor(int shard, Map<String, Integer> team, String leadRole) {
+		ManagerMetrics metrics = shards[shard].getMetrics();
+		for (String role : team.keySet()) {
+			if (role.equals(leadRole)) {
+				continue;
+			}
+			long needed = -metrics.surplus(role);
+			for (int i = 1; i < shards.length && needed > 0; i++) {
+				AsyncDrillLoginManager lender = shards[(shard + i) % shards.length];
+				while (needed > 0 && lender.getMetrics().surplus(role) > 0) {
+					CompletableFuture<String> login = lender.stealLogin(role, shards[shard]);
+					if (login == null) {
+						break;
+					}
+					shards[shard].adoptLogin(role, login);
+					needed--;
+				}
+			}
+		}
+	}
+
+	/* a login has been left waiting on this shard: if this shard has no seat for it but another one is
+	 * short of the role, move one waiting login there. Any waiting login will do, they are interchangeable */
+	private void lendFrom(int shard, String role) {
+		if (shards[shard].getMetrics().surplus(role) <= 0) {
+			return;
+		}
+		for (int i = 1; i < shards.length; i++) {
+			AsyncDrillLoginManager borrower = shards[(shard + i) % shards.length];
+			if (borrower.getMetrics().surplus(role) < 0) {
+				CompletableFuture<String> login = shards[shard].stealLogin(role, borrower);
+				if (login != null) {
+					borrower.adoptLogin(role, login);
+				}
+				return;
+			}
+		}
+	}
+
+	private int shardOf(String rig) {
+		Integer shard = shardOfRig.get(rig);
+		if (shard == null) {
+			throw new IllegalArgumentException("unknown rig " + rig);
+		}
+		return shard;
+	}
+
+	private String homeRig() {
+		return rigs[(int) (Thread.currentThread().getId() % rigs.length)];
+	}
+
+	private static String[] rigNames(int rigCount) {
+		String[] names = new String[rigCount];
+		for (int i = 0; i < rigCount; i++) {
+			names[i] = "rig" + (i + 1);
+		}
+		return names;
+	}
+}
@@ -0,0 +1,86 @@
+import java.util.concurrent.locks.Condition;
+
+/* publishes a matcher's snapshots for dashboards (see ManagerSnapshot), once the first dashboard has asked.
+ * The thread that changed the queue or the waiting workers publishes the change as it releases the lock, unless
+ * the last snapshot is less than TeamMatcher.SNAPSHOT_INTERVAL_NANOS old. A change left unpublished that way is
+ * published by this publisher's thread, which waits out the rest of the interval on a condition of the manager's
+ * lock; it is started for such a change and ends once an interval has passed without one. Dashboards only read
+ * the published snapshot, so however often they poll they never take the lock */
+final class SnapshotPublisher implements Runnable {
+
+	private final MeteredLock lock;
+	private final Condition interval;
+	private final TeamMatcher matcher;
+	private final String threadName;
+
+	//guarded by lock
+	private boolean running = false;
+
+	SnapshotPublisher(MeteredLock lock, TeamMatcher matcher, String threadName) {
+		this.lock = lock;
+		this.interval = lock.newCondition();
+		this.matcher = matcher;
+		this.threadName = threadName;
+	}
+
+	/* publish the first snapshot and from then on publish on every release of the lock. Called without the
+	 * lock, by a dashboard that found nothing published yet; returns the published snapshot */
+	ManagerSnapshot start() {
+		lock.lock();
+		try {
+			if (matcher.publishedSnapshot() == null) {
+				matcher.publishSnapshot();
+				lock.setReleaseHook(this::released);
+			}
+			return matcher.publishedSnapshot();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	//run by the owner of the lock as it releases it: publish a change now if the interval allows, or leave it to the thread
+	private void released() {
+		if (!matcher.changedSinceSnapshot()) {
+			return;
+		}
+		if (matcher.nanosToSnapshot(System.nanoTime()) <= 0) {
+			matcher.publishSnapshot();
+		}
+		else if (!running) {
+			running = true;
+			Thread thread = new Thread(this, threadName);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	@Override
+	public void run() {
+		lock.lock();
+		try {
+			while (true) {
+				long wait = matcher.nanosToSnapshot(System.nanoTime());
+				if (wait > 0) {
+					lock.pauseHold();
+					try {
+						interval.awaitNanos(wait);
+					}
+					catch (InterruptedException e) {
+						//nobody else holds this thread, the interval is simply looked at again
+					}
+					lock.resumeHold();
+					continue;
+				}
+				if (!matcher.changedSinceSnapshot()) {
+					running = false;
+					return;
+				}
+				matcher.publishSnapshot();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* soak scenario: a large number of simulated worker logins (1,000,000 by default) across three roles,
+ * matched against a stream of team requests that needs every one of them.
+ *
+ *   java SoakTest [logins] [virtual|async]
+ *
+ * virtual: every login is a virtual thread blocked in DrillLoginManager.workerLogin (per-role mode).
+ *          Needs JDK 21, otherwise the run falls back to async.
+ * async:   every login is a future in AsyncDrillLoginManager, completed on a small executor.
+ *
+ * Reports assignment throughput, the number of carrier (or executor) threads that ran logins and the
+ * peak heap use */
+public class SoakTest {
+	
+	//each team needs 3 Roustabouts, 2 Floorhands and 1 Toolpusher, logins arrive in that ratio
+	private static final String[] ROLES = {"Roustabout", "Roustabout", "Roustabout", "Floorhand", "Floorhand", "Toolpusher"};
+	
+	public static void main(String[] args) throws InterruptedException {
+		int logins = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		String mode = (args.length > 1) ? args[1] : "virtual";
+		logins -= logins % ROLES.length;
+		if (mode.equals("virtual") && !VirtualThreads.available()) {
+			System.out.println("Virtual threads need JDK 21 or later, running in async mode instead");
+			mode = "async";
+		}
+		
+		resetPeakHeap();
+		Set<String> threadsUsed = ConcurrentHashMap.newKeySet();
+		CountDownLatch released = new CountDownLatch(logins);
+		AtomicLong wrongTeams = new AtomicLong();
+		long start = System.nanoTime();
+		
+		if (mode.equals("virtual")) {
+			runVirtual(logins, threadsUsed, released, wrongTeams);
+		}
+		else {
+			runAsync(logins, threadsUsed, released, wrongTeams);
+		}
+		
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("mode = " + mode + ", logins = " + logins + ", teams = " + (logins / ROLES.length));
+		System.out.printf("assignments/sec = %.0f (%.2f s)%n", logins / seconds, seconds);
+		System.out.println((mode.equals("virtual") ? "carrier" : "executor") + " threads used = " + threadsUsed.size());
+		System.out.printf("peak heap = %.1f MB%n", peakHeap() / (1024.0 * 1024.0));
+		System.out.println("logins released with a null team name = " + wrongTeams.get());
+	}
+	
+	//one virtual thread per login, all parked in the blocking manager until their team is assembled
+	private static void runVirtual(int logins, Set<String> carriers, CountDownLatch released, AtomicLong wrongTeams)
+			throws InterruptedException {
+		DrillLoginManager manager = new DrillLoginManager(true);
+		ThreadFactory factory = VirtualThreads.factory();
+		
+		submitTeams(manager, logins / ROLES.length);
+		for (int i = 0; i < logins; i++) {
+			String role = ROLES[i % ROLES.length];
+			factory.newThread(() -> {
+				String carrier = VirtualThreads.carrierOf(Thread.currentThread());
+				if (carrier != null) {
+					carriers.add(carrier);
+				}
+				if (manager.workerLogin(role) == null) {
+					wrongTeams.incrementAndGet();
+				}
+				released.countDown();
+			}).start();
+		}
+		released.await();
+	}
+	
+	//one future per login, logins made and completed on a pool the size of the machine
+	private static void runAsync(int logins, Set<String> threadsUsed, CountDownLatch released, AtomicLong wrongTeams)
+			throws InterruptedException {
+		AsyncDrillLoginManager manager = new AsyncDrillLoginManager();
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		
+		submitTeams(manager, logins / ROLES.length);
+		int perThread = logins / threads;
+		for (int t = 0; t < threads; t++) {
+			int first = t * perThread;
+			int last = (t == threads - 1) ? logins : first + perThread;
+			executor.execute(() -> {
+				threadsUsed.add(Thread.currentThread().getName());
+				for (int i = first; i < last; i++) {
+					CompletableFuture<String> login = manager.workerLoginAsync(ROLES[i % ROLES.length]);
+					login.whenComplete((teamName, error) -> {
+						if (teamName == null) {
+							wrongTeams.incrementAndGet();
+						}
+						released.countDown();
+					});
+				}
+			});
+		}
+		released.await();
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+	
+	private static void submitTeams(Manager manager, int teams) {
+		Map<String, Integer> team = new HashMap<String, Integer>();
+		team.put("Roustabout", 3);
+		team.put("Floorhand", 2);
+		team.put("Toolpusher", 1);
+		for (int i = 0; i < teams; i++) {
+			manager.smallTeamRequest(new HashMap<String, Integer>(team));
+		}
+	}
+	
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+	
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
@@ -0,0 +1,709 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/* the request queue and the matching rules shared by the managers.
+ * Holds the queued team requests and the number of waiting workers per role, and decides which request
+ * a worker joins. How workers are parked and released (condition variables, futures, ...) is up to the
+ * manager that owns the matcher, which is told about every assignment through a Listener.
+ * Not thread safe: the owning manager guards it with its own lock */
+class TeamMatcher {
+
+	interface Listener {
+		//count waiting workers of this role have been given seats in the team by match()
+		void assigned(TeamRequest team, int roleId, int count);
+
+		//a waiting multi-skilled worker has been given a seat in the team by match(), see worker.team
+		void seated(TeamRequest team, SkilledWorker worker);
+
+		//the team has been assembled and removed from the queue
+		void completed(TeamRequest team);
+	}
+
+	/* role names are turned into small int ids once, so the per-role state lives in int arrays
+	 * and the login path does no string hashing into maps of boxed counts */
+	final RoleRegistry roles = new RoleRegistry();
+
+	/* queue that stores all the team requests and their worker requirements, in the order the scheduling
+	 * policy gives them (the order in which the requests were made, under FIFO) */
+	final RequestQueue requests = new RequestQueue();
+
+	private final SchedulingPolicy policy;
+
+	/* pending start deadlines of queued requests. The wheel turns once every DEADLINE_SLOTS ticks; longer
+	 * deadlines simply wait for later turns */
+	static final long DEADLINE_TICK_NANOS = 10000000L;
+	static final int DEADLINE_SLOTS = 512;
+	private final TimerWheel deadlines = new TimerWheel(DEADLINE_TICK_NANOS, DEADLINE_SLOTS);
+
+	/* the latest view of the queue published for dashboards, read without the lock. null until the first
+	 * dashboard asks for one, see SnapshotPublisher */
+	private volatile ManagerSnapshot snapshot;
+	private long snapshotVersion = 0;
+	//set by every change to the queue or the waiting workers, cleared as a snapshot is taken
+	private boolean changedSinceSnapshot = true;
+	//a changed snapshot is only published again once the last one is this old, so changes rarely pay for one
+	static final long SNAPSHOT_INTERVAL_NANOS = 10000000L;
+	//pending teams copied into a snapshot at most, from the front of the queue
+	static final int SNAPSHOT_TEAMS = 1000;
+
+	/* write-ahead journal of the queue and the single-role waiting workers, or null (see setJournal). Each
+	 * change is journaled right after it has been made, so a checkpoint taken while a record is appended sees
+	 * the state of exactly the records journaled so far */
+	private Journal journal;
+
+	//where requests, logins and seat assignments are published for downstream consumers, or null (see setEvents)
+	private EventStream events;
+
+	//number of requests queued so far, see TeamRequest.sequence
+	private long sequence = 0;
+
+	//number of workers per role id that are logged in and not yet part of a team
+	private int[] waiting = new int[8];
+
+	//seats per role id still open over all queued requests
+	private int[] openSeats = new int[8];
+
+	/* multi-skilled workers waiting for a seat, grouped by skill set (there are only ever a few distinct
+	 * sets), and the number of them that can fill each role id */
+	private final ArrayList<SkillGroup> skillGroups = new ArrayList<SkillGroup>();
+	private int[] skilledWaiting = new int[8];
+	private int skilledWaitingTotal = 0;
+
+	/* non-head-of-line matching: a worker whose role the head request does not need may fill a later
+	 * request instead of waiting behind it. Every time a request is overtaken by a later one its skip
+	 * count goes up, and once a request has been skipped maxHeadSkips times nobody may pass it any more.
+	 * 0 gives strict head-of-line order, where only the head request takes workers */
+	private final int maxHeadSkips;
+
+	private final Listener listener;
+
+	//queue length, waiting workers per role and time-to-fill are published here as they change
+	private final ManagerMetrics metrics;
+
+	TeamMatcher(int maxHeadSkips, SchedulingPolicy policy, Listener listener, ManagerMetrics metrics) {
+		this.maxHeadSkips = Math.max(0, maxHeadSkips);
+		this.policy = policy;
+		this.listener = listener;
+		this.metrics = metrics;
+	}
+
+	/* the id of a role, registering it (and growing the per-role counts) the first time it is seen */
+	int roleId(String role) {
+		int known = roles.size();
+		int roleId = roles.idOf(role);
+		if (roleId >= waiting.length) {
+			waiting = grow(waiting);
+			openSeats = grow(openSeats);
+			skilledWaiting = grow(skilledWaiting);
+		}
+		metrics.roleRegistered(roleId, role);
+		if (journal != null && roleId == known) {
+			journal.role(roleId, role);
+		}
+		return roleId;
+	}
+
+	/* convert a request map into seats per role id. This is the only place a request's role names are hashed */
+	int[] toSeats(Map<String, Integer> team) {
+		for (String role : team.keySet()) {
+			roleId(role);
+		}
+		int[] seats = new int[roles.size()];
+		for (Map.Entry<String, Integer> entry : team.entrySet()) {
+			if (entry.getValue() > 0) {
+				seats[roles.find(entry.getKey())] = entry.getValue();
+			}
+		}
+		return seats;
+	}
+
+	private static int[] grow(int[] counts) {
+		int[] grown = new int[counts.length * 2];
+		System.arraycopy(counts, 0, grown, 0, counts.length);
+		return grown;
+	}
+
+	/* seats for a request made by a lead (e.g. the driller): the lead fills its own role's seats by making
+	 * the request, so none are queued for it. Only this request is touched, whatever else is queued */
+	int[] toSeats(Map<String, Integer> team, String leadRole) {
+		int[] seats = toSeats(team);
+		int leadId = roles.find(leadRole);
+		if (leadId >= 0 && leadId < seats.length) {
+			seats[leadId] = 0;
+		}
+		return seats;
+	}
+
+	int waiting(int roleId) {
+		return waiting[roleId];
+	}
+
+	int openSeats(int roleId) {
+		return openSeats[roleId];
+	}
+
+	boolean isEmpty() {
+		return requests.isEmpty();
+	}
+
+	int pendingRequests() {
+		return requests.size();
+	}
+
+	/* the queued request made first. The queue is in policy order, so this is a walk over it; it is only
+	 * needed when AdmissionControl sheds a request to make room */
+	TeamRequest oldest() {
+		TeamRequest oldest = requests.peek();
+		for (TeamRequest team = oldest; team != null; team = team.next) {
+			if (team.sequence < oldest.sequence) {
+				oldest = team;
+			}
+		}
+		return oldest;
+	}
+
+	/* queue a new request behind those that rank the same or lower; the caller runs match() when it wants
+	 * waiting workers assigned */
+	void add(TeamRequest team) {
+		team.sequence = ++sequence;
+		team.rank = policy.rank(team, waiting);
+		requests.insert(team);
+		if (team.hasDeadline) {
+			deadlines.schedule(team);
+		}
+		for (int roleId = 0; roleId < team.seats.length; roleId++) {
+			if (team.seats[roleId] > 0) {
+				openSeats[roleId] += team.seats[roleId];
+				metrics.setOpenSeats(roleId, openSeats[roleId]);
+			}
+		}
+		metrics.requests.increment();
+		metrics.setPendingRequests(requests.size());
+		if (journal != null) {
+			journal.request(team);
+		}
+		event(EventStream.REQUEST, team, -1, team.size);
+	}
+
+	//a worker has logged in and is not part of a team yet
+	void login(int roleId) {
+		metrics.setWaiting(roleId, ++waiting[roleId]);
+		if (journal != null) {
+			journal.login(roleId);
+		}
+		event(EventStream.LOGIN, null, roleId, 1);
+	}
+
+	//a waiting worker leaves without taking a seat
+	void logout(int roleId) {
+		metrics.setWaiting(roleId, --waiting[roleId]);
+		if (journal != null) {
+			journal.logout(roleId);
+		}
+		event(EventStream.LOGOUT, null, roleId, 1);
+	}
+
+	/* a waiting multi-skilled worker gives up. It stays in its group's queue, marked, and is dropped when
+	 * the queue reaches it, so this is O(1) */
+	void logoutSkilled(SkilledWorker worker) {
+		worker.withdrawn = true;
+		countSkilled(worker.skills, -1);
+		event(EventStream.LOGOUT, null, -1, 1);
+	}
+
+	//a logged in worker takes a seat in the team
+	void take(TeamRequest team, int roleId) {
+		team.take(roleId);
+		metrics.setWaiting(roleId, --waiting[roleId]);
+		metrics.setOpenSeats(roleId, --openSeats[roleId]);
+		if (journal != null) {
+			journal.take(team, roleId);
+		}
+		event(EventStream.ASSIGNED, team, roleId, 1);
+	}
+
+	/* a member leaves a team that has not been assembled yet, and its seat is open again.
+	 * The caller runs match() if a waiting worker should take the seat */
+	void unseat(TeamRequest team, int roleId) {
+		reopen(team, roleId);
+		if (journal != null) {
+			journal.unseat(team, roleId);
+		}
+	}
+
+	//as unseat, for a multi-skilled member. Their seats are not journaled
+	void unseatSkilled(TeamRequest team, SkilledWorker worker) {
+		team.skilled.remove(worker);
+		reopen(team, worker.seat);
+		worker.team = null;
+		worker.seat = -1;
+	}
+
+	private void reopen(TeamRequest team, int roleId) {
+		team.seats[roleId]++;
+		team.open++;
+		metrics.setOpenSeats(roleId, ++openSeats[roleId]);
+		event(EventStream.UNSEATED, team, roleId, 1);
+	}
+
+	/* withdraw a queued request before it is assembled: it leaves the queue in O(1) and its open seats are
+	 * given back. Its members are not touched; the manager puts them back among the waiting workers */
+	void cancel(TeamRequest team) {
+		requests.remove(team);
+		deadlines.remove(team);
+		for (int roleId = 0; roleId < team.seats.length; roleId++) {
+			if (team.seats[roleId] > 0) {
+				openSeats[roleId] -= team.seats[roleId];
+				metrics.setOpenSeats(roleId, openSeats[roleId]);
+			}
+		}
+		team.cancelled = true;
+		metrics.cancelledRequests.increment();
+		metrics.setPendingRequests(requests.size());
+		if (journal != null) {
+			journal.cancel(team);
+		}
+		event(EventStream.CANCELLED, team, -1, 0);
+	}
+
+	/* a worker logs in: it joins the request it can reach straight away (see findSeat), assembling the team if
+	 * it fills the last seat, or is counted as waiting. Returns the team joined, or null if the worker waits */
+	TeamRequest arrive(int roleId) {
+		login(roleId);
+		TeamRequest team = findSeat(roleId);
+		if (team == null && roleId < 64 && reseat(1L << roleId)) {
+			team = findSeat(roleId);
+		}
+		if (team != null) {
+			take(team, roleId);
+			if (team.open == 0) {
+				complete(team);
+				//the queue has moved on, waiting workers may now fit the requests that can take workers
+				match();
+			}
+		}
+		return team;
+	}
+
+	/* the request this worker should join: the head if it has a seat for the role, otherwise (with
+	 * non-head-of-line matching) the first later request with a seat, as long as no request in front of
+	 * it has already been skipped maxHeadSkips times. Returns null if the worker has to wait */
+	TeamRequest findSeat(int roleId) {
+		reorder();
+		for (TeamRequest team = requests.peek(); team != null; team = team.next) {
+			if (team.seatsFor(roleId) > 0) {
+				return team;
+			}
+			if (team.skips >= maxHeadSkips) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/* the skill set of a multi-skilled worker: one bit per role id, registering roles not seen yet. 0 if there 
+	 * are no roles, or one of them is past the first 64, which are all a skill set can hold */
+	long skills(Iterable<String> roleNames) {
+		long skills = 0;
+		for (String role : roleNames) {
+			int roleId = roleId(role);
+			if (roleId >= 64) {
+				return 0;
+			}
+			skills |= 1L << roleId;
+		}
+		return skills;
+	}
+
+	/* a multi-skilled worker logs in. It takes an open seat for any of its roles in the first request it can
+	 * reach, or else frees one by moving a multi-skilled member of a reachable team to another of that
+	 * member's roles (see reseat). Otherwise it waits in its skill group. Returns the team joined, or null */
+	TeamRequest arriveSkilled(SkilledWorker worker) {
+		loginSkilled();
+		TeamRequest team = seatSkilled(worker);
+		if (team == null) {
+			SkillGroup group = groupOf(worker.skills);
+			group.waiting.add(worker);
+			countSkilled(worker.skills, 1);
+			return null;
+		}
+		if (team.open == 0) {
+			match();
+		}
+		return team;
+	}
+
+	//a multi-skilled worker has logged in; see seatSkilled for managers that do not use arriveSkilled
+	void loginSkilled() {
+		event(EventStream.LOGIN, null, -1, 1);
+	}
+
+	/* the seat-taking half of arriveSkilled: an open seat for any of the worker's roles, freeing one by reseat
+	 * if need be, and the team completed if that was its last seat. A worker that finds no seat is not queued,
+	 * so a manager that does not match workers itself (shared-condition mode) can call this each time the
+	 * worker is woken. Returns the team joined, or null */
+	TeamRequest seatSkilled(SkilledWorker worker) {
+		TeamRequest team = findSkilledSeat(worker.skills);
+		if (team == null && reseat(worker.skills)) {
+			team = findSkilledSeat(worker.skills);
+		}
+		if (team == null) {
+			return null;
+		}
+		seat(team, worker, firstSeat(team, worker.skills));
+		if (team.open == 0) {
+			complete(team);
+		}
+		return team;
+	}
+
+	//the first request that can take workers (see findSeat) with an open seat for any of these roles
+	private TeamRequest findSkilledSeat(long skills) {
+		reorder();
+		for (TeamRequest team = requests.peek(); team != null; team = team.next) {
+			if (firstSeat(team, skills) >= 0) {
+				return team;
+			}
+			if (team.skips >= maxHeadSkips) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	//the lowest role id in skills that the team has an open seat for, or -1
+	private static int firstSeat(TeamRequest team, long skills) {
+		for (long left = skills; left != 0; left &= left - 1) {
+			int roleId = Long.numberOfTrailingZeros(left);
+			if (team.seatsFor(roleId) > 0) {
+				return roleId;
+			}
+		}
+		return -1;
+	}
+
+	private void seat(TeamRequest team, SkilledWorker worker, int roleId) {
+		team.take(roleId);
+		metrics.setOpenSeats(roleId, --openSeats[roleId]);
+		worker.team = team;
+		worker.seat = roleId;
+		team.addSkilled(worker);
+		event(EventStream.ASSIGNED, team, roleId, 1);
+	}
+
+	/* free a seat for a newcomer with these skills by moving one multi-skilled member of a reachable team
+	 * from a seat the newcomer could take to an open seat of that team the member can also fill. This is an
+	 * augmenting path of length two, and only teams that can take workers are searched, so the cost per
+	 * login is bounded by the size of those teams. Returns true if a seat was freed */
+	private boolean reseat(long skills) {
+		for (TeamRequest team = requests.peek(); team != null; team = team.next) {
+			if (team.skilled != null && moveSkilled(team, skills)) {
+				return true;
+			}
+			if (team.skips >= maxHeadSkips) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/* move a multi-skilled member of the team off a seat whose role is in freeable onto another open seat
+	 * it is certified for. The team's open seat count is unchanged, one seat of the old role is open again */
+	private boolean moveSkilled(TeamRequest team, long freeable) {
+		for (SkilledWorker member : team.skilled) {
+			if ((freeable & (1L << member.seat)) == 0) {
+				continue;
+			}
+			int to = firstSeat(team, member.skills & ~(1L << member.seat));
+			if (to < 0) {
+				continue;
+			}
+			team.seats[to]--;
+			team.seats[member.seat]++;
+			metrics.setOpenSeats(to, --openSeats[to]);
+			metrics.setOpenSeats(member.seat, ++openSeats[member.seat]);
+			event(EventStream.UNSEATED, team, member.seat, 1);
+			event(EventStream.ASSIGNED, team, to, 1);
+			member.seat = to;
+			return true;
+		}
+		return false;
+	}
+
+	/* a waiting multi-skilled worker for this role. The group with the fewest skills is preferred, so the
+	 * most flexible workers stay available for the seats that only they can fill */
+	private SkilledWorker pollSkilled(int roleId) {
+		SkillGroup best = null;
+		for (SkillGroup group : skillGroups) {
+			if ((group.skills & (1L << roleId)) == 0) {
+				continue;
+			}
+			while (!group.waiting.isEmpty() && group.waiting.peek().withdrawn) {
+				group.waiting.poll();
+			}
+			if (!group.waiting.isEmpty()
+					&& (best == null || Long.bitCount(group.skills) < Long.bitCount(best.skills))) {
+				best = group;
+			}
+		}
+		SkilledWorker worker = best.waiting.poll();
+		countSkilled(worker.skills, -1);
+		return worker;
+	}
+
+	private SkillGroup groupOf(long skills) {
+		for (SkillGroup group : skillGroups) {
+			if (group.skills == skills) {
+				return group;
+			}
+		}
+		SkillGroup group = new SkillGroup(skills);
+		skillGroups.add(group);
+		return group;
+	}
+
+	private void countSkilled(long skills, int delta) {
+		for (long left = skills; left != 0; left &= left - 1) {
+			skilledWaiting[Long.numberOfTrailingZeros(left)] += delta;
+		}
+		skilledWaitingTotal += delta;
+		metrics.setWaitingSkilled(skilledWaitingTotal);
+	}
+
+	//true if a waiting worker (single or multi-skilled) could take a seat of this role
+	private boolean hasWaiting(int roleId) {
+		return waiting[roleId] > 0 || (roleId < 64 && skilledWaiting[roleId] > 0);
+	}
+
+	/* remove an assembled team and tell the listener.
+	 * Every request still in front of it has just been overtaken, so their skip counts go up */
+	void complete(TeamRequest team) {
+		for (TeamRequest ahead = requests.peek(); ahead != team; ahead = ahead.next) {
+			ahead.skips++;
+		}
+		requests.remove(team);
+		long now = System.nanoTime();
+		deadlines.remove(team);
+		if (team.hasDeadline && !team.missed && now - team.deadline > 0) {
+			//assembled after its deadline but before a tick reported it: counted, the team is released anyway
+			team.missed = true;
+			metrics.missedDeadlines.increment();
+		}
+		metrics.teamsCompleted.increment();
+		metrics.timeToFill.record(now - team.requestedAt);
+		metrics.setPendingRequests(requests.size());
+		if (journal != null) {
+			journal.complete(team);
+		}
+		event(EventStream.ASSEMBLED, team, -1, team.size);
+		listener.completed(team);
+	}
+
+	/* fill every request that can take workers (see findSeat) from the workers already waiting, in queue
+	 * order. A team that is assembled this way is completed here, and the walk starts again because the
+	 * queue in front has changed */
+	void match() {
+		reorder();
+		TeamRequest team = requests.peek();
+		while (team != null) {
+			fill(team);
+			if (team.open == 0) {
+				complete(team);
+				reorder();
+				team = requests.peek();
+			}
+			else if (team.skips >= maxHeadSkips) {
+				//nobody may pass this request
+				return;
+			}
+			else {
+				team = team.next;
+			}
+		}
+	}
+
+	/* move the queued requests whose start deadline has passed by now into missed, marking and counting them.
+	 * They stay queued: it is up to whoever made them to withdraw them */
+	void expireDeadlines(long now, ArrayList<TeamRequest> missed) {
+		deadlines.expire(now, missed);
+		for (TeamRequest team : missed) {
+			team.missed = true;
+			metrics.missedDeadlines.increment();
+		}
+		if (!missed.isEmpty()) {
+			changedSinceSnapshot = true;
+		}
+	}
+
+	boolean hasDeadlines() {
+		return !deadlines.isEmpty();
+	}
+
+	long nanosToNextTick(long now) {
+		return deadlines.nanosToNextTick(now);
+	}
+
+	//true if the queue or the waiting workers have changed since the last snapshot was published
+	boolean changedSinceSnapshot() {
+		return changedSinceSnapshot;
+	}
+
+	//how long until a new snapshot may be published, at most SNAPSHOT_INTERVAL_NANOS; 0 or less if it may be now
+	long nanosToSnapshot(long now) {
+		return (snapshot == null) ? 0 : SNAPSHOT_INTERVAL_NANOS - (now - snapshot.getTakenAtNanos());
+	}
+
+	/* copy the queue (its first SNAPSHOT_TEAMS teams) and the waiting counts into a new snapshot and publish it,
+	 * with the lock held. O(SNAPSHOT_TEAMS + roles), paid at most once per SNAPSHOT_INTERVAL_NANOS, see 
+	 * SnapshotPublisher */
+	void publishSnapshot() {
+		changedSinceSnapshot = false;
+		long now = System.nanoTime();
+		int roleCount = roles.size();
+		String[] names = new String[roleCount];
+		for (int roleId = 0; roleId < roleCount; roleId++) {
+			names[roleId] = roles.nameOf(roleId);
+		}
+		ArrayList<ManagerSnapshot.PendingTeam> pending = 
+				new ArrayList<ManagerSnapshot.PendingTeam>(Math.min(requests.size(), SNAPSHOT_TEAMS));
+		for (TeamRequest team = requests.peek(); team != null && pending.size() < SNAPSHOT_TEAMS; team = team.next) {
+			pending.add(new ManagerSnapshot.PendingTeam(team, names, now));
+		}
+		snapshot = new ManagerSnapshot(++snapshotVersion, now, names, Arrays.copyOf(waiting, roleCount),
+				skilledWaitingTotal, pending, requests.size());
+	}
+
+	//the latest published snapshot, or null if none has been published yet
+	ManagerSnapshot publishedSnapshot() {
+		return snapshot;
+	}
+
+	/* journal every change from now on, starting with a checkpoint of the current state. Only the requests and
+	 * the single-role workers are journaled: a seat held by a multi-skilled member counts as open on replay */
+	void setJournal(Journal journal) {
+		this.journal = journal;
+		journal.checkpoint();
+	}
+
+	//stop journaling; returns the journal, for the caller to close once it has dropped the lock
+	Journal removeJournal() {
+		Journal removed = journal;
+		journal = null;
+		return removed;
+	}
+
+	//publish every change from now on to the stream, see EventStream
+	void setEvents(EventStream events) {
+		this.events = events;
+	}
+
+	/* publish an event if anyone has asked for the stream; roleId -1 and a null team stand for none. Every change
+	 * to the queue or the waiting workers comes through here, so it also marks the snapshot out of date */
+	private void event(byte kind, TeamRequest team, int roleId, int count) {
+		changedSinceSnapshot = true;
+		if (events != null) {
+			events.publish(kind, (team == null) ? null : team.name, (roleId < 0) ? null : roles.nameOf(roleId), count);
+		}
+	}
+
+	/* the journaled state as it stands, for a checkpoint: the seats each queued request was made with and the
+	 * seats single-role workers have taken, per role. O(queued requests * roles) */
+	Journal.State journalState() {
+		Journal.State state = new Journal.State();
+		int roleCount = roles.size();
+		for (int roleId = 0; roleId < roleCount; roleId++) {
+			state.roles.add(roles.nameOf(roleId));
+		}
+		state.waiting = Arrays.copyOf(waiting, roleCount);
+		for (TeamRequest team = requests.peek(); team != null; team = team.next) {
+			Journal.SavedRequest saved = new Journal.SavedRequest(team);
+			for (int roleId = 0; roleId < team.seats.length; roleId++) {
+				saved.seats[roleId] = team.requested[roleId];
+				saved.filled[roleId] = team.requested[roleId] - team.seats[roleId];
+			}
+			if (team.skilled != null) {
+				for (SkilledWorker member : team.skilled) {
+					saved.filled[member.seat]--;
+				}
+			}
+			state.requests.put(team.sequence, saved);
+		}
+		return state;
+	}
+
+	/* re-rank the queued requests if the policy ranks them by the waiting workers, which change with every
+	 * login and assignment. Other policies keep the rank given when the request was queued */
+	private void reorder() {
+		if (!policy.dependsOnWaiting()) {
+			return;
+		}
+		for (TeamRequest team = requests.peek(); team != null; team = team.next) {
+			team.rank = policy.rank(team, waiting);
+		}
+		requests.sort();
+	}
+
+	/* fill the team's open seats from the waiting workers: single-role workers first, then multi-skilled ones.
+	 * When a seat is left that nobody waiting can fill, a multi-skilled member is moved onto it if a waiting
+	 * worker can take the seat it leaves (see moveSkilled), and filling starts over */
+	private void fill(TeamRequest team) {
+		while (true) {
+			for (int roleId = 0; roleId < team.seats.length; roleId++) {
+				int toAssign = Math.min(team.seats[roleId], waiting[roleId]);
+				if (toAssign > 0) {
+					for (int i = 0; i < toAssign; i++) {
+						take(team, roleId);
+					}
+					listener.assigned(team, roleId, toAssign);
+				}
+				while (roleId < 64 && team.seats[roleId] > 0 && skilledWaiting[roleId] > 0) {
+					SkilledWorker worker = pollSkilled(roleId);
+					seat(team, worker, roleId);
+					listener.seated(team, worker);
+				}
+			}
+			if (team.open == 0 || team.skilled == null || !moveSkilled(team, waitingRoles(team))) {
+				return;
+			}
+		}
+	}
+
+	//the roles of the team that some waiting worker could take a seat of
+	private long waitingRoles(TeamRequest team) {
+		long roles = 0;
+		for (int roleId = 0; roleId < Math.min(team.seats.length, 64); roleId++) {
+			if (hasWaiting(roleId)) {
+				roles |= 1L << roleId;
+			}
+		}
+		return roles;
+	}
+
+	/* a logged in worker certified for several roles. Managers extend it with however they release the worker.
+	 * While it waits it sits in its skill group; once seated it stays in its team's list of multi-skilled
+	 * members until the team is assembled, so it can still be moved to another of its roles */
+	static class SkilledWorker {
+		//one bit per role id
+		final long skills;
+		//the team joined and the role id of the seat taken, guarded by the manager's lock
+		TeamRequest team;
+		int seat = -1;
+		//set when the worker gave up while waiting, see logoutSkilled
+		boolean withdrawn = false;
+
+		SkilledWorker(long skills) {
+			this.skills = skills;
+		}
+	}
+
+	private static final class SkillGroup {
+		final long skills;
+		final ArrayDeque<SkilledWorker> waiting = new ArrayDeque<SkilledWorker>();
+
+		SkillGroup(long skills) {
+			this.skills = skills;
+		}
+	}
+}
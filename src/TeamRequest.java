@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+
+/* a team request queued in the manager.
+ * Every request carries its own completion condition, so filling the last seat only wakes the
+ * workers that joined this team (and its driller) instead of every partially assigned worker.
+ * All fields are guarded by the lock of the manager that created the request */
+class TeamRequest {
+	
+	final String name;
+	
+	/* role id (see RoleRegistry) -> number of seats still open for that role.
+	 * Roles registered after the request was made are past the end of the array and have no seats */
+	final int[] seats;
+	
+	//seats still open over all roles, and seats the request was made with, in all and per role id
+	int open;
+	final int size;
+	final int[] requested;
+	
+	//set by the caller before the request is queued, see SchedulingPolicy.WeightedPriority
+	int priority = 0;
+	
+	/* the time (a System.nanoTime value) by which the team should be assembled, for a request made with a
+	 * start deadline, and whether it was missed */
+	boolean hasDeadline = false;
+	long deadline;
+	boolean missed = false;
+	
+	//links and tick used by TimerWheel while the deadline is pending
+	TeamRequest wheelPrev;
+	TeamRequest wheelNext;
+	long deadlineTick;
+	boolean inWheel = false;
+	
+	//position in the order requests were queued, and the rank given by the matcher's SchedulingPolicy
+	long sequence;
+	long rank;
+	
+	//completion handle: members and the driller block here until the last seat is filled
+	final Condition filled;
+	
+	//number of threads currently blocked on filled
+	int parked = 0;
+	
+	//true if the lead that made the request (e.g. the driller) is blocked on it
+	boolean hasLead = false;
+	
+	boolean complete = false;
+	
+	//true if the request was withdrawn before it was assembled; complete is set as well, to release waiters
+	boolean cancelled = false;
+	
+	//when the request was made, for the time-to-fill histogram
+	final long requestedAt = System.nanoTime();
+	
+	//multi-skilled members, which the matcher may move between seats until the team is assembled
+	ArrayList<TeamMatcher.SkilledWorker> skilled;
+	
+	//number of times a later request has been assembled before this one
+	int skips = 0;
+	
+	//links used by RequestQueue
+	TeamRequest prev;
+	TeamRequest next;
+	
+	TeamRequest(String name, int[] seats, Condition filled) {
+		this.name = name;
+		this.seats = seats;
+		this.filled = filled;
+		for (int count : seats) {
+			open += count;
+		}
+		size = open;
+		requested = seats.clone();
+	}
+	
+	int seatsFor(int roleId) {
+		return (roleId < seats.length) ? seats[roleId] : 0;
+	}
+	
+	//fill one seat of this role, the caller has checked seatsFor(roleId) > 0
+	void take(int roleId) {
+		seats[roleId]--;
+		open--;
+	}
+	
+	void addSkilled(TeamMatcher.SkilledWorker worker) {
+		if (skilled == null) {
+			skilled = new ArrayList<TeamMatcher.SkilledWorker>();
+		}
+		skilled.add(worker);
+	}
+	
+	//block the calling thread (which must hold the lock) until the team is assembled
+	void awaitFilled() {
+		parked++;
+		while (!complete) {
+			filled.awaitUninterruptibly();
+		}
+		parked--;
+	}
+	
+	/* as awaitFilled, but give up at the deadline (a System.nanoTime value). An interrupt also ends the wait,
+	 * with the thread's interrupt status kept. Returns true if the team was assembled (or cancelled) */
+	boolean awaitFilled(long deadline) {
+		parked++;
+		try {
+			while (!complete) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				filled.awaitNanos(remaining);
+			}
+			return true;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return complete;
+		}
+		finally {
+			parked--;
+		}
+	}
+	
+	//mark the team assembled and wake exactly the threads parked on it: O(team size)
+	void release() {
+		complete = true;
+		for (int i = 0; i < parked; i++) {
+			filled.signal();
+		}
+	}
+}
@@ -5,9 +5,26 @@
 //Note that you may use *any* classes in this Tests class that are available in Java 12 or SE 1.8. This includes these versions thread safe classes
 
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Tests {
 	int  t1 = 50; //Sleep timeout 
@@ -460,6 +477,1353 @@ public class Tests {
 		}
 	}
 	
-}
+	public void test_PerRoleQueues() {
+		System.out.println("\nTest_PerRoleQueues");
+		AtomicInteger roustaboutReleases = new AtomicInteger(0);
+		AtomicInteger floorhandReleases = new AtomicInteger(0); 
+		DrillLoginManager drillLoginManager =  new DrillLoginManager(true);	
+		
+		class ExampleTestWorkerThread extends Thread {
+			public void run(){
+				drillLoginManager.workerLogin("Roustabout"); 
+				roustaboutReleases.incrementAndGet();
+			};	
+		};	
+		class ExampleTestWorkerThread1 extends Thread {
+			public void run(){
+				drillLoginManager.workerLogin("Floorhand"); 
+				floorhandReleases.incrementAndGet();
+			};	
+		};
+		
+		int nRoustabouts = 3;
+		int nFloorhands = 4;
+		for (int i=0; i < nFloorhands; i++) (new ExampleTestWorkerThread1()).start();
+		System.out.println(nFloorhands + " Floorhand threads started");
+		
+		for (int i=0; i < nRoustabouts; i++) (new ExampleTestWorkerThread()).start();
+		System.out.println(nRoustabouts + " Roustabout threads started");
+		
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		Map<String, Integer> team1 = new HashMap <String, Integer>();
+		team1.put("Roustabout", 2);
+		System.out.println("team1 = " + team1.toString());
+		drillLoginManager.smallTeamRequest(team1);
+		
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		System.out.println("Number of Roustabouts released by manager = " + roustaboutReleases.get());
+		System.out.println("Number of Floorhands released by manager = " + floorhandReleases.get());
+		System.out.println("Wakeups = " + drillLoginManager.getWakeupCount() + ", wasted wakeups = " + drillLoginManager.getWastedWakeupCount());
+		
+		//only the two Roustabouts needed by the request should have been woken
+		if (roustaboutReleases.get() == 2 && floorhandReleases.get() == 0 && drillLoginManager.getWakeupCount() == 2) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_LockFreeManager() {
+		//same scenario as Test_UR4 and Test_UR5, run against the lock-free manager
+		System.out.println("\nTest_LockFreeManager");
+		AtomicInteger roustaboutReleases = new AtomicInteger(0);
+		AtomicInteger floorhandReleases = new AtomicInteger(0); 
+		AtomicInteger drillerReleases = new AtomicInteger(0);
+		LockFreeDrillLoginManager drillLoginManager =  new LockFreeDrillLoginManager();	
+		
+		class ExampleTestWorkerThread extends Thread {
+			String role;
+			AtomicInteger releases;
+			ExampleTestWorkerThread(String role, AtomicInteger releases) {
+				this.role = role;
+				this.releases = releases;
+			}
+			public void run(){
+				drillLoginManager.workerLogin(role); 
+				releases.incrementAndGet();
+			};	
+		};
+		
+		Map<String, Integer> team1 = new HashMap <String, Integer>();
+		team1.put("Roustabout", 3);
+		System.out.println("team1 = " + team1.toString());	
+		drillLoginManager.smallTeamRequest(team1);
+		
+		for (int i=0; i < 5; i++) (new ExampleTestWorkerThread("Roustabout", roustaboutReleases)).start();
+		for (int i=0; i < 4; i++) (new ExampleTestWorkerThread("Floorhand", floorhandReleases)).start();
+		System.out.println("5 Roustabout threads and 4 Floorhand threads started");
+		
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		Map<String, Integer> teamX = new HashMap <String, Integer>();
+		teamX.put("Driller", 1);
+		teamX.put("Roustabout", 2);
+		teamX.put("Floorhand", 3);
+		System.out.println("teamX = " + teamX.toString());
+		new Thread(() -> {
+			drillLoginManager.drillerRequest("TeamX", teamX);
+			drillerReleases.incrementAndGet();
+		}).start();
+		
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		System.out.println("Number of Roustabouts released by manager = " + roustaboutReleases.get());
+		System.out.println("Number of Floorhands released by manager = " + floorhandReleases.get());
+		System.out.println("Number of drillers released by manager = " + drillerReleases.get());
+		
+		if (roustaboutReleases.get() == 5 && floorhandReleases.get() == 3 && drillerReleases.get() == 1) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_NonHeadOfLine() {
+		/*
+		 * team1 needs a Toolpusher that never logs in, team2 only needs Roustabouts.
+		 * With strict FIFO the Roustabouts wait behind team1, with non-head-of-line matching
+		 * (maxHeadSkips = 1) they fill team2 straight away.
+		 */
+		System.out.println("\nTest_NonHeadOfLine");
+		int[] released = new int[2];
+		boolean[] teamsOk = new boolean[2];
+		for (int run = 0; run < 2; run++) {
+			AtomicInteger roustaboutReleases = new AtomicInteger(0);
+			DrillLoginManager drillLoginManager =  new DrillLoginManager(true, run);
+			
+			Map<String, Integer> team1 = new HashMap <String, Integer>();
+			team1.put("Toolpusher", 1);
+			team1.put("Roustabout", 1);
+			Map<String, Integer> team2 = new HashMap <String, Integer>();
+			team2.put("Roustabout", 2);
+			drillLoginManager.smallTeamRequest(team1);
+			drillLoginManager.smallTeamRequest(team2);
+			
+			for (int i=0; i < 3; i++) {
+				new Thread(() -> {
+					drillLoginManager.workerLogin("Roustabout"); 
+					roustaboutReleases.incrementAndGet();
+				}).start();
+			}
+			try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+			
+			released[run] = roustaboutReleases.get();
+			System.out.println("maxHeadSkips = " + run + ": Roustabouts released = " + released[run]
+					+ ", teams completed = " + drillLoginManager.getTeamsCompleted());
+			teamsOk[run] = drillLoginManager.getTeamsCompleted() == run;
+		}
+		
+		if (released[0] == 0 && released[1] == 2 && teamsOk[0] && teamsOk[1]) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_AsyncManager() {
+		//Test_UR5 with futures instead of blocked threads
+		System.out.println("\nTest_AsyncManager");
+		AsyncDrillLoginManager drillLoginManager = new AsyncDrillLoginManager();
+		
+		Map<String, Integer> teamX = new HashMap<String, Integer>();
+		teamX.put("Driller", 1);
+		teamX.put("Floorhand", 4);
+		Map<String, Integer> teamY = new HashMap<String, Integer>();
+		teamY.put("Driller", 1);
+		teamY.put("Roustabout", 6);
+		teamY.put("Floorhand", 3);
+		
+		CompletableFuture<String> drillerX = drillLoginManager.drillerRequestAsync("TeamX", teamX);
+		CompletableFuture<String> drillerY = drillLoginManager.drillerRequestAsync("TeamY", teamY);
+		
+		List<CompletableFuture<String>> floorhands = new ArrayList<CompletableFuture<String>>();
+		for (int i=0; i < 5; i++) floorhands.add(drillLoginManager.workerLoginAsync("Floorhand"));
+		System.out.println("5 Floorhand logins made");
+		
+		int teamXfloorhands = 0;
+		for (CompletableFuture<String> floorhand : floorhands) {
+			if (floorhand.isDone() && floorhand.join().equals("TeamX")) teamXfloorhands++;
+		}
+		System.out.println("Number of Floorhands released to TeamX = " + teamXfloorhands);
+		System.out.println("TeamX assembled = " + drillerX.isDone() + ", TeamY assembled = " + drillerY.isDone());
+		
+		if (teamXfloorhands == 4 && drillerX.isDone() && !drillerY.isDone() && !floorhands.get(4).isDone()) {
+			System.out.println("Hence: SUCCESS");
+		} else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	
+	public void test_Metrics() {
+		//queue depths and counters are read from the metrics while workers are still parked in the manager
+		System.out.println("\nTest_Metrics");
+		DrillLoginManager drillLoginManager =  new DrillLoginManager(true);
+		ManagerMetrics metrics = drillLoginManager.getMetrics();
+		
+		class ExampleTestWorkerThread extends Thread {
+			String role;
+			ExampleTestWorkerThread(String role) {this.role = role;}
+			public void run(){
+				drillLoginManager.workerLogin(role);
+			};	
+		};
+		
+		for (int i=0; i < 3; i++) (new ExampleTestWorkerThread("Roustabout")).start();
+		for (int i=0; i < 4; i++) (new ExampleTestWorkerThread("Floorhand")).start();
+		System.out.println("3 Roustabout and 4 Floorhand threads started");
+		
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		Map<String, Integer> waitingBefore = new HashMap<String, Integer>();
+		for (Map.Entry<String, Long> entry : metrics.getWaitingWorkers().entrySet()) waitingBefore.put(entry.getKey(), entry.getValue().intValue());
+		System.out.println("Waiting workers = " + waitingBefore);
+		
+		Map<String, Integer> team1 = new HashMap <String, Integer>();
+		team1.put("Roustabout", 2);
+		Map<String, Integer> team2 = new HashMap <String, Integer>();
+		team2.put("Toolpusher", 1);
+		System.out.println("team1 = " + team1.toString() + ", team2 = " + team2.toString());
+		drillLoginManager.smallTeamRequest(team1);
+		drillLoginManager.smallTeamRequest(team2);
+		
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		System.out.println(metrics);
+		boolean waitingOk = waitingBefore.get("Roustabout") == 3 && waitingBefore.get("Floorhand") == 4
+				&& metrics.getWaitingWorkers().get("Roustabout") == 1;
+		boolean countsOk = metrics.getRequests() == 2 && metrics.getPendingRequests() == 1
+				&& metrics.getTeamsCompleted() == 1 && metrics.getTimeToFill().count() == 1;
+		boolean wakeupsOk = metrics.getWakeups() == 2 && metrics.getUsefulWakeups() == 2;
+		if (waitingOk && countsOk && wakeupsOk && metrics.getLockWait().count() > 0) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_ShardedManager() {
+		//workers waiting on one rig are borrowed by a team requested on another rig, in both orders
+		System.out.println("\nTest_ShardedManager");
+		ShardedDrillLoginManager manager = new ShardedDrillLoginManager("rigA", "rigB");
+		List<CompletableFuture<String>> roustabouts = new ArrayList<CompletableFuture<String>>();
+		
+		for (int i=0; i < 3; i++) roustabouts.add(manager.workerLoginAsync("rigB", "Roustabout"));
+		System.out.println("3 Roustabouts waiting on rigB");
+		
+		Map<String, Integer> team1 = new HashMap <String, Integer>();
+		team1.put("Roustabout", 2);
+		System.out.println("team1 = " + team1.toString() + " requested on rigA");
+		CompletableFuture<String> assembled1 = manager.smallTeamRequestAsync("rigA", team1);
+		
+		Map<String, Integer> team2 = new HashMap <String, Integer>();
+		team2.put("Floorhand", 1);
+		System.out.println("team2 = " + team2.toString() + " requested on rigB, then a Floorhand logs in on rigA");
+		CompletableFuture<String> assembled2 = manager.smallTeamRequestAsync("rigB", team2);
+		CompletableFuture<String> floorhand = manager.workerLoginAsync("rigA", "Floorhand");
+		
+		int released = 0;
+		for (CompletableFuture<String> roustabout : roustabouts) {
+			if (roustabout.isDone()) {
+				released++;
+				System.out.println("Roustabout released to " + roustabout.join());
+			}
+		}
+		System.out.println("Floorhand released to " + floorhand.getNow(null));
+		System.out.println("rigB waiting workers = " + manager.getMetrics("rigB").getWaitingWorkers());
+		
+		if (released == 2 && "rigA/team1".equals(assembled1.getNow(null)) && "rigB/team1".equals(floorhand.getNow(null))
+				&& assembled2.isDone() && manager.getMetrics("rigB").getWaitingWorkers().get("Roustabout") == 1) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_LeadRoles() {
+		/* an anonymous team that needs a Driller worker is queued ahead of a driller request: the driller
+		 * request only drops its own Driller seat, so the anonymous team can still be filled.
+		 * A Toolpusher lead is handled the same way */
+		System.out.println("\nTest_LeadRoles");
+		DrillLoginManager drillLoginManager =  new DrillLoginManager();
+		ConcurrentLinkedQueue<String> released = new ConcurrentLinkedQueue<String>();
+		
+		class ExampleTestWorkerThread extends Thread {
+			String role;
+			ExampleTestWorkerThread(String role) {this.role = role;}
+			public void run(){
+				String teamName = drillLoginManager.workerLogin(role);
+				released.add(role + ":" + teamName);
+			};	
+		};
+		class ExampleTestLeadThread extends Thread {
+			String teamName;
+			String leadRole;
+			Map<String, Integer> team;
+			ExampleTestLeadThread(String teamName, String leadRole, Map<String, Integer> team) {
+				this.teamName = teamName; this.leadRole = leadRole; this.team = team;
+			}
+			public void run(){
+				drillLoginManager.leadRequest(teamName, leadRole, team);
+				released.add(leadRole + " lead:" + teamName);
+			};	
+		};
+		
+		Map<String, Integer> team1 = new HashMap <String, Integer>();
+		team1.put("Driller", 1);
+		System.out.println("team1 = " + team1.toString());
+		drillLoginManager.smallTeamRequest(team1);
+		
+		Map<String, Integer> drillTeam = new HashMap <String, Integer>();
+		drillTeam.put("Driller", 1);
+		drillTeam.put("Roustabout", 1);
+		System.out.println("drillTeam = " + drillTeam.toString() + " requested by its driller");
+		(new ExampleTestLeadThread("drillTeam", "Driller", drillTeam)).start();
+		
+		Map<String, Integer> pushTeam = new HashMap <String, Integer>();
+		pushTeam.put("Toolpusher", 1);
+		pushTeam.put("Floorhand", 1);
+		System.out.println("pushTeam = " + pushTeam.toString() + " requested by its Toolpusher");
+		(new ExampleTestLeadThread("pushTeam", "Toolpusher", pushTeam)).start();
+		
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		(new ExampleTestWorkerThread("Driller")).start();
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		(new ExampleTestWorkerThread("Floorhand")).start();
+		System.out.println("Driller, Roustabout and Floorhand threads started");
+		
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		System.out.println("Released = " + released);
+		if (released.size() == 5 && released.contains("Driller:team1") && released.contains("Roustabout:drillTeam")
+				&& released.contains("Driller lead:drillTeam") && released.contains("Floorhand:pushTeam")
+				&& released.contains("Toolpusher lead:pushTeam")) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_MultiSkilled() {
+		/* a worker certified as Roustabout and Floorhand is seated first; a Roustabout who logs in later still
+		 * completes the team, by taking the Roustabout seat or moving the multi-skilled worker off it.
+		 * Multi-skilled workers that wait are given a seat for any of their roles by later requests */
+		System.out.println("\nTest_MultiSkilled");
+		DrillLoginManager drillLoginManager =  new DrillLoginManager(true);
+		ConcurrentLinkedQueue<String> released = new ConcurrentLinkedQueue<String>();
+		
+		class ExampleTestWorkerThread extends Thread {
+			Set<String> roles;
+			ExampleTestWorkerThread(String... roles) {this.roles = new HashSet<String>(Arrays.asList(roles));}
+			public void run(){
+				String teamName = (roles.size() == 1) 
+						? drillLoginManager.workerLogin(roles.iterator().next()) : drillLoginManager.workerLogin(roles);
+				released.add(roles.size() + ":" + teamName);
+			};	
+		};
+		
+		Map<String, Integer> team1 = new HashMap <String, Integer>();
+		team1.put("Roustabout", 1);
+		team1.put("Floorhand", 1);
+		System.out.println("team1 = " + team1.toString());
+		drillLoginManager.smallTeamRequest(team1);
+		
+		(new ExampleTestWorkerThread("Roustabout", "Floorhand")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		System.out.println("Roustabout/Floorhand thread started, then a Roustabout thread");
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		boolean team1Ok = released.contains("2:team1") && released.contains("1:team1");
+		
+		(new ExampleTestWorkerThread("Floorhand", "Toolpusher")).start();
+		(new ExampleTestWorkerThread("Floorhand")).start();
+		System.out.println("Floorhand/Toolpusher and Floorhand threads started");
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		Map<String, Integer> team2 = new HashMap <String, Integer>();
+		team2.put("Toolpusher", 1);
+		Map<String, Integer> team3 = new HashMap <String, Integer>();
+		team3.put("Floorhand", 1);
+		System.out.println("team2 = " + team2.toString() + ", team3 = " + team3.toString());
+		drillLoginManager.smallTeamRequest(team2);
+		drillLoginManager.smallTeamRequest(team3);
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		System.out.println("Released = " + released);
+		boolean perRoleOk = team1Ok && released.size() == 4 && released.contains("2:team2") && released.contains("1:team3");
+		
+		/* shared-condition mode: the multi-skilled worker waits with the others and takes a seat itself. Each request
+		 * wakes the longest waiting worker, so the multi-skilled one logs in first and is woken for the first */
+		DrillLoginManager sharedManager = new DrillLoginManager();
+		ConcurrentLinkedQueue<String> sharedReleased = new ConcurrentLinkedQueue<String>();
+		Thread skilled = new Thread(() -> sharedReleased.add(
+				"2:" + sharedManager.workerLogin(new HashSet<String>(Arrays.asList("Floorhand", "Toolpusher")))));
+		Thread floorhand = new Thread(() -> sharedReleased.add("1:" + sharedManager.workerLogin("Floorhand")));
+		skilled.start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		floorhand.start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		sharedManager.smallTeamRequest(team2);
+		sharedManager.smallTeamRequest(team3);
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		System.out.println("Shared mode released = " + sharedReleased);
+		
+		//a login with no roles, or more than a skill set holds, is rejected rather than thrown out
+		Set<String> manyRoles = new HashSet<String>();
+		for (int i = 0; i < 65; i++) manyRoles.add("Role" + i);
+		String noRoles = sharedManager.workerLogin(new HashSet<String>());
+		String tooMany = drillLoginManager.workerLogin(manyRoles);
+		System.out.println("no roles returned " + noRoles + ", 65 roles returned " + tooMany);
+		boolean rejectedOk = noRoles == null && tooMany == null && drillLoginManager.getMetrics().getRejectedLogins() == 1;
+		
+		if (perRoleOk && rejectedOk && sharedReleased.size() == 2 && sharedReleased.contains("2:team1") && sharedReleased.contains("1:team2")) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_Cancellation() {
+		/* a cancelled request gives its seated workers back, timed logins and lead requests give up,
+		 * and cancelling the futures of the async manager withdraws logins and requests */
+		System.out.println("\nTest_Cancellation");
+		DrillLoginManager drillLoginManager =  new DrillLoginManager(true);
+		DrillLoginManager sharedManager =  new DrillLoginManager();
+		ConcurrentLinkedQueue<String> released = new ConcurrentLinkedQueue<String>();
+		
+		class ExampleTestWorkerThread extends Thread {
+			DrillLoginManager manager;
+			String role;
+			ExampleTestWorkerThread(DrillLoginManager manager, String role) {this.manager = manager; this.role = role;}
+			public void run(){
+				released.add(role + ":" + manager.workerLogin(role));
+			};	
+		};
+		
+		Map<String, Integer> team1 = new HashMap <String, Integer>();
+		team1.put("Roustabout", 2);
+		team1.put("Floorhand", 1);
+		String name1 = drillLoginManager.requestTeam(team1);
+		System.out.println(name1 + " = " + team1.toString());
+		for (int i=0; i < 2; i++) (new ExampleTestWorkerThread(drillLoginManager, "Roustabout")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		boolean cancelled = drillLoginManager.cancelRequest(name1);
+		System.out.println(name1 + " cancelled with 2 Roustabouts seated: " + cancelled);
+		Map<String, Integer> team2 = new HashMap <String, Integer>();
+		team2.put("Roustabout", 2);
+		System.out.println("team2 = " + team2.toString());
+		drillLoginManager.smallTeamRequest(team2);
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		boolean reusedOk = cancelled && released.size() == 2 && !released.contains("Roustabout:team1") 
+				&& !drillLoginManager.cancelRequest("team2");
+		
+		String timedLogin = drillLoginManager.workerLogin("Floorhand", t1, TimeUnit.MILLISECONDS);
+		Map<String, Integer> shift = new HashMap <String, Integer>();
+		shift.put("Toolpusher", 1);
+		shift.put("Toolpusher's mate", 1);
+		boolean leadAssembled = drillLoginManager.leadRequest("shift", "Toolpusher", shift, t1, TimeUnit.MILLISECONDS);
+		System.out.println("timed Floorhand login returned " + timedLogin + ", timed Toolpusher lead request assembled: " + leadAssembled);
+		ManagerMetrics metrics = drillLoginManager.getMetrics();
+		boolean timedOk = timedLogin == null && !leadAssembled && metrics.getAbandonedLogins() == 1 
+				&& metrics.getCancelledRequests() == 2 && metrics.getWaitingWorkers().get("Floorhand") == 0
+				&& metrics.getPendingRequests() == 0;
+		
+		//shared mode: a timed worker holding a seat gives it back
+		sharedManager.smallTeamRequest(team2);
+		String seatedLogin = sharedManager.workerLogin("Roustabout", t1, TimeUnit.MILLISECONDS);
+		for (int i=0; i < 2; i++) (new ExampleTestWorkerThread(sharedManager, "Roustabout")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		System.out.println("timed Roustabout login holding a seat returned " + seatedLogin + ", released = " + released);
+		boolean sharedOk = seatedLogin == null && released.size() == 4;
+		
+		AsyncDrillLoginManager asyncManager = new AsyncDrillLoginManager();
+		CompletableFuture<String> waitingLogin = asyncManager.workerLoginAsync("Floorhand");
+		CompletableFuture<String> seatedA = asyncManager.workerLoginAsync("Roustabout");
+		CompletableFuture<String> request = asyncManager.smallTeamRequestAsync(team1);
+		waitingLogin.cancel(false);
+		request.cancel(false);
+		asyncManager.smallTeamRequestAsync(team2);
+		CompletableFuture<String> seatedB = asyncManager.workerLoginAsync("Roustabout");
+		System.out.println("async: " + asyncManager.getMetrics());
+		boolean asyncOk = "team2".equals(seatedA.getNow(null)) && "team2".equals(seatedB.getNow(null)) 
+				&& asyncManager.getMetrics().getWaitingWorkers().get("Floorhand") == 0 && asyncManager.getMetrics().getPendingRequests() == 0;
+		
+		if (reusedOk && timedOk && sharedOk && asyncOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL " + reusedOk + timedOk + sharedOk + asyncOk);
+		}
+	}
+	
+	public void test_SchedulingPolicies() {
+		/* the policy decides which queued request is served first, but a request that already holds
+		 * workers is never overtaken */
+		System.out.println("\nTest_SchedulingPolicies");
+		Map<String, Integer> big = new HashMap <String, Integer>();
+		big.put("Roustabout", 3);
+		Map<String, Integer> small = new HashMap <String, Integer>();
+		small.put("Roustabout", 1);
+		
+		AsyncDrillLoginManager shortestFirst = new AsyncDrillLoginManager(0, new SchedulingPolicy.ShortestFirst());
+		CompletableFuture<String> bigRequest = shortestFirst.smallTeamRequestAsync(big);
+		CompletableFuture<String> smallRequest = shortestFirst.smallTeamRequestAsync(small);
+		shortestFirst.workerLoginAsync("Roustabout");
+		boolean shortestOk = smallRequest.isDone() && !bigRequest.isDone();
+		shortestFirst.workerLoginAsync("Roustabout");
+		CompletableFuture<String> lateSmall = shortestFirst.smallTeamRequestAsync(small);
+		shortestFirst.workerLoginAsync("Roustabout");
+		shortestFirst.workerLoginAsync("Roustabout");
+		System.out.println("shortest-first: small first = " + shortestOk + ", big assembled = " + bigRequest.isDone()
+				+ ", small request made after big was given a worker assembled = " + lateSmall.isDone());
+		shortestOk = shortestOk && bigRequest.isDone() && !lateSmall.isDone();
+		
+		AsyncDrillLoginManager bestFit = new AsyncDrillLoginManager(0, new SchedulingPolicy.BestFit());
+		CompletableFuture<String> toolpusher = bestFit.workerLoginAsync("Toolpusher");
+		Map<String, Integer> roustabouts = new HashMap <String, Integer>();
+		roustabouts.put("Roustabout", 2);
+		Map<String, Integer> toolpushers = new HashMap <String, Integer>();
+		toolpushers.put("Toolpusher", 1);
+		CompletableFuture<String> unfit = bestFit.smallTeamRequestAsync(roustabouts);
+		CompletableFuture<String> fit = bestFit.smallTeamRequestAsync(toolpushers);
+		System.out.println("best-fit: request the waiting Toolpusher fits assembled = " + fit.isDone());
+		boolean bestFitOk = fit.isDone() && fit.join().equals(toolpusher.join()) && !unfit.isDone();
+		
+		AsyncDrillLoginManager weighted = new AsyncDrillLoginManager(0, new SchedulingPolicy.WeightedPriority(1));
+		CompletableFuture<String> first = weighted.smallTeamRequestAsync(small, 0);
+		CompletableFuture<String> second = weighted.smallTeamRequestAsync(small, 0);
+		CompletableFuture<String> urgent = weighted.smallTeamRequestAsync(small, 2);
+		weighted.workerLoginAsync("Roustabout");
+		weighted.workerLoginAsync("Roustabout");
+		System.out.println("weighted-priority: first assembled = " + first.isDone() + ", second assembled = " + second.isDone() 
+				+ ", urgent assembled = " + urgent.isDone());
+		boolean weightedOk = first.isDone() && !second.isDone() && urgent.isDone();
+		
+		System.out.println("shortest-first correct = " + shortestOk + ", best-fit correct = " + bestFitOk 
+				+ ", weighted-priority correct = " + weightedOk);
+		if (shortestOk && bestFitOk && weightedOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_Deadlines() {
+		/* earliest deadline first serves urgent requests ahead of filler work, and a request whose start
+		 * deadline passes is reported by the manager's deadline thread but stays queued */
+		System.out.println("\nTest_Deadlines");
+		DrillLoginManager drillLoginManager =  new DrillLoginManager(true, 0, new SchedulingPolicy.EarliestDeadlineFirst());
+		ConcurrentLinkedQueue<String> missed = new ConcurrentLinkedQueue<String>();
+		drillLoginManager.onDeadlineMissed(missed::add);
+		ConcurrentLinkedQueue<String> released = new ConcurrentLinkedQueue<String>();
+		
+		class ExampleTestWorkerThread extends Thread {
+			String role;
+			ExampleTestWorkerThread(String role) {this.role = role;}
+			public void run(){
+				released.add(drillLoginManager.workerLogin(role));
+			};	
+		};
+		
+		Map<String, Integer> team = new HashMap <String, Integer>();
+		team.put("Roustabout", 1);
+		String filler = drillLoginManager.requestTeam(team);
+		String later = drillLoginManager.requestTeam(team, 10, TimeUnit.SECONDS, 0);
+		String urgent = drillLoginManager.requestTeam(team, 5, TimeUnit.SECONDS, 0);
+		System.out.println(filler + " (filler), " + later + " (10s), " + urgent + " (5s) = " + team.toString());
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		System.out.println("2 Roustabouts released to " + released);
+		boolean edfOk = released.size() == 2 && released.contains(urgent) && released.contains(later);
+		
+		Map<String, Integer> floorhands = new HashMap <String, Integer>();
+		floorhands.put("Floorhand", 1);
+		String late = drillLoginManager.requestTeam(floorhands, t1 / 5, TimeUnit.MILLISECONDS, 0);
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		System.out.println(late + " missed its deadline, reported: " + missed);
+		(new ExampleTestWorkerThread("Floorhand")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		ManagerMetrics metrics = drillLoginManager.getMetrics();
+		boolean missedOk = missed.size() == 1 && missed.contains(late) && released.contains(late) 
+				&& metrics.getMissedDeadlines() == 1;
+		
+		AsyncDrillLoginManager asyncManager = new AsyncDrillLoginManager(0, new SchedulingPolicy.EarliestDeadlineFirst());
+		CompletableFuture<String> relaxed = asyncManager.smallTeamRequestAsync(team, 1, TimeUnit.MINUTES, 0);
+		CompletableFuture<String> pressing = asyncManager.smallTeamRequestAsync(team, 1, TimeUnit.SECONDS, 0);
+		CompletableFuture<String> login = asyncManager.workerLoginAsync("Roustabout");
+		System.out.println("async: Roustabout released to " + login.getNow(null));
+		boolean asyncOk = pressing.isDone() && !relaxed.isDone() && login.join().equals(pressing.join());
+		
+		System.out.println("earliest-deadline-first correct = " + edfOk + ", missed deadline correct = " + missedOk 
+				+ ", async correct = " + asyncOk);
+		if (edfOk && missedOk && asyncOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_AdmissionControl() {
+		/* capped queues: rejected requests and logins fail straight away, shedding withdraws the oldest,
+		 * and blocking callers get in once there is room */
+		System.out.println("\nTest_AdmissionControl");
+		Map<String, Integer> team = new HashMap <String, Integer>();
+		team.put("Roustabout", 1);
+		
+		AsyncDrillLoginManager rejecting = new AsyncDrillLoginManager(0, new SchedulingPolicy.Fifo(), 
+				new AdmissionControl(2, 2, AdmissionControl.Overflow.REJECT));
+		List<CompletableFuture<String>> requests = new ArrayList<CompletableFuture<String>>();
+		List<CompletableFuture<String>> logins = new ArrayList<CompletableFuture<String>>();
+		for (int i=0; i < 3; i++) requests.add(rejecting.smallTeamRequestAsync(team));
+		for (int i=0; i < 3; i++) logins.add(rejecting.workerLoginAsync("Floorhand"));
+		ManagerMetrics metrics = rejecting.getMetrics();
+		System.out.println("reject: " + metrics);
+		boolean rejectOk = requests.get(2).isCompletedExceptionally() && !requests.get(1).isDone() 
+				&& logins.get(2).isCompletedExceptionally() && !logins.get(1).isDone()
+				&& metrics.getRejectedRequests() == 1 && metrics.getRejectedLogins() == 1 && metrics.getPendingRequests() == 2;
+		
+		//the blocking methods return what DrillLoginManager does for a rejected call rather than throwing
+		String blockingLogin = rejecting.workerLogin("Floorhand");
+		String timedLogin = rejecting.workerLogin("Floorhand", t1, TimeUnit.MILLISECONDS);
+		boolean timedLead = rejecting.leadRequest("pushTeam", "Toolpusher", team, t1, TimeUnit.MILLISECONDS);
+		rejecting.drillerRequest("drillTeam", team);
+		System.out.println("reject: blocking login returned " + blockingLogin + ", timed login " + timedLogin 
+				+ ", timed lead request " + timedLead);
+		rejectOk = rejectOk && blockingLogin == null && timedLogin == null && !timedLead 
+				&& metrics.getRejectedRequests() == 3 && metrics.getRejectedLogins() == 3;
+		
+		//and so do ShardedDrillLoginManager's, whose shards reject the same way
+		ShardedDrillLoginManager shardedRejecting = new ShardedDrillLoginManager(0, new SchedulingPolicy.Fifo(), 
+				new AdmissionControl(1, 1, AdmissionControl.Overflow.REJECT), "north");
+		shardedRejecting.smallTeamRequest("north", team);
+		shardedRejecting.workerLoginAsync("north", "Floorhand");
+		String shardedLogin = shardedRejecting.workerLogin("north", "Floorhand");
+		shardedRejecting.drillerRequest("north", "drillTeam", team);
+		ManagerMetrics shardMetrics = shardedRejecting.getMetrics("north");
+		System.out.println("reject: sharded blocking login returned " + shardedLogin + ", sharded driller request rejected " 
+				+ shardMetrics.getRejectedRequests() + " time(s)");
+		rejectOk = rejectOk && shardedLogin == null && shardMetrics.getRejectedRequests() == 1 
+				&& shardMetrics.getRejectedLogins() == 1;
+		
+		AsyncDrillLoginManager shedding = new AsyncDrillLoginManager(0, new SchedulingPolicy.Fifo(), 
+				new AdmissionControl(1, 1, AdmissionControl.Overflow.SHED_OLDEST));
+		CompletableFuture<String> oldRequest = shedding.smallTeamRequestAsync(team);
+		CompletableFuture<String> newRequest = shedding.smallTeamRequestAsync(team);
+		CompletableFuture<String> oldLogin = shedding.workerLoginAsync("Floorhand");
+		CompletableFuture<String> newLogin = shedding.workerLoginAsync("Floorhand");
+		CompletableFuture<String> roustabout = shedding.workerLoginAsync("Roustabout");
+		boolean shedOk = oldRequest.isCompletedExceptionally() && oldLogin.isCompletedExceptionally() && !newLogin.isDone()
+				&& newRequest.join().equals(roustabout.join()) && shedding.getMetrics().getShedRequests() == 1 
+				&& shedding.getMetrics().getShedLogins() == 1;
+		System.out.println("shed: oldest request failed = " + oldRequest.isCompletedExceptionally() 
+				+ ", oldest login failed = " + oldLogin.isCompletedExceptionally() + ", newest request assembled = " + newRequest.isDone());
+		
+		//a full role in DrillLoginManager sheds its longest parked worker, not the newcomer
+		DrillLoginManager shedWorkers =  new DrillLoginManager(true, 0, new SchedulingPolicy.Fifo(), 
+				new AdmissionControl(10, 1, AdmissionControl.Overflow.SHED_OLDEST));
+		ConcurrentLinkedQueue<String> shedReleased = new ConcurrentLinkedQueue<String>();
+		(new Thread(() -> shedReleased.add("oldest:" + shedWorkers.workerLogin("Floorhand")))).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		(new Thread(() -> shedReleased.add("newest:" + shedWorkers.workerLogin("Floorhand")))).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		boolean oldestShed = shedReleased.contains("oldest:null");
+		Map<String, Integer> floorhand = new HashMap <String, Integer>();
+		floorhand.put("Floorhand", 1);
+		String shedTeam = shedWorkers.requestTeam(floorhand);
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		System.out.println("shed: DrillLoginManager released " + shedReleased + " for " + shedTeam);
+		shedOk = shedOk && oldestShed && shedReleased.contains("newest:" + shedTeam) 
+				&& shedWorkers.getMetrics().getShedLogins() == 1;
+		
+		DrillLoginManager blocking =  new DrillLoginManager(true, 0, new SchedulingPolicy.Fifo(), 
+				new AdmissionControl(1, 1, AdmissionControl.Overflow.BLOCK, 10 * t1, TimeUnit.MILLISECONDS));
+		ConcurrentLinkedQueue<String> admitted = new ConcurrentLinkedQueue<String>();
+		
+		class ExampleTestRequestThread extends Thread {
+			public void run(){
+				admitted.add(String.valueOf(blocking.requestTeam(team)));
+			};	
+		};
+		
+		String first = blocking.requestTeam(team);
+		(new ExampleTestRequestThread()).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		boolean blocked = admitted.isEmpty();
+		String released = blocking.workerLogin("Roustabout");
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		System.out.println("block: second request blocked = " + blocked + ", admitted once " + released + " was assembled: " + admitted);
+		boolean blockOk = blocked && first.equals(released) && admitted.contains("team2");
+		
+		(new Thread(() -> blocking.workerLogin("Floorhand", 4 * t1, TimeUnit.MILLISECONDS))).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		String timedOut = blocking.workerLogin("Floorhand", t1, TimeUnit.MILLISECONDS);
+		System.out.println("block: timed Floorhand login behind a full queue returned " + timedOut);
+		blockOk = blockOk && timedOut == null && blocking.getMetrics().getRejectedLogins() == 1;
+		
+		System.out.println("reject correct = " + rejectOk + ", shed correct = " + shedOk + ", block correct = " + blockOk);
+		if (rejectOk && shedOk && blockOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_Snapshots() {
+		/* a dashboard reads the pending teams and waiting workers from snapshots. Reads never take the manager's
+		 * lock once the first has; the threads making changes publish them, at most once per interval */
+		System.out.println("\nTest_Snapshots");
+		DrillLoginManager drillLoginManager =  new DrillLoginManager(true);
+		ManagerSnapshot empty = drillLoginManager.snapshot();
+		
+		class ExampleTestWorkerThread extends Thread {
+			String role;
+			ExampleTestWorkerThread(String role) {this.role = role;}
+			public void run(){
+				drillLoginManager.workerLogin(role);
+			};	
+		};
+		
+		Map<String, Integer> team = new HashMap <String, Integer>();
+		team.put("Roustabout", 2);
+		team.put("Floorhand", 1);
+		String name = drillLoginManager.requestTeam(team);
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		(new ExampleTestWorkerThread("Toolpusher")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		ManagerSnapshot snapshot = drillLoginManager.snapshot();
+		long lockAcquisitions = drillLoginManager.getMetrics().getLockWait().count();
+		for (int i=0; i < 100000; i++) snapshot = drillLoginManager.snapshot();
+		boolean lockFree = drillLoginManager.getMetrics().getLockWait().count() == lockAcquisitions;
+		System.out.println("snapshot: " + snapshot + ", read without the lock: " + lockFree);
+		
+		ManagerSnapshot.PendingTeam pending = snapshot.getPendingTeams().get(0);
+		Map<String, Integer> open = new HashMap <String, Integer>();
+		open.put("Roustabout", 1);
+		open.put("Floorhand", 1);
+		boolean viewOk = empty.getPendingTeams().isEmpty() && snapshot.getVersion() > empty.getVersion() 
+				&& snapshot.getPendingTeams().size() == 1 && pending.getName().equals(name) 
+				&& pending.getOpenSeats().equals(open) && pending.getSeatsFilled() == 1
+				&& snapshot.getWaitingWorkers().get("Toolpusher") == 1 && snapshot.getWaitingWorkers().get("Roustabout") == 0;
+		
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		(new ExampleTestWorkerThread("Floorhand")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		ManagerSnapshot assembled = drillLoginManager.snapshot();
+		System.out.println("after the team was assembled: " + assembled);
+		boolean updatedOk = assembled.getPendingTeams().isEmpty() && assembled.getVersion() > snapshot.getVersion();
+		
+		/* over a thousand changes in a burst: a few snapshots at most, one per interval and one for the end of the 
+		 * burst, each of the front of the queue */
+		long started = System.nanoTime();
+		for (int i=0; i <= TeamMatcher.SNAPSHOT_TEAMS; i++) drillLoginManager.smallTeamRequest(team);
+		long intervals = (System.nanoTime() - started) / TeamMatcher.SNAPSHOT_INTERVAL_NANOS;
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		ManagerSnapshot backlog = drillLoginManager.snapshot();
+		long published = backlog.getVersion() - assembled.getVersion();
+		System.out.println("after " + backlog.getPendingTeamCount() + " requests in " + intervals + " interval(s): " 
+				+ published + " snapshot(s) published, " + backlog.getPendingTeams().size() + " pending teams copied");
+		boolean lazyOk = published >= 1 && published <= intervals + 2 
+				&& backlog.getPendingTeams().size() == TeamMatcher.SNAPSHOT_TEAMS 
+				&& backlog.getPendingTeamCount() == TeamMatcher.SNAPSHOT_TEAMS + 1;
+		
+		if (lockFree && viewOk && updatedOk && lazyOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL " + lockFree + viewOk + updatedOk + lazyOk);
+		}
+	}
+
+	public void test_Journal() {
+		/* a manager restarted on the journal of one that died carries on with its pending request, the seat
+		 * already taken in it and its waiting worker; workers logging in again take over their places.
+		 * The crash is simulated by copying the journal while the first manager is still running */
+		System.out.println("\nTest_Journal");
+		File crashed;
+		File restarted;
+		File rolling;
+		File led;
+		File ledRestarted;
+		try {
+			crashed = Files.createTempDirectory("journal").toFile();
+			restarted = Files.createTempDirectory("journal").toFile();
+			rolling = Files.createTempDirectory("journal").toFile();
+			led = Files.createTempDirectory("journal").toFile();
+			ledRestarted = Files.createTempDirectory("journal").toFile();
+		}
+		catch (IOException e) {
+			System.out.println("Hence: FAIL " + e);
+			return;
+		}
+		DrillLoginManager before = new DrillLoginManager(crashed, 0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED);
+		
+		class TimedWorkerThread extends Thread {
+			String role;
+			TimedWorkerThread(String role) {this.role = role;}
+			public void run(){
+				before.workerLogin(role, 10 * t1, TimeUnit.MILLISECONDS);
+			};	
+		};
+		
+		Map<String, Integer> team = new HashMap <String, Integer>();
+		team.put("Roustabout", 2);
+		team.put("Floorhand", 1);
+		String name = before.requestTeam(team);
+		(new TimedWorkerThread("Roustabout")).start();
+		(new TimedWorkerThread("Toolpusher")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		before.syncJournal();
+		for (File file : crashed.listFiles()) {
+			try {
+				Files.copy(file.toPath(), new File(restarted, file.getName()).toPath());
+			}
+			catch (IOException e) {
+				System.out.println("Hence: FAIL " + e);
+				return;
+			}
+		}
+		
+		DrillLoginManager after = new DrillLoginManager(restarted, 0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED);
+		ManagerSnapshot recovered = after.snapshot();
+		System.out.println("recovered: " + recovered);
+		boolean recoveredOk = recovered.getPendingTeams().size() == 1 
+				&& recovered.getPendingTeams().get(0).getName().equals(name)
+				&& recovered.getPendingTeams().get(0).getSeatsFilled() == 1
+				&& recovered.getWaitingWorkers().get("Toolpusher") == 1 && recovered.getWaitingWorkers().get("Roustabout") == 0;
+		
+		ConcurrentLinkedQueue<String> released = new ConcurrentLinkedQueue<String>();
+		class ExampleTestWorkerThread extends Thread {
+			String role;
+			ExampleTestWorkerThread(String role) {this.role = role;}
+			public void run(){
+				released.add(role + "=" + after.workerLogin(role));
+			};	
+		};
+		//the recovered Toolpusher is handed the new request, and the next Toolpusher to log in picks it up
+		Map<String, Integer> single = new HashMap <String, Integer>();
+		single.put("Toolpusher", 1);
+		String next = after.requestTeam(single);
+		(new ExampleTestWorkerThread("Toolpusher")).start();
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		(new ExampleTestWorkerThread("Floorhand")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		System.out.println("released after the restart: " + released + ", queue: " + after.snapshot());
+		//the first Roustabout takes over the recovered one's seat, the second fills the seat still open
+		boolean resumedOk = next.equals("team2") && released.contains("Toolpusher=" + next) 
+				&& released.contains("Floorhand=" + name) && released.contains("Roustabout=" + name)
+				&& released.size() == 4 && after.snapshot().getPendingTeams().isEmpty();
+		
+		//team names carry on after the last one given out, though no anonymous request is queued any more
+		after.close();
+		DrillLoginManager again = new DrillLoginManager(restarted, 0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED);
+		String third = again.requestTeam(single);
+		again.close();
+		System.out.println("first team named after a second restart: " + third);
+		resumedOk = resumedOk && third.equals("team3");
+		
+		//a recovered lead request assembled before its lead is back releases the lead, rather than asking again
+		DrillLoginManager leading = new DrillLoginManager(led, 0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED);
+		Map<String, Integer> drillTeam = new HashMap <String, Integer>();
+		drillTeam.put("Driller", 1);
+		drillTeam.put("Roustabout", 1);
+		(new Thread(() -> leading.leadRequest("drillTeam", "Driller", drillTeam, 10 * t1, TimeUnit.MILLISECONDS))).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		leading.syncJournal();
+		for (File file : led.listFiles()) {
+			try {
+				Files.copy(file.toPath(), new File(ledRestarted, file.getName()).toPath());
+			}
+			catch (IOException e) {
+				System.out.println("Hence: FAIL " + e);
+				return;
+			}
+		}
+		leading.close();
+		DrillLoginManager leadBack = new DrillLoginManager(ledRestarted, 0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED);
+		String roustabout = leadBack.workerLogin("Roustabout");
+		boolean leadReleased = leadBack.leadRequest("drillTeam", "Driller", drillTeam, t1, TimeUnit.MILLISECONDS);
+		System.out.println("recovered lead request: Roustabout released to " + roustabout + ", lead back released = " 
+				+ leadReleased + ", queue: " + leadBack.snapshot());
+		resumedOk = resumedOk && "drillTeam".equals(roustabout) && leadReleased 
+				&& leadBack.snapshot().getPendingTeams().isEmpty();
+		leadBack.close();
+		
+		/* snapshots keep replay short: however many records, only the snapshot and the last segment stay. 
+		 * Segments started within one commit window share one checkpoint, so beyond the one taken at setup 
+		 * there may be as few as one */
+		DrillLoginManager busy = new DrillLoginManager(true, 0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED, rolling, 4096);
+		for (int i = 0; i < 1000; i++) {
+			busy.cancelRequest(busy.requestTeam(team));
+		}
+		String kept = busy.requestTeam(team);
+		//closing writes the checkpoint the commit thread may still have pending
+		busy.close();
+		int files = rolling.listFiles().length;
+		DrillLoginManager reread = new DrillLoginManager(rolling, 0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED);
+		System.out.println("journal: " + busy.getMetrics().getJournalRecords() + " records, " 
+				+ busy.getMetrics().getJournalCheckpoints() + " checkpoints, " + files + " files");
+		boolean boundedOk = busy.getMetrics().getJournalCheckpoints() > 1 && files <= 3
+				&& reread.snapshot().getPendingTeams().size() == 1 
+				&& reread.snapshot().getPendingTeams().get(0).getName().equals(kept);
+		
+		//closed managers leave no commit thread behind
+		before.close();
+		reread.close();
+		int journalThreads = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("DrillLoginManager journal")) journalThreads++;
+		}
+		System.out.println("journal threads left after closing: " + journalThreads);
+		boolean closedOk = journalThreads == 0;
+		
+		if (recoveredOk && resumedOk && boundedOk && closedOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL " + recoveredOk + resumedOk + boundedOk + closedOk);
+		}
+	}
 
+	public void test_TraceReplay() {
+		/* a scenario recorded through a TraceRecorder is written out, read back and replayed twice as fast
+		 * against a fresh manager: the same calls return, and every worker gets the same team mates */
+		System.out.println("\nTest_TraceReplay");
+		TraceRecorder recorder = new TraceRecorder(new DrillLoginManager(true));
+		
+		class ExampleTestWorkerThread extends Thread {
+			String role;
+			ExampleTestWorkerThread(String role) {this.role = role;}
+			public void run(){
+				recorder.workerLogin(role);
+			};	
+		};
+		class ExampleDrillerThread extends Thread {
+			public void run(){
+				Map<String, Integer> drillTeam = new HashMap <String, Integer>();
+				drillTeam.put("Driller", 1);
+				drillTeam.put("Floorhand", 1);
+				recorder.drillerRequest("drillTeam", drillTeam);
+			};	
+		};
+		
+		Map<String, Integer> team = new HashMap <String, Integer>();
+		team.put("Roustabout", 2);
+		recorder.smallTeamRequest(team);
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		(new ExampleTestWorkerThread("Roustabout")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		(new ExampleDrillerThread()).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		(new ExampleTestWorkerThread("Floorhand")).start();
+		//never released, so it is recorded as unfinished
+		(new ExampleTestWorkerThread("Toolpusher")).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		
+		TraceRecorder.Trace trace;
+		TraceReplay.Result replayed;
+		try {
+			File file = File.createTempFile("scenario", ".trace");
+			file.deleteOnExit();
+			recorder.writeTo(file);
+			System.out.println("trace: " + recorder.size() + " calls, " + file.length() + " bytes");
+			trace = TraceRecorder.read(file);
+			replayed = TraceReplay.replay(trace, new DrillLoginManager(true), 2);
+		}
+		catch (IOException | InterruptedException e) {
+			System.out.println("Hence: FAIL " + e);
+			return;
+		}
+		TraceReplay.Result recorded = TraceReplay.recorded(trace);
+		recorded.print("recorded", recorded);
+		replayed.print("replayed", recorded);
+		boolean traceOk = trace.calls.length == 6 && trace.threads() == 6 && recorded.returned() == 5;
+		boolean replayOk = replayed.returned() == 5 && replayed.teams() == 2 && replayed.moved(recorded) == 0;
+		
+		//a recorder with a limit records the first calls and counts the rest, which still reach the manager
+		DrillLoginManager limitedManager = new DrillLoginManager(true);
+		TraceRecorder limited = new TraceRecorder(limitedManager, 2);
+		for (int i = 0; i < 5; i++) limited.smallTeamRequest(team);
+		System.out.println("limited to 2 calls: " + limited.size() + " recorded, " + limited.getDropped() + " dropped, "
+				+ limitedManager.getMetrics().getPendingRequests() + " requests queued");
+		boolean limitOk = limited.size() == 2 && limited.getDropped() == 3 && limitedManager.getMetrics().getPendingRequests() == 5;
+		
+		if (traceOk && replayOk && limitOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL " + traceOk + replayOk + limitOk);
+		}
+	}
 
+	public void test_BatchSubmission() {
+		/* a shift-start rush submitted in batches: every batch takes the lock once, where the same rush made
+		 * call by call takes it once per request and login */
+		System.out.println("\nTest_BatchSubmission");
+		List<Map<String, Integer>> plan = new ArrayList<Map<String, Integer>>();
+		for (int i = 0; i < 200; i++) {
+			Map<String, Integer> team = new HashMap <String, Integer>();
+			team.put("Roustabout", 2);
+			team.put("Floorhand", 1);
+			plan.add(team);
+		}
+		
+		AsyncDrillLoginManager batched = new AsyncDrillLoginManager();
+		long before = batched.getMetrics().getLockWait().count();
+		List<CompletableFuture<String>> teams = batched.smallTeamRequestsAsync(plan);
+		List<CompletableFuture<String>> logins = new ArrayList<CompletableFuture<String>>();
+		logins.addAll(batched.workerLoginsAsync("Roustabout", 400));
+		logins.addAll(batched.workerLoginsAsync("Floorhand", 201));
+		long batchedLocks = batched.getMetrics().getLockWait().count() - before;
+		
+		AsyncDrillLoginManager oneByOne = new AsyncDrillLoginManager();
+		before = oneByOne.getMetrics().getLockWait().count();
+		for (Map<String, Integer> team : plan) oneByOne.smallTeamRequestAsync(team);
+		for (int i = 0; i < 400; i++) oneByOne.workerLoginAsync("Roustabout");
+		for (int i = 0; i < 201; i++) oneByOne.workerLoginAsync("Floorhand");
+		long singleLocks = oneByOne.getMetrics().getLockWait().count() - before;
+		
+		Set<String> names = new HashSet<String>();
+		int released = 0;
+		for (CompletableFuture<String> team : teams) if (team.isDone()) names.add(team.join());
+		for (CompletableFuture<String> login : logins) if (login.isDone()) released++;
+		System.out.println("async: " + names.size() + " teams and " + released + " logins released, lock taken " 
+				+ batchedLocks + " times in batches against " + singleLocks + " times call by call");
+		boolean asyncOk = names.size() == 200 && released == 600 && !logins.get(600).isDone() 
+				&& batchedLocks == 3 && singleLocks == 801;
+		
+		DrillLoginManager drillLoginManager = new DrillLoginManager(true);
+		ConcurrentLinkedQueue<String> workers = new ConcurrentLinkedQueue<String>();
+		class ExampleTestWorkerThread extends Thread {
+			public void run(){
+				workers.add(drillLoginManager.workerLogin("Roustabout"));
+			};	
+		};
+		for (int i = 0; i < 4; i++) (new ExampleTestWorkerThread()).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		Map<String, Integer> roustabouts = new HashMap <String, Integer>();
+		roustabouts.put("Roustabout", 2);
+		before = drillLoginManager.getMetrics().getLockWait().count();
+		List<String> queued = drillLoginManager.requestTeams(Arrays.asList(roustabouts, roustabouts));
+		long drillLocks = drillLoginManager.getMetrics().getLockWait().count() - before;
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		System.out.println("blocking: queued " + queued + " taking the lock " + drillLocks + " time(s), released " + workers);
+		boolean drillOk = queued.equals(Arrays.asList("team1", "team2")) && drillLocks == 1 && workers.size() == 4
+				&& Collections.frequency(workers, "team1") == 2 && Collections.frequency(workers, "team2") == 2;
+		
+		//shared mode: a batch only a parked multi-skilled worker can fill still wakes it
+		DrillLoginManager shared = new DrillLoginManager();
+		ConcurrentLinkedQueue<String> skilled = new ConcurrentLinkedQueue<String>();
+		(new Thread(() -> skilled.add(shared.workerLogin(new HashSet<String>(Arrays.asList("Roustabout", "Floorhand")))))).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		Map<String, Integer> roustabout = new HashMap <String, Integer>();
+		roustabout.put("Roustabout", 1);
+		List<String> sharedQueued = shared.requestTeams(Arrays.asList(roustabout));
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		System.out.println("shared: queued " + sharedQueued + ", multi-skilled worker released " + skilled);
+		boolean sharedOk = skilled.size() == 1 && skilled.contains(sharedQueued.get(0));
+		
+		if (asyncOk && drillOk && sharedOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL " + asyncOk + drillOk + sharedOk);
+		}
+	}
+	
+	public void test_FlatCombining() {
+		/* threads hammering a combining manager: every request and login is applied exactly once, whether by
+		 * its own thread or by another one combining for it, and an operation's exception reaches its caller */
+		System.out.println("\nTest_FlatCombining");
+		AsyncDrillLoginManager manager = new AsyncDrillLoginManager(0, new SchedulingPolicy.Fifo(), AdmissionControl.UNBOUNDED, true);
+		Map<String, Integer> roustabouts = new HashMap <String, Integer>();
+		roustabouts.put("Roustabout", 2);
+		ConcurrentLinkedQueue<CompletableFuture<String>> teams = new ConcurrentLinkedQueue<CompletableFuture<String>>();
+		ConcurrentLinkedQueue<CompletableFuture<String>> logins = new ConcurrentLinkedQueue<CompletableFuture<String>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 2000; i++) {
+					teams.add(manager.smallTeamRequestAsync(roustabouts));
+					logins.add(manager.workerLoginAsync("Roustabout"));
+					logins.add(manager.workerLoginAsync("Roustabout"));
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			try {thread.join();} catch (InterruptedException e) { e.printStackTrace();} 
+		}
+		
+		Set<String> names = new HashSet<String>();
+		for (CompletableFuture<String> team : teams) if (team.isDone()) names.add(team.join());
+		Map<String, Integer> members = new HashMap<String, Integer>();
+		for (CompletableFuture<String> login : logins) if (login.isDone()) members.merge(login.join(), 1, Integer::sum);
+		ManagerMetrics metrics = manager.getMetrics();
+		boolean allTwo = members.size() == names.size() && !members.containsValue(1) && !members.containsValue(3);
+		
+		boolean thrown = false;
+		try {
+			manager.workerLoginAsync(Collections.<String>emptySet());
+		}
+		catch (IllegalArgumentException e) {
+			thrown = true;
+		}
+		System.out.println(names.size() + " teams assembled, " + metrics.getCombinedOperations() + " operations applied in " 
+				+ metrics.getCombiningPasses() + " passes, lock taken " + metrics.getLockWait().count() + " times, empty login thrown: " + thrown);
+		
+		/* on a combiner of its own: an Error thrown by a posted operation reaches the thread that posted it, 
+		 * whichever thread applied it, and the slots of threads that have finished are unlinked once idle */
+		ManagerMetrics combinerMetrics = new ManagerMetrics();
+		MeteredLock lock = new MeteredLock(combinerMetrics);
+		FlatCombiner combiner = new FlatCombiner(lock, lock::unlock, combinerMetrics);
+		ConcurrentLinkedQueue<Throwable> caught = new ConcurrentLinkedQueue<Throwable>();
+		List<Thread> posters = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			Thread poster = new Thread(() -> {
+				try {
+					combiner.apply(() -> {throw new AssertionError("posted");});
+				}
+				catch (AssertionError e) {
+					caught.add(e);
+				}
+			});
+			posters.add(poster);
+			poster.start();
+		}
+		for (Thread poster : posters) {
+			try {poster.join();} catch (InterruptedException e) { e.printStackTrace();} 
+		}
+		int slotsAfterPosters = combiner.slotCount();
+		for (int i = 0; i <= FlatCombiner.MAX_IDLE; i++) combiner.apply(() -> null);
+		System.out.println("errors caught by their posters: " + caught.size() + ", slots " + slotsAfterPosters 
+				+ " after the posters, " + combiner.slotCount() + " once idle");
+		boolean combinerOk = caught.size() == 8 && slotsAfterPosters == 8 && combiner.slotCount() <= 2;
+		
+		if (names.size() == 16000 && allTwo && metrics.getCombinedOperations() == 48001 
+				&& metrics.getLockWait().count() <= 48001 && metrics.getPendingRequests() == 0 && thrown && combinerOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_WaitStrategies() {
+		/* workers and leads waiting under each wait strategy are released to the same teams as when they park */
+		System.out.println("\nTest_WaitStrategies");
+		WaitStrategy[] strategies = {WaitStrategy.BLOCK, new WaitStrategy.SpinThenPark(50, TimeUnit.MICROSECONDS), 
+				new WaitStrategy.Yield()};
+		boolean ok = true;
+		for (WaitStrategy strategy : strategies) {
+			AsyncDrillLoginManager asyncManager = new AsyncDrillLoginManager();
+			asyncManager.setWaitStrategy(strategy);
+			LockFreeDrillLoginManager lockFreeManager = new LockFreeDrillLoginManager();
+			lockFreeManager.setWaitStrategy(strategy);
+			for (Manager manager : new Manager[] {asyncManager, lockFreeManager}) {
+				ConcurrentLinkedQueue<String> released = new ConcurrentLinkedQueue<String>();
+				class ExampleTestWorkerThread extends Thread {
+					public void run(){
+						released.add(manager.workerLogin("Roustabout"));
+					};	
+				};
+				class ExampleTestDrillerThread extends Thread {
+					public void run(){
+						Map<String, Integer> team = new HashMap <String, Integer>();
+						team.put("Driller", 1);
+						team.put("Roustabout", 2);
+						manager.drillerRequest("rig7", team);
+						released.add("driller");
+					};	
+				};
+				for (int i = 0; i < 2; i++) (new ExampleTestWorkerThread()).start();
+				try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+				(new ExampleTestDrillerThread()).start();
+				try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+				System.out.println(strategy + " " + manager.getClass().getSimpleName() + ": released " + released);
+				ok &= released.size() == 3 && Collections.frequency(released, "rig7") == 2 && released.contains("driller");
+			}
+		}
+		if (ok) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL");
+		}
+	}
+	
+	public void test_Gateway() {
+		/* the manager over loopback: pipelined frames in one write get their replies, a connection dropped with
+		 * a login pending withdraws it, and a malformed frame closes the connection. A sharded manager is served
+		 * by the rig each frame names, and a manager under Overflow.BLOCK is refused */
+		System.out.println("\nTest_Gateway");
+		AsyncDrillLoginManager manager = new AsyncDrillLoginManager();
+		try (ManagerGateway gateway = new ManagerGateway(manager, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+			InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), gateway.port());
+			Map<String, Integer> team = new HashMap <String, Integer>();
+			team.put("Roustabout", 2);
+			team.put("Floorhand", 1);
+			List<String> replies = new ArrayList<String>();
+			try (SocketChannel badgeReader = SocketChannel.open(address)) {
+				ByteBuffer out = ByteBuffer.allocate(1024);
+				ManagerGateway.writeFrame(out, ManagerGateway.LOGIN, 1, "", "Roustabout", null);
+				ManagerGateway.writeFrame(out, ManagerGateway.LOGIN, 2, "", "Roustabout", null);
+				ManagerGateway.writeFrame(out, ManagerGateway.LOGIN, 3, "", "Floorhand", null);
+				ManagerGateway.writeFrame(out, ManagerGateway.REQUEST, 4, "", null, team);
+				out.flip();
+				badgeReader.write(out);
+				ByteBuffer in = ByteBuffer.allocate(1024);
+				for (int i = 0; i < 4; i++) {
+					in.clear().limit(4);
+					while (in.hasRemaining()) badgeReader.read(in);
+					in.limit(4 + in.getInt(0));
+					while (in.hasRemaining()) badgeReader.read(in);
+					in.position(4);
+					int id = in.getInt();
+					byte status = in.get();
+					replies.add(id + ":" + status + ":" + ManagerGateway.readString(in));
+				}
+			}
+			
+			try (SocketChannel dropped = SocketChannel.open(address)) {
+				ByteBuffer out = ByteBuffer.allocate(64);
+				ManagerGateway.writeFrame(out, ManagerGateway.LOGIN, 1, "", "Toolpusher", null);
+				out.flip();
+				dropped.write(out);
+				try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+			}
+			try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+			
+			int closed;
+			try (SocketChannel malformed = SocketChannel.open(address)) {
+				malformed.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 5, 9, 0, 0, 0, 1}));
+				closed = malformed.read(ByteBuffer.allocate(16));
+			}
+			
+			long abandoned = manager.getMetrics().getAbandonedLogins();
+			GatewayLoadClient.Result load = GatewayLoadClient.run(address, 30, 5, 0.3);
+			
+			//a sharded manager is served by rig: frames go to the shard they name, an unknown rig fails
+			List<String> rigReplies = new ArrayList<String>();
+			Map<String, Integer> pair = new HashMap <String, Integer>();
+			pair.put("Roustabout", 1);
+			try (ManagerGateway shardedGateway = new ManagerGateway(new ShardedDrillLoginManager("north", "south"), 
+					new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+					SocketChannel console = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), shardedGateway.port()))) {
+				ByteBuffer out = ByteBuffer.allocate(1024);
+				ManagerGateway.writeFrame(out, ManagerGateway.LOGIN, 1, "south", "Roustabout", null);
+				ManagerGateway.writeFrame(out, ManagerGateway.REQUEST, 2, "south", null, pair);
+				ManagerGateway.writeFrame(out, ManagerGateway.LOGIN, 3, "west", "Roustabout", null);
+				out.flip();
+				console.write(out);
+				ByteBuffer in = ByteBuffer.allocate(1024);
+				for (int i = 0; i < 3; i++) {
+					in.clear().limit(4);
+					while (in.hasRemaining()) console.read(in);
+					in.limit(4 + in.getInt(0));
+					while (in.hasRemaining()) console.read(in);
+					in.position(4);
+					int id = in.getInt();
+					byte status = in.get();
+					rigReplies.add(id + ":" + status + (status == ManagerGateway.ASSEMBLED ? ":" + ManagerGateway.readString(in) : ""));
+				}
+			}
+			Collections.sort(rigReplies);
+			
+			//a manager that parks callers for room would park the selector thread
+			boolean blockRefused;
+			try {
+				new ManagerGateway(new AsyncDrillLoginManager(3, new SchedulingPolicy.Fifo(), 
+						new AdmissionControl(1, 1, AdmissionControl.Overflow.BLOCK, t1, TimeUnit.MILLISECONDS)), 
+						new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).close();
+				blockRefused = false;
+			}
+			catch (IllegalArgumentException e) {
+				blockRefused = true;
+			}
+			
+			System.out.println("replies " + replies + ", abandoned logins " + abandoned 
+					+ ", malformed frame read " + closed + ", load client " + load.logins + " logins in " + load.teams + " teams"
+					+ ", by rig " + rigReplies + ", BLOCK manager refused " + blockRefused);
+			Collections.sort(replies);
+			if (replies.equals(Arrays.asList("1:0:team1", "2:0:team1", "3:0:team1", "4:0:team1")) 
+					&& abandoned == 1 && closed == -1 && load.logins > 0 && load.teams > 0
+					&& rigReplies.equals(Arrays.asList("1:0:south/team1", "2:0:south/team1", "3:2")) && blockRefused) {
+				System.out.println("Hence: SUCCESS");
+			}	
+			else {
+				System.out.println("Hence: FAIL");
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Hence: FAIL " + e);
+		}
+	}
+	
+	public void test_EventStream() {
+		/* a consumer reads, in batches and without the lock, who logged in and which team each worker was released
+		 * to; a consumer left a whole ring behind holds the writer back, which drops and counts new events */
+		System.out.println("\nTest_EventStream");
+		DrillLoginManager drillLoginManager = new DrillLoginManager(true);
+		EventStream.Consumer consumer = drillLoginManager.events().subscribe();
+		List<String> events = new ArrayList<String>();
+		String[] kinds = {"REQUEST", "LOGIN", "LOGOUT", "ASSIGNED", "UNSEATED", "CANCELLED", "ASSEMBLED"};
+		EventStream.Handler handler = (sequence, kind, team, role, count, nanoTime) -> 
+				events.add(sequence + ":" + kinds[kind] + ":" + team + ":" + role + ":" + count);
+		class ExampleTestWorkerThread extends Thread {
+			public void run(){
+				drillLoginManager.workerLogin("Roustabout");
+			};	
+		};
+		for (int i = 0; i < 2; i++) (new ExampleTestWorkerThread()).start();
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		Map<String, Integer> roustabouts = new HashMap <String, Integer>();
+		roustabouts.put("Roustabout", 2);
+		drillLoginManager.smallTeamRequest(roustabouts);
+		try {Thread.sleep(t1);} catch (InterruptedException e) { e.printStackTrace();} 
+		int first = consumer.poll(handler, 3);
+		int rest = consumer.poll(handler, 100);
+		long lag = consumer.lag();
+		consumer.close();
+		System.out.println("polled " + first + " then " + rest + ": " + events);
+		boolean streamOk = first == 3 && rest == 3 && lag == 0 && events.equals(Arrays.asList(
+				"0:LOGIN:null:Roustabout:1", "1:LOGIN:null:Roustabout:1", "2:REQUEST:team1:null:2", 
+				"3:ASSIGNED:team1:Roustabout:1", "4:ASSIGNED:team1:Roustabout:1", "5:ASSEMBLED:team1:null:2"));
+		
+		EventStream ring = new EventStream(new ReentrantLock(), 4);
+		EventStream.Consumer slow = ring.subscribe();
+		for (int i = 0; i < 6; i++) ring.publish(EventStream.LOGIN, null, "Floorhand", 1);
+		long full = ring.remainingCapacity();
+		long behind = slow.lag();
+		int read = slow.poll(handler, 3);
+		ring.publish(EventStream.LOGIN, null, "Floorhand", 1);
+		System.out.println("ring of " + ring.capacity() + ": dropped " + ring.getDropped() + ", lag " + behind 
+				+ ", remaining " + full + ", then read " + read + " and cursor at " + ring.getCursor());
+		boolean ringOk = ring.getDropped() == 2 && behind == 4 && full == 0 && read == 3 && ring.getCursor() == 4;
+		
+		if (streamOk && ringOk) {
+			System.out.println("Hence: SUCCESS");
+		}	
+		else {
+			System.out.println("Hence: FAIL " + streamOk + ringOk);
+		}
+	}
+}
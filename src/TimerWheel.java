@@ -0,0 +1,94 @@
+import java.util.List;
+
+/* hashed timer wheel for the start deadlines of queued team requests.
+ * Time is cut into ticks, and a request is filed in the slot of the first tick at or after its deadline
+ * (tick modulo the number of slots), linked through the request itself. Scheduling and removing are O(1)
+ * whatever the number of pending deadlines, and a tick only looks at its own slot, where deadlines more than
+ * one turn of the wheel away are passed over until their turn comes. A deadline is noticed up to one tick late.
+ * Not thread safe: the matcher that owns it is guarded by its manager's lock */
+class TimerWheel {
+
+	private final long tickNanos;
+	private final TeamRequest[] slots;
+	private final int mask;
+
+	//ticks are counted from here, and every tick before ticked has been processed
+	private final long origin = System.nanoTime();
+	private long ticked = 0;
+
+	private int size = 0;
+
+	//slots is rounded up to a power of two
+	TimerWheel(long tickNanos, int slots) {
+		this.tickNanos = tickNanos;
+		this.slots = new TeamRequest[Integer.highestOneBit(Math.max(1, slots - 1)) << 1];
+		this.mask = this.slots.length - 1;
+	}
+
+	//file the request under its deadline; one whose deadline has passed is due at the next tick
+	void schedule(TeamRequest request) {
+		long elapsed = request.deadline - origin;
+		long tick = Math.max(ticked, -Math.floorDiv(-elapsed, tickNanos));
+		request.deadlineTick = tick;
+		int slot = (int) (tick & mask);
+		request.wheelPrev = null;
+		request.wheelNext = slots[slot];
+		if (slots[slot] != null) {
+			slots[slot].wheelPrev = request;
+		}
+		slots[slot] = request;
+		request.inWheel = true;
+		size++;
+	}
+
+	//take the request out of the wheel if it is still in it, e.g. because it has been assembled in time
+	void remove(TeamRequest request) {
+		if (!request.inWheel) {
+			return;
+		}
+		if (request.wheelPrev == null) {
+			slots[(int) (request.deadlineTick & mask)] = request.wheelNext;
+		}
+		else {
+			request.wheelPrev.wheelNext = request.wheelNext;
+		}
+		if (request.wheelNext != null) {
+			request.wheelNext.wheelPrev = request.wheelPrev;
+		}
+		request.wheelPrev = null;
+		request.wheelNext = null;
+		request.inWheel = false;
+		size--;
+	}
+
+	/* process every tick that has passed by now, moving the requests whose deadline has been reached out of
+	 * the wheel and into due. When more than a turn of the wheel has passed every slot is looked at once */
+	void expire(long now, List<TeamRequest> due) {
+		long current = Math.floorDiv(now - origin, tickNanos);
+		if (current < ticked) {
+			return;
+		}
+		long first = Math.max(ticked, current - mask);
+		for (long tick = first; tick <= current && size > 0; tick++) {
+			TeamRequest request = slots[(int) (tick & mask)];
+			while (request != null) {
+				TeamRequest next = request.wheelNext;
+				if (request.deadlineTick <= current) {
+					remove(request);
+					due.add(request);
+				}
+				request = next;
+			}
+		}
+		ticked = current + 1;
+	}
+
+	//time from now until the next tick is due, at least 1
+	long nanosToNextTick(long now) {
+		return Math.max(1, origin + ticked * tickNanos - now);
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -0,0 +1,307 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* records the calls made to a Manager, with their timing, so a scenario can be replayed later against any
+ * Manager implementation (see TraceReplay). Wrap the manager, run the scenario against the recorder, then
+ * write the trace out:
+ *
+ *   TraceRecorder recorder = new TraceRecorder(new DrillLoginManager());
+ *   ... the scenario's threads call recorder.smallTeamRequest / drillerRequest / workerLogin ...
+ *   recorder.writeTo(new File("scenario.trace"));
+ *
+ * Recording a call costs two System.nanoTime reads and one lock-free append; role and team names are
+ * replaced by small ids as they are recorded. Calls still blocked when the trace is written are recorded as
+ * unfinished. Calls are kept in memory until written, so a recorder keeps maxCalls of them at most (about
+ * 100 bytes each): the calls made after that still reach the manager but are not recorded, and getDropped
+ * counts them.
+ *
+ * The file is compact: a string table followed by one record per call in order of start time, with the
+ * calling thread, the start as a delta from the previous call, the duration and the arguments as varints */
+public class TraceRecorder implements Manager {
+
+	private static final int MAGIC = 0x444c5452;
+	private static final int FORMAT = 1;
+
+	static final byte REQUEST = 0;
+	static final byte DRILLER = 1;
+	static final byte LOGIN = 2;
+
+	//end of a call that has not returned
+	static final long UNFINISHED = -1;
+
+	//calls kept by a recorder created without a limit: about 100MB of them
+	public static final int DEFAULT_MAX_CALLS = 1 << 20;
+
+	private final Manager manager;
+	private final long origin = System.nanoTime();
+
+	private final ConcurrentLinkedQueue<Call> calls = new ConcurrentLinkedQueue<Call>();
+	private final int maxCalls;
+	//calls made through the recorder, recorded or not
+	private final AtomicLong made = new AtomicLong();
+
+	//recorded threads are numbered in the order of their first call
+	private final AtomicInteger threads = new AtomicInteger();
+	private final ThreadLocal<Integer> thread = ThreadLocal.withInitial(threads::getAndIncrement);
+
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private final AtomicInteger strings = new AtomicInteger();
+
+	public TraceRecorder(Manager manager) {
+		this(manager, DEFAULT_MAX_CALLS);
+	}
+
+	//record the first maxCalls calls at most
+	public TraceRecorder(Manager manager, int maxCalls) {
+		this.manager = manager;
+		this.maxCalls = maxCalls;
+	}
+
+	@Override
+	public void smallTeamRequest(Map<String, Integer> team) {
+		Call call = recording() ? start(REQUEST, -1, seats(team)) : null;
+		manager.smallTeamRequest(team);
+		end(call);
+	}
+
+	@Override
+	public void drillerRequest(String teamName, Map<String, Integer> team) {
+		Call call = recording() ? start(DRILLER, id(teamName), seats(team)) : null;
+		manager.drillerRequest(teamName, team);
+		end(call);
+	}
+
+	@Override
+	public String workerLogin(String role) {
+		Call call = recording() ? start(LOGIN, -1, new int[] {id(role), 1}) : null;
+		String teamName = manager.workerLogin(role);
+		if (call != null) {
+			call.result = (teamName == null) ? -1 : id(teamName);
+		}
+		end(call);
+		return teamName;
+	}
+
+	//true if the call being made is to be recorded, false once maxCalls have been
+	private boolean recording() {
+		return made.getAndIncrement() < maxCalls;
+	}
+
+	private Call start(byte kind, int team, int[] seats) {
+		Call call = new Call(kind, thread.get(), System.nanoTime() - origin, team, seats);
+		calls.add(call);
+		return call;
+	}
+
+	//the call has returned; null for a call that is not recorded
+	private void end(Call call) {
+		if (call != null) {
+			call.end = System.nanoTime() - origin;
+		}
+	}
+
+	//(role, count) pairs, copied as the request is made in case the caller reuses the map
+	private int[] seats(Map<String, Integer> team) {
+		int[] seats = new int[team.size() * 2];
+		int i = 0;
+		for (Map.Entry<String, Integer> entry : team.entrySet()) {
+			seats[i++] = id(entry.getKey());
+			seats[i++] = entry.getValue();
+		}
+		return seats;
+	}
+
+	private int id(String name) {
+		Integer id = ids.get(name);
+		return (id != null) ? id : ids.computeIfAbsent(name, added -> strings.getAndIncrement());
+	}
+
+	//the number of calls recorded so far
+	public int size() {
+		return calls.size();
+	}
+
+	//calls made after maxCalls had been recorded, which the trace does not hold
+	public long getDropped() {
+		return Math.max(0, made.get() - maxCalls);
+	}
+
+	/* write the calls recorded so far. The recorder can go on recording, and be written again later.
+	 * Calls made from several threads at the same time are ordered by their start */
+	public void writeTo(File file) throws IOException {
+		List<Call> sorted = new ArrayList<Call>(calls);
+		Collections.sort(sorted, (a, b) -> Long.compare(a.start, b.start));
+		//the end of each call is read before its result, which was set first, and both before the string table
+		long[] ends = new long[sorted.size()];
+		int[] results = new int[sorted.size()];
+		for (int i = 0; i < ends.length; i++) {
+			ends[i] = sorted.get(i).end;
+			results[i] = sorted.get(i).result;
+		}
+		String[] table = new String[strings.get()];
+		Arrays.fill(table, "");
+		for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+			if (entry.getValue() < table.length) {
+				table[entry.getValue()] = entry.getKey();
+			}
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			writeVarint(out, table.length);
+			for (String string : table) {
+				out.writeUTF(string);
+			}
+			writeVarint(out, sorted.size());
+			long previous = 0;
+			for (int i = 0; i < ends.length; i++) {
+				Call call = sorted.get(i);
+				long end = ends[i];
+				out.writeByte(call.kind);
+				writeVarint(out, call.thread);
+				writeVarint(out, call.start - previous);
+				writeVarint(out, (end == UNFINISHED) ? 0 : end - call.start + 1);
+				previous = call.start;
+				if (call.kind == DRILLER) {
+					writeVarint(out, call.team);
+				}
+				if (call.kind == LOGIN) {
+					writeVarint(out, call.seats[0]);
+					writeVarint(out, (end == UNFINISHED) ? 0 : results[i] + 1);
+				}
+				else {
+					writeVarint(out, call.seats.length / 2);
+					for (int seat : call.seats) {
+						writeVarint(out, seat);
+					}
+				}
+			}
+		}
+	}
+
+	//read a trace written by writeTo
+	static Trace read(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+				throw new IOException(file + " is not a trace");
+			}
+			String[] strings = new String[(int) readVarint(in)];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = in.readUTF();
+			}
+			Call[] calls = new Call[(int) readVarint(in)];
+			long start = 0;
+			for (int i = 0; i < calls.length; i++) {
+				byte kind = in.readByte();
+				int thread = (int) readVarint(in);
+				start += readVarint(in);
+				long duration = readVarint(in);
+				int team = (kind == DRILLER) ? (int) readVarint(in) : -1;
+				int[] seats;
+				int result = -1;
+				if (kind == LOGIN) {
+					seats = new int[] {(int) readVarint(in), 1};
+					result = (int) readVarint(in) - 1;
+				}
+				else {
+					seats = new int[(int) readVarint(in) * 2];
+					for (int seat = 0; seat < seats.length; seat++) {
+						seats[seat] = (int) readVarint(in);
+					}
+				}
+				calls[i] = new Call(kind, thread, start, team, seats);
+				calls[i].result = result;
+				calls[i].end = (duration == 0) ? UNFINISHED : start + duration - 1;
+			}
+			return new Trace(strings, calls);
+		}
+	}
+
+	//unsigned LEB128: seven bits per byte, low bits first
+	private static void writeVarint(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			out.writeByte((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarint(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new EOFException("varint too long");
+	}
+
+	/* one recorded call. Times are nanoseconds since the recorder was created; names are ids into the trace's
+	 * string table. seats holds (role, count) pairs, a single (role, 1) pair for a login */
+	static final class Call {
+		final byte kind;
+		final int thread;
+		final long start;
+		//the team a driller request named, or -1
+		final int team;
+		final int[] seats;
+		//written by the calling thread as the call returns, read by writeTo from another
+		volatile int result = -1;
+		volatile long end = UNFINISHED;
+
+		Call(byte kind, int thread, long start, int team, int[] seats) {
+			this.kind = kind;
+			this.thread = thread;
+			this.start = start;
+			this.team = team;
+			this.seats = seats;
+		}
+	}
+
+	//a trace read back from a file, calls in order of start
+	static final class Trace {
+		final String[] strings;
+		final Call[] calls;
+
+		Trace(String[] strings, Call[] calls) {
+			this.strings = strings;
+			this.calls = calls;
+		}
+
+		int threads() {
+			int threads = 0;
+			for (Call call : calls) {
+				threads = Math.max(threads, call.thread + 1);
+			}
+			return threads;
+		}
+
+		//the seats of a request call as a map, as it was passed to the manager
+		Map<String, Integer> team(Call call) {
+			Map<String, Integer> team = new LinkedHashMap<String, Integer>();
+			for (int i = 0; i < call.seats.length; i += 2) {
+				team.put(strings[call.seats[i]], call.seats[i + 1]);
+			}
+			return team;
+		}
+	}
+}
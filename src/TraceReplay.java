@@ -0,0 +1,259 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/* replays a trace written by TraceRecorder against the Manager implementations, and compares each replay with
+ * the recording.
+ *
+ *   java TraceReplay traceFile [speedup] [manager]
+ *
+ * Every recorded thread gets a replay thread that makes the same calls in the same order, each at its recorded
+ * start time divided by speedup: 1 replays in real time, 10 ten times faster, 0 makes every call as soon as
+ * the thread's previous one has returned. A call is made late if the previous call of its thread is still
+ * blocked by then. manager is one of the names in ManagerBenchmark.managers(), all of them by default.
+ * Reported for the recording and then per manager, with times in trace time (replay times times speedup):
+ *   calls:      calls that returned, out of those that returned when recorded
+ *   teams/s:    distinct teams that released a worker or lead, per second from the first call to the last return
+ *   login wait: mean, p50, p99 and max time inside workerLogin
+ *   lead wait:  mean and max time inside drillerRequest
+ *   moved:      logins and driller requests released with other team mates than when recorded (team names
+ *               differ between managers, so teams are compared by their members) */
+public class TraceReplay {
+
+	//how long a replay may run past the end of the trace before the calls still blocked are given up on
+	private static final long GRACE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.out.println("usage: java TraceReplay traceFile [speedup] [manager]");
+			return;
+		}
+		TraceRecorder.Trace trace = TraceRecorder.read(new File(args[0]));
+		double speedup = (args.length > 1) ? Double.parseDouble(args[1]) : 1;
+		String only = (args.length > 2) ? args[2] : null;
+
+		Result recorded = recorded(trace);
+		System.out.printf("%s: %d calls from %d threads over %.3fs, replayed at speedup %s%n", args[0],
+				trace.calls.length, trace.threads(), recorded.span() / 1e9, (speedup > 0) ? speedup : "max");
+		System.out.printf("%-20s %11s %8s %10s %10s %10s %10s %10s %10s %6s%n", "manager", "calls", "teams/s",
+				"login mean", "p50", "p99", "max", "lead mean", "lead max", "moved");
+		recorded.print("recorded", recorded);
+		for (Map.Entry<String, Supplier<Manager>> entry : ManagerBenchmark.managers().entrySet()) {
+			if (only == null || entry.getKey().equals(only)) {
+				replay(trace, entry.getValue().get(), speedup).print(entry.getKey(), recorded);
+			}
+		}
+	}
+
+	//the recording itself, as a result to compare replays with
+	static Result recorded(TraceRecorder.Trace trace) {
+		Result result = new Result(trace);
+		for (int i = 0; i < trace.calls.length; i++) {
+			TraceRecorder.Call call = trace.calls[i];
+			if (call.end == TraceRecorder.UNFINISHED) {
+				continue;
+			}
+			String team = (call.kind == TraceRecorder.DRILLER) ? trace.strings[call.team]
+					: (call.kind == TraceRecorder.LOGIN && call.result >= 0) ? trace.strings[call.result] : null;
+			result.returned(i, call.start, call.end, team);
+		}
+		return result;
+	}
+
+	/* replay the trace against the manager and wait until every call that returned when recorded has returned
+	 * again, or the trace's span (at this speed) plus a grace period has passed. Replay threads are daemons, so
+	 * calls that never return do not keep the JVM alive */
+	static Result replay(TraceRecorder.Trace trace, Manager manager, double speedup) throws InterruptedException {
+		List<List<Integer>> perThread = new ArrayList<List<Integer>>();
+		for (int thread = 0; thread < trace.threads(); thread++) {
+			perThread.add(new ArrayList<Integer>());
+		}
+		int expected = 0;
+		long span = 0;
+		for (int i = 0; i < trace.calls.length; i++) {
+			perThread.get(trace.calls[i].thread).add(i);
+			if (trace.calls[i].end != TraceRecorder.UNFINISHED) {
+				expected++;
+				span = Math.max(span, trace.calls[i].end);
+			}
+		}
+		Result result = new Result(trace);
+		CountDownLatch done = new CountDownLatch(expected);
+		double scale = (speedup > 0) ? speedup : 1;
+		long begin = System.nanoTime();
+		for (List<Integer> calls : perThread) {
+			Thread thread = new Thread(() -> {
+				for (int i : calls) {
+					TraceRecorder.Call call = trace.calls[i];
+					if (speedup > 0) {
+						long at = begin + (long) (call.start / speedup);
+						for (long wait = at - System.nanoTime(); wait > 0; wait = at - System.nanoTime()) {
+							LockSupport.parkNanos(wait);
+						}
+					}
+					long start = System.nanoTime();
+					String team = call(trace, call, manager);
+					result.returned(i, (long) ((start - begin) * scale), (long) ((System.nanoTime() - begin) * scale), team);
+					if (call.end != TraceRecorder.UNFINISHED) {
+						done.countDown();
+					}
+				}
+			}, "TraceReplay");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await((long) (span / scale) + GRACE_NANOS, TimeUnit.NANOSECONDS);
+		return result;
+	}
+
+	//make the recorded call, returning the team the caller was released to
+	private static String call(TraceRecorder.Trace trace, TraceRecorder.Call call, Manager manager) {
+		switch (call.kind) {
+		case TraceRecorder.REQUEST:
+			manager.smallTeamRequest(trace.team(call));
+			return null;
+		case TraceRecorder.DRILLER:
+			String teamName = trace.strings[call.team];
+			manager.drillerRequest(teamName, trace.team(call));
+			return teamName;
+		default:
+			return manager.workerLogin(trace.strings[call.seats[0]]);
+		}
+	}
+
+	/* start and end (nanoseconds of trace time) and the team of every call that returned. Calls return on the
+	 * replay threads, so the arrays are atomic */
+	static final class Result {
+		private final TraceRecorder.Trace trace;
+		private final AtomicLongArray starts;
+		private final AtomicLongArray ends;
+		private final AtomicReferenceArray<String> teams;
+
+		Result(TraceRecorder.Trace trace) {
+			this.trace = trace;
+			this.starts = new AtomicLongArray(trace.calls.length);
+			this.ends = new AtomicLongArray(trace.calls.length);
+			this.teams = new AtomicReferenceArray<String>(trace.calls.length);
+			for (int i = 0; i < trace.calls.length; i++) {
+				ends.set(i, TraceRecorder.UNFINISHED);
+			}
+		}
+
+		void returned(int call, long start, long end, String team) {
+			starts.set(call, start);
+			teams.set(call, team);
+			ends.set(call, end);
+		}
+
+		int returned() {
+			int returned = 0;
+			for (int i = 0; i < ends.length(); i++) {
+				if (ends.get(i) != TraceRecorder.UNFINISHED) {
+					returned++;
+				}
+			}
+			return returned;
+		}
+
+		//from the first call made to the last call returned
+		long span() {
+			long last = 0;
+			for (int i = 0; i < ends.length(); i++) {
+				last = Math.max(last, ends.get(i));
+			}
+			return (trace.calls.length == 0) ? 0 : last - trace.calls[0].start;
+		}
+
+		int teams() {
+			return members().size();
+		}
+
+		//the time inside each call of this kind that returned, sorted
+		long[] waits(byte kind) {
+			long[] waits = new long[trace.calls.length];
+			int count = 0;
+			for (int i = 0; i < waits.length; i++) {
+				long end = ends.get(i);
+				if (trace.calls[i].kind == kind && end != TraceRecorder.UNFINISHED) {
+					waits[count++] = end - starts.get(i);
+				}
+			}
+			waits = Arrays.copyOf(waits, count);
+			Arrays.sort(waits);
+			return waits;
+		}
+
+		/* logins and driller requests whose team mates differ from those in other, including calls that returned
+		 * in one run only */
+		int moved(Result other) {
+			Map<String, List<Integer>> mine = members();
+			Map<String, List<Integer>> theirs = other.members();
+			int moved = 0;
+			for (int i = 0; i < trace.calls.length; i++) {
+				if (trace.calls[i].kind == TraceRecorder.REQUEST) {
+					continue;
+				}
+				String team = (ends.get(i) == TraceRecorder.UNFINISHED) ? null : teams.get(i);
+				String otherTeam = (other.ends.get(i) == TraceRecorder.UNFINISHED) ? null : other.teams.get(i);
+				if (!Objects.equals(mine.get(team), theirs.get(otherTeam))) {
+					moved++;
+				}
+			}
+			return moved;
+		}
+
+		//team name -> the calls released to it, in trace order
+		private Map<String, List<Integer>> members() {
+			Map<String, List<Integer>> members = new HashMap<String, List<Integer>>();
+			for (int i = 0; i < trace.calls.length; i++) {
+				String team = teams.get(i);
+				if (team != null && ends.get(i) != TraceRecorder.UNFINISHED) {
+					members.computeIfAbsent(team, name -> new ArrayList<Integer>()).add(i);
+				}
+			}
+			return members;
+		}
+
+		int expected() {
+			int expected = 0;
+			for (TraceRecorder.Call call : trace.calls) {
+				if (call.end != TraceRecorder.UNFINISHED) {
+					expected++;
+				}
+			}
+			return expected;
+		}
+
+		void print(String name, Result recorded) {
+			long[] logins = waits(TraceRecorder.LOGIN);
+			long[] leads = waits(TraceRecorder.DRILLER);
+			System.out.printf("%-20s %5d/%-5d %8.2f %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f %6d%n", name,
+					returned(), expected(), teams() / Math.max(span() / 1e9, 1e-9),
+					mean(logins) / 1e6, percentile(logins, 0.50) / 1e6, percentile(logins, 0.99) / 1e6,
+					percentile(logins, 1) / 1e6, mean(leads) / 1e6, percentile(leads, 1) / 1e6, moved(recorded));
+		}
+
+		private static double mean(long[] sorted) {
+			double total = 0;
+			for (long value : sorted) {
+				total += value;
+			}
+			return (sorted.length == 0) ? 0 : total / sorted.length;
+		}
+
+		private static long percentile(long[] sorted, double p) {
+			return (sorted.length == 0) ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+		}
+	}
+}
@@ -0,0 +1,45 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/* access to virtual threads (JDK 21 and later) from code compiled for Java 8.
+ * The managers only block through ReentrantLock conditions and LockSupport, never 'synchronized', so a
+ * virtual thread parked in workerLogin unmounts from its carrier instead of pinning it.
+ * Run with -Djdk.tracePinnedThreads=full to have the JDK report any pinning */
+final class VirtualThreads {
+	
+	private static final ThreadFactory FACTORY = lookupFactory();
+	
+	private VirtualThreads() {
+	}
+	
+	static boolean available() {
+		return FACTORY != null;
+	}
+	
+	//a factory for virtual threads, or null when the running JDK has none
+	static ThreadFactory factory() {
+		return FACTORY;
+	}
+	
+	/* name of the carrier a mounted virtual thread runs on, read from its toString
+	 * ("VirtualThread[#21]/runnable@ForkJoinPool-1-worker-1"), or null for a platform thread */
+	static String carrierOf(Thread thread) {
+		String description = thread.toString();
+		int at = description.lastIndexOf('@');
+		return (description.startsWith("VirtualThread") && at >= 0) ? description.substring(at + 1) : null;
+	}
+	
+	//Thread.ofVirtual().factory(), looked up by reflection so this compiles on Java 8
+	private static ThreadFactory lookupFactory() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Method factory = ofVirtual.getReturnType().getMethod("factory");
+			factory.setAccessible(true);
+			return (ThreadFactory) factory.invoke(builder);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/* how a thread blocked in a manager (a worker in workerLogin, a lead in drillerRequest) waits to be released.
+ * Parking costs nothing while the thread waits, but the unpark and the wakeup that follows put several
+ * microseconds between a team being assembled and its members returning. Spinning and yielding keep the
+ * thread on a core, checking for its release, which cuts that gap at the price of the CPU they burn:
+ * worth it on dedicated cores when requests come in quick succession, not on a shared host.
+ * Set with setWaitStrategy on AsyncDrillLoginManager or LockFreeDrillLoginManager. DrillLoginManager does not
+ * take one: its rules forbid busy waiting, so its threads always park, as with BLOCK */
+public interface WaitStrategy {
+
+	/* return once released says so. park blocks until the thread is woken by whoever releases it, and may
+	 * return before that, so it is only ever called in a loop */
+	void await(BooleanSupplier released, Runnable park);
+
+	//park straight away, as the managers always did
+	public static final WaitStrategy BLOCK = new Block();
+
+	public static final class Block implements WaitStrategy {
+		@Override
+		public void await(BooleanSupplier released, Runnable park) {
+			while (!released.getAsBoolean()) {
+				park.run();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "block";
+		}
+	}
+
+	/* check for the release in a busy loop for up to spin, then park. A release that comes within the spin is
+	 * seen without a wakeup; a longer wait costs one spin's worth of CPU */
+	public static final class SpinThenPark implements WaitStrategy {
+		//the clock is only read every so many checks
+		private static final int CHECKS_PER_CLOCK_READ = 64;
+
+		private final long spinNanos;
+
+		public SpinThenPark(long spin, TimeUnit unit) {
+			this.spinNanos = unit.toNanos(spin);
+		}
+
+		@Override
+		public void await(BooleanSupplier released, Runnable park) {
+			long spinUntil = System.nanoTime() + spinNanos;
+			for (int checks = 1; !released.getAsBoolean(); checks++) {
+				if (checks % CHECKS_PER_CLOCK_READ == 0 && System.nanoTime() - spinUntil >= 0) {
+					BLOCK.await(released, park);
+					return;
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "spin " + TimeUnit.NANOSECONDS.toMicros(spinNanos) + "us";
+		}
+	}
+
+	/* give up the core between checks for the release and never park. Other runnable threads get the core,
+	 * but the waiting thread stays runnable and is scheduled again and again for as long as it waits */
+	public static final class Yield implements WaitStrategy {
+		@Override
+		public void await(BooleanSupplier released, Runnable park) {
+			while (!released.getAsBoolean()) {
+				Thread.yield();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "yield";
+		}
+	}
+}
@@ -0,0 +1,149 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/* measures how long a waiting worker takes to be released under each WaitStrategy.
+ *
+ *   java WaitStrategyBenchmark [requests] [gapMicros] [spinMicros]
+ *
+ * Worker threads loop on workerLogin("Roustabout"). A requester makes one-seat requests, one at a time:
+ * gapMicros after the previous worker has been released (so the workers are back waiting by then) it makes
+ * the next request, and the latency is the time from making it to the released worker returning. A gap shorter
+ * than the spin is caught while the worker spins; a longer one finds it parked. Run for 1 and 4 workers on
+ * each manager that takes a wait strategy. Reported:
+ *   p50 ... max: release latency in microseconds
+ *   cpu:         CPU time used by the worker threads, as a share of one core over the run */
+public class WaitStrategyBenchmark {
+
+	private static final Map<String, Integer> TEAM = Collections.singletonMap("Roustabout", 1);
+
+	public static void main(String[] args) throws InterruptedException {
+		int requests = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		long gap = (args.length > 1) ? Long.parseLong(args[1]) : 20;
+		long spin = (args.length > 2) ? Long.parseLong(args[2]) : 50;
+
+		WaitStrategy[] strategies = {WaitStrategy.BLOCK, new WaitStrategy.SpinThenPark(spin, TimeUnit.MICROSECONDS),
+				new WaitStrategy.Yield()};
+		System.out.printf("requests=%d gap=%dus%n", requests, gap);
+		System.out.printf("%-10s %-10s %7s %9s %9s %9s %9s %9s %6s%n",
+				"manager", "strategy", "workers", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "cpu");
+		for (Map.Entry<String, Function<WaitStrategy, Manager>> entry : managers().entrySet()) {
+			for (int workers : new int[] {1, 4}) {
+				for (WaitStrategy strategy : strategies) {
+					run(entry.getValue().apply(strategy), workers, requests / 10, gap);
+					run(entry.getValue().apply(strategy), workers, requests, gap).print(entry.getKey(), strategy, workers);
+				}
+			}
+		}
+	}
+
+	//the managers that take a wait strategy, created with the given one
+	static Map<String, Function<WaitStrategy, Manager>> managers() {
+		Map<String, Function<WaitStrategy, Manager>> managers = new LinkedHashMap<String, Function<WaitStrategy, Manager>>();
+		managers.put("Async", strategy -> {
+			AsyncDrillLoginManager manager = new AsyncDrillLoginManager();
+			manager.setWaitStrategy(strategy);
+			return manager;
+		});
+		managers.put("LockFree", strategy -> {
+			LockFreeDrillLoginManager manager = new LockFreeDrillLoginManager();
+			manager.setWaitStrategy(strategy);
+			return manager;
+		});
+		return managers;
+	}
+
+	//one run of this many requests on a fresh manager
+	static Result run(Manager manager, int workers, int requests, long gapMicros) throws InterruptedException {
+		long[] latencies = new long[requests];
+		AtomicInteger released = new AtomicInteger();
+		Flags flags = new Flags();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int w = 0; w < workers; w++) {
+			Thread worker = new Thread(() -> {
+				while (!flags.stop) {
+					manager.workerLogin("Roustabout");
+					long latency = System.nanoTime() - flags.requestedAt;
+					int index = released.get();
+					if (index < latencies.length) {
+						latencies[index] = latency;
+					}
+					released.incrementAndGet();
+				}
+			});
+			worker.setDaemon(true);
+			threads.add(worker);
+			worker.start();
+		}
+
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		long cpuBefore = cpuTime(bean, threads);
+		long start = System.nanoTime();
+		long gap = TimeUnit.MICROSECONDS.toNanos(gapMicros);
+		for (int i = 0; i < requests; i++) {
+			do {
+				LockSupport.parkNanos(gap);
+			} while (released.get() < i);
+			flags.requestedAt = System.nanoTime();
+			manager.smallTeamRequest(TEAM);
+		}
+		while (released.get() < requests) {
+			LockSupport.parkNanos(gap);
+		}
+		long elapsed = System.nanoTime() - start;
+		long cpu = cpuTime(bean, threads) - cpuBefore;
+
+		//release the workers still waiting, so they see the stop flag
+		flags.stop = true;
+		for (Thread worker : threads) {
+			while (worker.isAlive()) {
+				manager.smallTeamRequest(TEAM);
+				worker.join(1);
+			}
+		}
+		Arrays.sort(latencies);
+		return new Result(latencies, (double) cpu / elapsed);
+	}
+
+	//CPU time used so far by the threads, in nanoseconds; 0 where the JVM does not measure it
+	private static long cpuTime(ThreadMXBean bean, List<Thread> threads) {
+		long total = 0;
+		for (Thread thread : threads) {
+			total += Math.max(0, bean.getThreadCpuTime(thread.getId()));
+		}
+		return total;
+	}
+
+	private static final class Flags {
+		volatile boolean stop;
+		//when the request being served was made
+		volatile long requestedAt;
+	}
+
+	static final class Result {
+		final long[] latencies;
+		final double cpu;
+
+		Result(long[] latencies, double cpu) {
+			this.latencies = latencies;
+			this.cpu = cpu;
+		}
+
+		void print(String manager, WaitStrategy strategy, int workers) {
+			System.out.printf("%-10s %-10s %7d %9.1f %9.1f %9.1f %9.1f %9.1f %5.0f%%%n", manager, strategy, workers,
+					ManagerBenchmark.percentile(latencies, 0.50), ManagerBenchmark.percentile(latencies, 0.90),
+					ManagerBenchmark.percentile(latencies, 0.99), ManagerBenchmark.percentile(latencies, 0.999),
+					ManagerBenchmark.percentile(latencies, 1), cpu * 100);
+		}
+	}
+}